@@ -0,0 +1,111 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.benchmarks;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat.FlatAst;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat.FlatAstPrinter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTPrinter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the three front-end stages on programs made of `copies` repetitions of
+ * sample-input.vpl. Each stage gets its input prepared in setup, so only that stage is measured.
+ * The parseFlat and printFlat variants do the same over the arena-backed FlatAst.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FrontEndBenchmark {
+
+    @Param({"1", "16", "256"})
+    public int copies;
+
+    private String source;
+    private List<Token> tokens;
+    private List<Stmt> statements;
+    private TokenBuffer buffer;
+    private FlatAst flat;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        String sample;
+        try (InputStream in = FrontEndBenchmark.class.getResourceAsStream("/sample-input.vpl")) {
+            if (in == null) throw new IOException("sample-input.vpl is not on the classpath.");
+            sample = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        StringBuilder builder = new StringBuilder(sample.length() * copies);
+        for (int i = 0; i < copies; i++) {
+            builder.append(sample).append('\n');
+        }
+        source = builder.toString();
+        tokens = new Scanner(source).scanTokens();
+        statements = new Parser(tokens).parse();
+        buffer = new Scanner(source).scanTokenBuffer();
+        flat = new Parser(buffer).parseFlat();
+    }
+
+    @Benchmark
+    public List<Token> scanTokens() {
+        return new Scanner(source).scanTokens();
+    }
+
+    @Benchmark
+    public TokenBuffer scanTokenBuffer() {
+        return new Scanner(source).scanTokenBuffer();
+    }
+
+    // Splits only at copies=256; smaller sources fall back to scanTokenBuffer()
+    @Benchmark
+    public TokenBuffer scanTokenBufferParallel() {
+        return new Scanner(source).scanTokenBufferParallel();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public FlatAst parseFlat() {
+        return new Parser(buffer).parseFlat();
+    }
+
+    @Benchmark
+    public void print(Blackhole blackhole) throws IOException {
+        StringBuilder out = new StringBuilder();
+        new ASTPrinter().print(statements, out);
+        blackhole.consume(out);
+    }
+
+    @Benchmark
+    public void printFlat(Blackhole blackhole) throws IOException {
+        StringBuilder out = new StringBuilder();
+        new FlatAstPrinter().print(flat, out);
+        blackhole.consume(out);
+    }
+}
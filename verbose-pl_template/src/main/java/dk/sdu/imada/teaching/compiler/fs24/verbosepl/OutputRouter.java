@@ -0,0 +1,46 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream that forwards writes to a per-thread target, or to a fallback stream when the
+ * current thread has none. Installed behind System.out and System.err while files are processed
+ * in parallel, so each file's output can be collected separately and printed in argument order.
+ */
+class OutputRouter extends OutputStream {
+    private final OutputStream fallback;
+    private final ThreadLocal<OutputStream> target = new ThreadLocal<>();
+
+    OutputRouter(OutputStream fallback) {
+        this.fallback = fallback;
+    }
+
+    void route(OutputStream stream) {
+        if (stream == null) {
+            target.remove();
+        } else {
+            target.set(stream);
+        }
+    }
+
+    private OutputStream current() {
+        OutputStream stream = target.get();
+        return stream != null ? stream : fallback;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        current().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        current().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        current().flush();
+    }
+}
@@ -1,36 +1,336 @@
 package dk.sdu.imada.teaching.compiler.fs24.verbosepl;
 
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.binary.AstReader;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.binary.AstWriter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTPrinter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode.Chunk;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode.Compiler;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode.VM;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.cache.CompilationCache;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.CollectingDiagnostics;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostic;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostics;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.TypeChecker;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.ControlFlowGraph;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.IrBuilder;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.IrInterpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.IrOptimizer;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.IrPrinter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.jit.TieredInterpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.lsp.LanguageServer;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.optimize.Optimizer;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.ByteSource;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize.SpecializingInterpreter;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
-import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.StreamingScanner;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenSource;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
 
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class VerbosePL {
+    // Binary ASTs are written to and recognized by this suffix
+    private static final String AST_SUFFIX = ".vpla";
 
-    // Expects files that comprise an VPL program as arguments
-    public static void main(String[] args) throws IOException {
-        for (String s: args)
-           new VerbosePL().interpretFile(s);
+    // Which execution engine runs the parsed program: "tree" (default), "vm", "tiered",
+    // "specializing" or "ir"
+    private String engine = "tree";
+    // Scan memory-mapped file bytes instead of streaming decoded chars
+    private boolean mapped = false;
+    // How many files are processed at the same time
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    // Also report every scanned and consumed token
+    private boolean trace = false;
+    // Compiled chunks of earlier runs; null without --cache or with an engine other than vm
+    private CompilationCache cache;
+    // Also write each parsed file's binary AST to <file>.vpla
+    private boolean emitAst = false;
+    // Print each parsed file's AST to stdout before running it
+    private boolean printAst = false;
+    // Fold constants and prune dead branches before running
+    private boolean optimize = true;
+    // Print each file's SSA IR to stdout before running it
+    private boolean dumpIr = false;
+
+    // Expects files that comprise an VPL program as arguments, plus the options
+    // --engine=<tree|vm|tiered|specializing|ir>, --mmap, --jobs=<n> (files processed in parallel),
+    // --trace and --cache=<dir> (reuse compiled code of unchanged files; --cache-size=<bytes>
+    // bounds it), --emit-ast (save <file>.vpla), --print-ast, --dump-ir and --no-optimize. A .vpla
+    // file given as input runs without being parsed.
+    // `VerbosePL lsp` instead runs a language server on stdin/stdout.
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("lsp")) {
+            System.exit(new LanguageServer(System.in, System.out).run());
+        }
+
+        VerbosePL verbosePL = new VerbosePL();
+        List<String> paths = new ArrayList<>();
+        String cacheDirectory = null;
+        long cacheSize = CompilationCache.DEFAULT_MAX_BYTES;
+        for (String s: args) {
+            if (s.startsWith("--engine=")) {
+                verbosePL.engine = s.substring("--engine=".length());
+            } else if (s.equals("--mmap")) {
+                verbosePL.mapped = true;
+            } else if (s.startsWith("--cache=")) {
+                cacheDirectory = s.substring("--cache=".length());
+            } else if (s.startsWith("--cache-size=")) {
+                cacheSize = Long.parseLong(s.substring("--cache-size=".length()));
+            } else if (s.equals("--no-optimize")) {
+                verbosePL.optimize = false;
+            } else if (s.equals("--emit-ast")) {
+                verbosePL.emitAst = true;
+            } else if (s.equals("--print-ast")) {
+                verbosePL.printAst = true;
+            } else if (s.equals("--dump-ir")) {
+                verbosePL.dumpIr = true;
+            } else if (s.equals("--trace")) {
+                verbosePL.trace = true;
+            } else if (s.startsWith("--jobs=")) {
+                verbosePL.jobs = Integer.parseInt(s.substring("--jobs=".length()));
+            } else {
+                paths.add(s);
+            }
+        }
+        if (cacheDirectory != null) {
+            if (verbosePL.engine.equals("vm")) {
+                verbosePL.cache = new CompilationCache(Paths.get(cacheDirectory), cacheSize);
+            } else {
+                System.err.println("Warning: --cache only applies to --engine=vm; it is ignored for '" + verbosePL.engine + "'.");
+            }
+        }
+
+        if (verbosePL.jobs <= 1 || paths.size() <= 1) {
+            for (String path : paths)
+                verbosePL.processFile(path);
+        } else {
+            verbosePL.processInParallel(paths);
+        }
+    }
+
+    // Runs one file; a file that can't be read or crashes is reported, and the next one runs
+    private void processFile(String path) {
+        try {
+            timeFile(path);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error processing " + path + ": " + e);
+        }
+    }
+
+    private void timeFile(String path) throws IOException {
+        long start = System.nanoTime();
+        interpretFile(path);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(" ------------ Finished file " + path + " in " + millis + " ms ------------ \n");
+    }
+
+    /**
+     * Runs every file on its own worker, capturing what it prints to System.out and System.err,
+     * and replays the captured output in argument order as soon as each file's turn comes.
+     */
+    private void processInParallel(List<String> paths) throws InterruptedException {
+        PrintStream realOut = System.out;
+        PrintStream realErr = System.err;
+        OutputRouter outRouter = new OutputRouter(realOut);
+        OutputRouter errRouter = new OutputRouter(realErr);
+        System.setOut(new PrintStream(outRouter, true));
+        System.setErr(new PrintStream(errRouter, true));
+
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        try {
+            List<Future<ByteArrayOutputStream[]>> results = new ArrayList<>();
+            for (String path : paths) {
+                results.add(pool.submit(() -> {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    ByteArrayOutputStream err = new ByteArrayOutputStream();
+                    outRouter.route(out);
+                    errRouter.route(err);
+                    try {
+                        processFile(path);
+                    } finally {
+                        outRouter.route(null);
+                        errRouter.route(null);
+                    }
+                    return new ByteArrayOutputStream[] { out, err };
+                }));
+            }
+
+            for (Future<ByteArrayOutputStream[]> result : results) {
+                ByteArrayOutputStream[] output;
+                try {
+                    output = result.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                realOut.write(output[0].toByteArray(), 0, output[0].size());
+                realOut.flush();
+                realErr.write(output[1].toByteArray(), 0, output[1].size());
+                realErr.flush();
+            }
+        } finally {
+            pool.shutdownNow();
+            System.setOut(realOut);
+            System.setErr(realErr);
+        }
     }
 
     private void interpretFile(String path) throws IOException {
         System.out.println(" ------------ Processing file " + path + " ------------ \n");
+        Diagnostics diagnostics = new CollectingDiagnostics(trace ? Diagnostics.Level.TRACE : Diagnostics.Level.WARNING);
 
-        run(new String(Files.readAllBytes(Paths.get(path))));
+        if (path.endsWith(AST_SUFFIX)) {
+            // Precompiled: nothing is scanned or parsed. Statements are decoded from the mapped
+            // file, all of them before anything runs, since the resolver walks the whole program
+            try {
+                execute(AstReader.map(Paths.get(path)).statements(), null);
+            } catch (AstReader.FormatError error) {
+                System.err.println("Damaged AST file " + path + ": " + error.getMessage());
+            }
+            return;
+        }
+
+        if (cache != null) {
+            // An unchanged file runs straight from its cached chunk, unless the AST or IR was asked
+            // for: those come out of the front end, so the file is compiled again (and re-cached)
+            byte[] bytes = Files.readAllBytes(Paths.get(path));
+            String key = CompilationCache.key(bytes, optimize);
+            Chunk chunk = printAst || emitAst || dumpIr ? null : cache.load(key);
+            if (chunk != null) {
+                new VM().interpret(chunk);
+                return;
+            }
+            run(path, new Scanner(new String(bytes, StandardCharsets.UTF_8), diagnostics).scanTokenBufferParallel().cursor(),
+                    diagnostics, key);
+            return;
+        }
+
+        if (mapped) {
+            // Lex the page-cached bytes directly; nothing is copied onto the heap up front, and
+            // large files are lexed in chunks on several cores
+            Scanner scanner = new Scanner(ByteSource.map(Paths.get(path)), diagnostics);
+            run(path, scanner.scanTokenBufferParallel().cursor(), diagnostics, null);
+            return;
+        }
+
+        // Stream the file through the scanner instead of reading it into memory first
+        try (Reader reader = Files.newBufferedReader(Paths.get(path))) {
+            run(path, new StreamingScanner(reader, diagnostics), diagnostics, null);
+        }
 
     }
 
-    private void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        parser.parse();
+    // cacheKey is where the compiled chunk goes in the cache, or null to not store it
+    private void run(String path, TokenSource tokens, Diagnostics diagnostics, String cacheKey) throws IOException {
+        Parser parser = new Parser(tokens, diagnostics);
+        List<Stmt> statements = parser.parse();
+        for (Diagnostic diagnostic : diagnostics.records()) {
+            System.err.println(diagnostic);
+        }
+        if (diagnostics.hasErrors()) return;
+
+        if (printAst) {
+            // Buffered here, as System.out flushes on every line
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            new ASTPrinter().print(statements, out);
+            out.flush();
+        }
+        if (emitAst) {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(path + AST_SUFFIX)))) {
+                new AstWriter().write(statements, out);
+            }
+        }
+        execute(statements, cacheKey);
+    }
+
+    private void execute(List<Stmt> statements, String cacheKey) {
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        if (resolver.hadError()) return;
+        TypeChecker checker = new TypeChecker();
+        checker.check(statements);
+        if (checker.hadError()) return;
+
+        if (optimize) {
+            // The optimizer reads the resolution and rebuilds the tree, which is then resolved
+            // and typed anew
+            statements = new Optimizer().optimize(statements);
+            resolver = new Resolver();
+            resolver.resolve(statements);
+            if (resolver.hadError()) return;
+            checker = new TypeChecker();
+            checker.check(statements);
+            if (checker.hadError()) return;
+        }
+
+        ControlFlowGraph graph = null;
+        if (dumpIr || engine.equals("ir")) {
+            try {
+                graph = new IrBuilder().build(statements);
+            } catch (IrBuilder.LoweringError error) {
+                System.err.println("Compile error: " + error.getMessage());
+                return;
+            }
+            if (optimize) new IrOptimizer().optimize(graph);
+            if (dumpIr) {
+                System.out.print(new IrPrinter().print(graph));
+            }
+        }
+
+        switch (engine) {
+            case "vm":
+                Chunk chunk;
+                try {
+                    chunk = new Compiler().compile(statements, resolver.globalSlots());
+                } catch (Compiler.CompileError error) {
+                    System.err.println("Compile error: " + error.getMessage());
+                    return;
+                }
+                if (cacheKey != null) {
+                    try {
+                        cache.store(cacheKey, chunk);
+                    } catch (IOException e) {
+                        System.err.println("Could not cache " + cacheKey + ": " + e.getMessage());
+                    }
+                }
+                new VM().interpret(chunk);
+                break;
+            case "tree":
+                new Interpreter().interpret(statements, resolver.globalSlots());
+                break;
+            case "tiered":
+                new TieredInterpreter().interpret(statements, resolver.globalSlots());
+                break;
+            case "specializing":
+                new SpecializingInterpreter().interpret(statements, resolver.globalSlots());
+                break;
+            case "ir":
+                new IrInterpreter().interpret(graph);
+                break;
+            default:
+                System.err.println("Unknown engine '" + engine + "'.");
+        }
     }
 
     public void saveToFile(StringBuilder stringContent, String target) {
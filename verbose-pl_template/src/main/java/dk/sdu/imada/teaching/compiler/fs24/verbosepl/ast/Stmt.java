@@ -27,6 +27,9 @@ public abstract class Stmt {
         }
 
         public final List<Stmt> statements;
+
+        // Filled in by the Resolver: size of the frame this block allocates (0 = no frame needed)
+        public int slots = 0;
     }
 
     public static class Expression extends Stmt {
@@ -87,6 +90,9 @@ public abstract class Stmt {
         public final Token name;
         public final Token type;  // Added type token
         public final Expr initializer;
+
+        // Filled in by the Resolver: slot of the variable in its declaring frame
+        public int slot = -1;
     }
 
     public static class While extends Stmt {
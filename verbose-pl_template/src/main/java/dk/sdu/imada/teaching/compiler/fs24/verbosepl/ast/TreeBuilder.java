@@ -0,0 +1,64 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+
+/**
+ * What the Parser builds its output through. Nodes are reported bottom-up: a builder keeps a
+ * stack of finished nodes, and each call pops the children it names off the top (in source
+ * order, the last child topmost) and pushes the node made from them.
+ *
+ * Tokens come with their index in the token stream, so a builder can refer to them by index
+ * instead of keeping the Token objects.
+ */
+public interface TreeBuilder {
+
+    // A TRUE, FALSE, NUMBER or STRING token
+    void literal(Token token, int index);
+
+    void variable(Token name, int index);
+
+    // Children: the expression
+    void grouping();
+
+    // Children: the operand
+    void unary(Token operator, int index);
+
+    // Children: left, right
+    void binary(Token operator, int index);
+
+    // Children: left, right
+    void logical(Token operator, int index);
+
+    // Children: target, value. Only called when isVariable(1) holds
+    void assignment();
+
+    // Whether the node depth places below the top of the stack is a variable
+    boolean isVariable(int depth);
+
+    // Throws away the node on top of the stack
+    void drop();
+
+    // Children: the expression
+    void expressionStatement();
+
+    // Children: the expression
+    void printStatement();
+
+    // Children: the initializer, if there is one
+    void varStatement(Token name, int nameIndex, Token type, int typeIndex, boolean initialized);
+
+    // Children: condition, then branch, else branch if there is one
+    void ifStatement(boolean hasElse);
+
+    // Children: condition, body
+    void whileStatement();
+
+    // Children: the count statements of the block
+    void block(int count);
+
+    // The current build position, for reset() to return to
+    int mark();
+
+    // Discards every node pushed since mark() returned position, after a parse error
+    void reset(int position);
+}
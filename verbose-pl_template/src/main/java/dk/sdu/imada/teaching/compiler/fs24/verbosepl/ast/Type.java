@@ -0,0 +1,43 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+
+/**
+ * Static type of an expression, as inferred by the TypeChecker. ANY means the type is not known
+ * statically (a variable that may still be nil, say), so the value has to be checked at runtime.
+ */
+public enum Type {
+    BOOL("Bool"),
+    NUMBER("Number"),
+    STRING("String"),
+    ANY("Any");
+
+    private final String spelling;
+
+    Type(String spelling) {
+        this.spelling = spelling;
+    }
+
+    // The type named after 'of_type' in a declaration
+    public static Type of(Token typeName) {
+        switch (typeName.type) {
+            case BOOL_TYPE: return BOOL;
+            case NUMBER_TYPE: return NUMBER;
+            case STRING_TYPE: return STRING;
+            default: return ANY;
+        }
+    }
+
+    // The type of a literal value
+    public static Type of(Object value) {
+        if (value instanceof Boolean) return BOOL;
+        if (value instanceof Double) return NUMBER;
+        if (value instanceof String) return STRING;
+        return ANY;
+    }
+
+    @Override
+    public String toString() {
+        return spelling;
+    }
+}
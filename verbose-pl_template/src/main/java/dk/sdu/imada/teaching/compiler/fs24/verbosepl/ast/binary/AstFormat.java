@@ -0,0 +1,47 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.binary;
+
+/**
+ * Layout of a binary AST file (all integers unsigned LEB128 varints unless noted):
+ *
+ *   file      = magic (4 bytes "VPLA") version (4 bytes, big endian) constants list
+ *   constants = count, then per constant: STRING length utf8-bytes | NUMBER 8-byte double
+ *   list      = count, count element sizes in bytes, then the elements back to back
+ *   node      = tag, then the fields of that node type in declaration order
+ *
+ * A statement list can be skipped without reading it, since a Block node stores the byte length
+ * of its list before the list. A single element can be found from the size table without
+ * decoding the ones before it. Tokens are (type ordinal, lexeme constant, line, value), and
+ * values are NULL, TRUE, FALSE or CONSTANT index.
+ */
+final class AstFormat {
+    static final int MAGIC = 0x56504C41;  // "VPLA"
+    static final int VERSION = 1;
+
+    static final byte STRING_CONSTANT = 0;
+    static final byte NUMBER_CONSTANT = 1;
+
+    // Node tags; NONE stands in for an absent optional child
+    static final byte NONE = 0;
+    static final byte BLOCK = 1;
+    static final byte EXPRESSION = 2;
+    static final byte IF = 3;
+    static final byte PRINT = 4;
+    static final byte VAR = 5;
+    static final byte WHILE = 6;
+    static final byte RETURN = 7;
+    static final byte BINARY = 16;
+    static final byte GROUPING = 17;
+    static final byte LITERAL = 18;
+    static final byte UNARY = 19;
+    static final byte ASSIGNMENT = 20;
+    static final byte LOGICAL = 21;
+    static final byte VARIABLE = 22;
+
+    // Value tags for literals
+    static final byte NULL_VALUE = 0;
+    static final byte TRUE_VALUE = 1;
+    static final byte FALSE_VALUE = 2;
+    static final byte CONSTANT_VALUE = 3;
+
+    private AstFormat() {}
+}
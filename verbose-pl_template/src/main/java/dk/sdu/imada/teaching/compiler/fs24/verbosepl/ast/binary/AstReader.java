@@ -0,0 +1,292 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.binary;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.SymbolTable;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.binary.AstFormat.*;
+
+/**
+ * Decodes a program written by AstWriter. Statement lists (the program itself and every Block
+ * body) are decoded lazily, one element at a time, the first time they are looked at.
+ * Constants are decoded on first use too. Over a mapped file, only the pages of the parts a
+ * program actually touches are read.
+ *
+ * A file that is damaged or cut short is reported as an IOException when it is opened, if the
+ * header or constants are affected, or else as a FormatError when the broken part is decoded.
+ */
+public class AstReader {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final ByteBuffer buffer;
+    // Offset of every constant; decoded values are cached in constants
+    private final int[] constantOffsets;
+    private final Object[] constants;
+    // Symbol of each constant used as an identifier, interned on first use; NO_SYMBOL until then
+    private final int[] constantSymbols;
+    private final SymbolTable symbols = new SymbolTable();
+    private final int programOffset;
+    // Decoding position; lazy lists set it before decoding an element
+    private int position;
+    private int decodedStatements = 0;
+
+    public AstReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < 8 || buffer.getInt(0) != MAGIC) throw new IOException("Not a VerbosePL AST file.");
+        int version = buffer.getInt(4);
+        if (version != VERSION) throw new IOException("Unsupported AST version " + version + ".");
+
+        position = 8;
+        try {
+            int count = length();
+            constantOffsets = new int[count];
+            constants = new Object[count];
+            constantSymbols = new int[count];
+            Arrays.fill(constantSymbols, Token.NO_SYMBOL);
+            for (int i = 0; i < count; i++) {
+                constantOffsets[i] = position;
+                if (buffer.get(position++) == NUMBER_CONSTANT) {
+                    position += Double.BYTES;
+                } else {
+                    int length = length();
+                    position += length;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated AST file.");
+        }
+        programOffset = position;
+    }
+
+    /** Maps the file read-only; the mapping stays valid after the channel is closed. */
+    public static AstReader map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new AstReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** True if the bytes start like an AST file; for telling precompiled inputs from source. */
+    public static boolean isAstFile(ByteBuffer bytes) {
+        return bytes.limit() >= 4 && bytes.getInt(0) == MAGIC;
+    }
+
+    public List<Stmt> statements() {
+        return new LazyList(programOffset);
+    }
+
+    // How many statements have been decoded so far
+    public int decodedStatements() {
+        return decodedStatements;
+    }
+
+    // Symbols of the identifiers decoded so far
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    private final class LazyList extends AbstractList<Stmt> implements RandomAccess {
+        private final int size;
+        private final int[] offsets;
+        private final Stmt[] decoded;
+
+        LazyList(int offset) {
+            int saved = position;
+            position = offset;
+            try {
+                size = length();
+                offsets = new int[size];
+                int next = 0;
+                for (int i = 0; i < size; i++) {
+                    offsets[i] = next;
+                    next += varint();
+                }
+                for (int i = 0; i < size; i++) offsets[i] += position;
+            } catch (IndexOutOfBoundsException e) {
+                throw new FormatError("Truncated statement list at offset " + offset + ".");
+            }
+            decoded = new Stmt[size];
+            position = saved;
+        }
+
+        @Override
+        public Stmt get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            if (decoded[index] == null) {
+                int saved = position;
+                position = offsets[index];
+                try {
+                    decoded[index] = stmt();
+                } catch (IndexOutOfBoundsException | ClassCastException e) {
+                    // Offsets, indices or constants that don't fit the rest of the file
+                    throw new FormatError("Damaged statement at offset " + offsets[index] + " (" + e + ").");
+                }
+                position = saved;
+            }
+            return decoded[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private Stmt stmt() {
+        byte tag = buffer.get(position++);
+        if (tag == NONE) return null;
+        decodedStatements++;
+        switch (tag) {
+            case BLOCK: {
+                int length = varint();
+                // The body is decoded when someone looks at it; here it is only skipped
+                Stmt.Block block = new Stmt.Block(new LazyList(position));
+                position += length;
+                return block;
+            }
+            case EXPRESSION:
+                return new Stmt.Expression(expr());
+            case IF: {
+                Expr condition = expr();
+                Stmt thenBranch = stmt();
+                Stmt elseBranch = stmt();
+                return new Stmt.If(condition, thenBranch, elseBranch);
+            }
+            case PRINT:
+                return new Stmt.Print(expr());
+            case VAR: {
+                Token name = token();
+                Token type = token();
+                return new Stmt.Var(name, type, expr());
+            }
+            case WHILE: {
+                Expr condition = expr();
+                return new Stmt.While(condition, stmt());
+            }
+            case RETURN: {
+                Token keyword = token();
+                return new Stmt.Return(keyword, expr());
+            }
+            default:
+                throw new FormatError("Bad statement tag " + tag + " at offset " + (position - 1) + ".");
+        }
+    }
+
+    private Expr expr() {
+        byte tag = buffer.get(position++);
+        switch (tag) {
+            case NONE:
+                return null;
+            case BINARY: {
+                Expr left = expr();
+                Token operator = token();
+                return new Expr.Binary(left, operator, expr());
+            }
+            case GROUPING:
+                return new Expr.Grouping(expr());
+            case LITERAL:
+                return new Expr.Literal(value());
+            case UNARY: {
+                Token operator = token();
+                return new Expr.Unary(operator, expr());
+            }
+            case ASSIGNMENT: {
+                Token name = token();
+                return new Expr.Assignment(name, expr());
+            }
+            case LOGICAL: {
+                Expr left = expr();
+                Token operator = token();
+                return new Expr.Logical(left, operator, expr());
+            }
+            case VARIABLE:
+                return new Expr.Variable(token());
+            default:
+                throw new FormatError("Bad expression tag " + tag + " at offset " + (position - 1) + ".");
+        }
+    }
+
+    private Token token() {
+        TokenType type = TYPES[varint()];
+        int index = varint();
+        String lexeme = (String) constant(index);
+        int line = varint();
+        if (type != TokenType.IDENTIFIER) return new Token(type, lexeme, value(), line);
+
+        if (constantSymbols[index] == Token.NO_SYMBOL) {
+            constantSymbols[index] = symbols.intern(lexeme);
+        }
+        return new Token(type, lexeme, value(), line, constantSymbols[index]);
+    }
+
+    private Object value() {
+        byte tag = buffer.get(position++);
+        switch (tag) {
+            case NULL_VALUE: return null;
+            case TRUE_VALUE: return Boolean.TRUE;
+            case FALSE_VALUE: return Boolean.FALSE;
+            case CONSTANT_VALUE: return constant(varint());
+            default:
+                throw new FormatError("Bad value tag " + tag + " at offset " + (position - 1) + ".");
+        }
+    }
+
+    private Object constant(int index) {
+        Object value = constants[index];
+        if (value == null) {
+            int offset = constantOffsets[index];
+            if (buffer.get(offset) == NUMBER_CONSTANT) {
+                value = buffer.getDouble(offset + 1);
+            } else {
+                int saved = position;
+                position = offset + 1;
+                int length = length();
+                byte[] utf8 = new byte[length];
+                buffer.get(position, utf8);
+                value = new String(utf8, StandardCharsets.UTF_8);
+                position = saved;
+            }
+            constants[index] = value;
+        }
+        return value;
+    }
+
+    // A count or size of what follows, which can't be more than the bytes that are left
+    private int length() {
+        int length = varint();
+        if (length < 0 || length > buffer.limit() - position) {
+            throw new IndexOutOfBoundsException("Length " + length + " at offset " + position + " runs past the end.");
+        }
+        return length;
+    }
+
+    private int varint() {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get(position++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+            shift += 7;
+        }
+    }
+
+    /** The file is damaged: what was decoded doesn't make up a valid program. */
+    public static class FormatError extends RuntimeException {
+        FormatError(String message) {
+            super(message);
+        }
+    }
+}
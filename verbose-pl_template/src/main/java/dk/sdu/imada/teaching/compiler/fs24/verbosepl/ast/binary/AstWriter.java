@@ -0,0 +1,253 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.binary;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTVisitor;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.binary.AstFormat.*;
+
+/**
+ * Encodes a program in the format described in AstFormat. Resolver annotations (slots, depths)
+ * are not stored; run the Resolver again on the loaded program.
+ */
+public class AstWriter implements ASTVisitor<Void> {
+
+    // Growable byte array with varint support
+    private static final class Bytes {
+        byte[] data = new byte[64];
+        int size = 0;
+
+        void write(int b) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = (byte) b;
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) write((int) (value >>> shift));
+        }
+
+        void writeBytes(byte[] bytes, int length) {
+            if (size + length > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+            System.arraycopy(bytes, 0, data, size, length);
+            size += length;
+        }
+    }
+
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+    private Bytes out;
+
+    public void write(List<Stmt> statements, OutputStream stream) throws IOException {
+        Bytes program = list(statements);
+
+        Bytes file = new Bytes();
+        file.writeLong(((long) MAGIC << 32) | VERSION);
+        file.writeVarint(constants.size());
+        for (Object constant : constants) {
+            if (constant instanceof Double) {
+                file.write(NUMBER_CONSTANT);
+                file.writeLong(Double.doubleToRawLongBits((Double) constant));
+            } else {
+                byte[] utf8 = ((String) constant).getBytes(StandardCharsets.UTF_8);
+                file.write(STRING_CONSTANT);
+                file.writeVarint(utf8.length);
+                file.writeBytes(utf8, utf8.length);
+            }
+        }
+        file.writeBytes(program.data, program.size);
+        stream.write(file.data, 0, file.size);
+    }
+
+    private Bytes list(List<Stmt> statements) {
+        Bytes saved = out;
+        Bytes[] elements = new Bytes[statements.size()];
+        for (int i = 0; i < elements.length; i++) {
+            out = new Bytes();
+            statements.get(i).accept(this);
+            elements[i] = out;
+        }
+
+        Bytes list = new Bytes();
+        list.writeVarint(elements.length);
+        for (Bytes element : elements) list.writeVarint(element.size);
+        for (Bytes element : elements) list.writeBytes(element.data, element.size);
+        out = saved;
+        return list;
+    }
+
+    private int constant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private void value(Object value) {
+        if (value == null) {
+            out.write(NULL_VALUE);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE_VALUE : FALSE_VALUE);
+        } else if (value instanceof Double || value instanceof String) {
+            out.write(CONSTANT_VALUE);
+            out.writeVarint(constant(value));
+        } else {
+            throw new IllegalArgumentException("Cannot encode literal of type " + value.getClass().getSimpleName() + ".");
+        }
+    }
+
+    private void token(Token token) {
+        out.writeVarint(token.type.ordinal());
+        out.writeVarint(constant(token.lexeme));
+        out.writeVarint(token.line);
+        value(token.literal);
+    }
+
+    private void node(Expr expr) {
+        if (expr == null) {
+            out.write(NONE);
+        } else {
+            expr.accept(this);
+        }
+    }
+
+    private void node(Stmt stmt) {
+        if (stmt == null) {
+            out.write(NONE);
+        } else {
+            stmt.accept(this);
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        Bytes body = list(stmt.statements);
+        out.write(BLOCK);
+        out.writeVarint(body.size);
+        out.writeBytes(body.data, body.size);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        out.write(EXPRESSION);
+        node(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        out.write(IF);
+        node(stmt.condition);
+        node(stmt.thenBranch);
+        node(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        out.write(PRINT);
+        node(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        out.write(VAR);
+        token(stmt.name);
+        token(stmt.type);
+        node(stmt.initializer);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        out.write(WHILE);
+        node(stmt.condition);
+        node(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        out.write(RETURN);
+        token(stmt.keyword);
+        node(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        out.write(BINARY);
+        node(expr.left);
+        token(expr.operator);
+        node(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        out.write(GROUPING);
+        node(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        out.write(LITERAL);
+        value(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        out.write(UNARY);
+        token(expr.operator);
+        node(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignmentExpr(Expr.Assignment expr) {
+        out.write(ASSIGNMENT);
+        token(expr.name);
+        node(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        out.write(LOGICAL);
+        node(expr.left);
+        token(expr.operator);
+        node(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        out.write(VARIABLE);
+        token(expr.name);
+        return null;
+    }
+}
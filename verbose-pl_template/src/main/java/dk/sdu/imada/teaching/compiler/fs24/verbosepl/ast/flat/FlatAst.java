@@ -0,0 +1,223 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenBuffer;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A program as parallel primitive arrays instead of an object graph. A node is an int: its
+ * index into kinds, firstChild, nextSibling, token and constant. Children are linked from
+ * their parent's firstChild through nextSibling, in source order, and the top-level statements
+ * are linked the same way from firstStatement(). Tokens are referred to by their index in the
+ * TokenBuffer the program was parsed from.
+ *
+ * A program of any size is the same dozen objects, against one per node and one per kept token
+ * for Expr and Stmt. Built by Parser.parseFlat(); walked with accept() and a FlatVisitor, or
+ * through the accessors below.
+ *
+ * What each kind keeps:
+ *   NUMBER: constant indexes the number pool          STRING: constant is the symbol
+ *   TRUE, FALSE: nothing                              VARIABLE: token is the name
+ *   GROUPING: the expression                          UNARY: token is the operator; operand
+ *   BINARY, LOGICAL: token is the operator; left, right
+ *   ASSIGNMENT: token is the name; value              EXPRESSION, PRINT: the expression
+ *   VAR: token is the name, constant the type token; initializer if there is one
+ *   IF: condition, then branch, else branch if there is one
+ *   WHILE: condition, body                            BLOCK: its statements
+ */
+public final class FlatAst {
+
+    // Stands in for a missing child, sibling, token or constant
+    public static final int NONE = -1;
+
+    // Node kinds
+    public static final byte NUMBER = 0;
+    public static final byte STRING = 1;
+    public static final byte TRUE = 2;
+    public static final byte FALSE = 3;
+    public static final byte VARIABLE = 4;
+    public static final byte GROUPING = 5;
+    public static final byte UNARY = 6;
+    public static final byte BINARY = 7;
+    public static final byte LOGICAL = 8;
+    public static final byte ASSIGNMENT = 9;
+    public static final byte EXPRESSION = 10;
+    public static final byte PRINT = 11;
+    public static final byte VAR = 12;
+    public static final byte IF = 13;
+    public static final byte WHILE = 14;
+    public static final byte BLOCK = 15;
+
+    final TokenBuffer tokens;
+
+    // One entry per node; filled in by FlatAstBuilder and rewritten by FlatConstantFolder
+    byte[] kinds;
+    int[] firstChild;
+    int[] nextSibling;
+    int[] token;
+    int[] constant;
+    int size;
+
+    double[] numbers;
+    int numberCount;
+
+    int firstStatement = NONE;
+
+    FlatAst(TokenBuffer tokens, int capacity) {
+        this.tokens = tokens;
+        this.kinds = new byte[capacity];
+        this.firstChild = new int[capacity];
+        this.nextSibling = new int[capacity];
+        this.token = new int[capacity];
+        this.constant = new int[capacity];
+        this.numbers = new double[Math.max(capacity / 4, 4)];
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    // Number of nodes, including any that parse errors or folding left unreachable
+    public int size() {
+        return size;
+    }
+
+    public int firstStatement() {
+        return firstStatement;
+    }
+
+    public byte kind(int node) {
+        return kinds[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    // The n-th child of node, counting from 0, or NONE
+    public int child(int node, int n) {
+        int child = firstChild[node];
+        for (int i = 0; i < n && child != NONE; i++) {
+            child = nextSibling[child];
+        }
+        return child;
+    }
+
+    public int token(int node) {
+        return token[node];
+    }
+
+    public int constant(int node) {
+        return constant[node];
+    }
+
+    // The operator of a UNARY, BINARY or LOGICAL node
+    public TokenType operator(int node) {
+        return tokens.type(token[node]);
+    }
+
+    // The lexeme of node's token: a name or an operator
+    public String lexeme(int node) {
+        return tokens.lexeme(token[node]);
+    }
+
+    public int line(int node) {
+        return tokens.line(token[node]);
+    }
+
+    // The symbol of a VARIABLE, ASSIGNMENT or VAR's name
+    public int symbol(int node) {
+        return tokens.symbol(token[node]);
+    }
+
+    public double number(int node) {
+        return numbers[constant[node]];
+    }
+
+    public String string(int node) {
+        return tokens.symbols().name(constant[node]);
+    }
+
+    // The declared type of a VAR node
+    public TokenType declaredType(int node) {
+        return tokens.type(constant[node]);
+    }
+
+    public <R> R accept(int node, FlatVisitor<R> visitor) {
+        switch (kinds[node]) {
+            case NUMBER: return visitor.visitNumber(node);
+            case STRING: return visitor.visitString(node);
+            case TRUE:
+            case FALSE: return visitor.visitBoolean(node);
+            case VARIABLE: return visitor.visitVariable(node);
+            case GROUPING: return visitor.visitGrouping(node);
+            case UNARY: return visitor.visitUnary(node);
+            case BINARY: return visitor.visitBinary(node);
+            case LOGICAL: return visitor.visitLogical(node);
+            case ASSIGNMENT: return visitor.visitAssignment(node);
+            case EXPRESSION: return visitor.visitExpression(node);
+            case PRINT: return visitor.visitPrint(node);
+            case VAR: return visitor.visitVar(node);
+            case IF: return visitor.visitIf(node);
+            case WHILE: return visitor.visitWhile(node);
+            case BLOCK: return visitor.visitBlock(node);
+            default: throw new IllegalStateException("Unknown node kind " + kinds[node] + ".");
+        }
+    }
+
+    // The same program as Expr and Stmt objects, for the passes that only work on those
+    public List<Stmt> toStatements() {
+        return statements(firstStatement);
+    }
+
+    private List<Stmt> statements(int first) {
+        List<Stmt> statements = new ArrayList<>();
+        for (int node = first; node != NONE; node = nextSibling[node]) {
+            statements.add(toStmt(node));
+        }
+        return statements;
+    }
+
+    private Stmt toStmt(int node) {
+        int first = firstChild[node];
+        switch (kinds[node]) {
+            case EXPRESSION: return new Stmt.Expression(toExpr(first));
+            case PRINT: return new Stmt.Print(toExpr(first));
+            case VAR: return new Stmt.Var(tokens.token(token[node]), tokens.token(constant[node]),
+                    first == NONE ? null : toExpr(first));
+            case IF: {
+                int elseBranch = nextSibling[nextSibling[first]];
+                return new Stmt.If(toExpr(first), toStmt(nextSibling[first]),
+                        elseBranch == NONE ? null : toStmt(elseBranch));
+            }
+            case WHILE: return new Stmt.While(toExpr(first), toStmt(nextSibling[first]));
+            case BLOCK: return new Stmt.Block(statements(first));
+            default: throw new IllegalStateException("Node " + node + " is not a statement.");
+        }
+    }
+
+    private Expr toExpr(int node) {
+        int first = firstChild[node];
+        switch (kinds[node]) {
+            case NUMBER: return new Expr.Literal(number(node));
+            case STRING: return new Expr.Literal(string(node));
+            case TRUE: return new Expr.Literal(true);
+            case FALSE: return new Expr.Literal(false);
+            case VARIABLE: return new Expr.Variable(tokens.token(token[node]));
+            case GROUPING: return new Expr.Grouping(toExpr(first));
+            case UNARY: return new Expr.Unary(tokens.token(token[node]), toExpr(first));
+            case BINARY: return new Expr.Binary(toExpr(first), tokens.token(token[node]), toExpr(nextSibling[first]));
+            case LOGICAL: return new Expr.Logical(toExpr(first), tokens.token(token[node]), toExpr(nextSibling[first]));
+            case ASSIGNMENT: return new Expr.Assignment(tokens.token(token[node]), toExpr(first));
+            default: throw new IllegalStateException("Node " + node + " is not an expression.");
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.TreeBuilder;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenBuffer;
+
+import java.util.Arrays;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat.FlatAst.*;
+
+/**
+ * Appends the nodes the Parser reports to a FlatAst. The Token objects passed in are not kept;
+ * nodes refer to their tokens by index instead.
+ */
+public final class FlatAstBuilder implements TreeBuilder {
+
+    private final FlatAst ast;
+    // Finished nodes waiting for their parent
+    private int[] stack = new int[16];
+    private int top = 0;
+    private int lastStatement = NONE;
+
+    public FlatAstBuilder(TokenBuffer tokens) {
+        // About one node per two tokens in typical programs
+        this.ast = new FlatAst(tokens, Math.max(tokens.size() / 2, 16));
+    }
+
+    // Adds the statement on top of the stack to the end of the program
+    public void addStatement() {
+        int statement = stack[--top];
+        if (lastStatement == NONE) {
+            ast.firstStatement = statement;
+        } else {
+            ast.nextSibling[lastStatement] = statement;
+        }
+        lastStatement = statement;
+    }
+
+    public FlatAst build() {
+        return ast;
+    }
+
+    @Override
+    public void literal(Token token, int index) {
+        switch (token.type) {
+            case TRUE:
+                push(node(TRUE, NONE, NONE, 0));
+                break;
+            case FALSE:
+                push(node(FALSE, NONE, NONE, 0));
+                break;
+            case NUMBER:
+                push(node(NUMBER, index, number(ast.tokens.number(index)), 0));
+                break;
+            default:
+                push(node(STRING, index, ast.tokens.symbol(index), 0));
+                break;
+        }
+    }
+
+    @Override
+    public void variable(Token name, int index) {
+        push(node(VARIABLE, index, NONE, 0));
+    }
+
+    @Override
+    public void grouping() {
+        push(node(GROUPING, NONE, NONE, 1));
+    }
+
+    @Override
+    public void unary(Token operator, int index) {
+        push(node(UNARY, index, NONE, 1));
+    }
+
+    @Override
+    public void binary(Token operator, int index) {
+        push(node(BINARY, index, NONE, 2));
+    }
+
+    @Override
+    public void logical(Token operator, int index) {
+        push(node(LOGICAL, index, NONE, 2));
+    }
+
+    // The target's node becomes the assignment; it already holds the name token
+    @Override
+    public void assignment() {
+        int value = stack[--top];
+        int target = stack[top - 1];
+        ast.kinds[target] = ASSIGNMENT;
+        ast.firstChild[target] = value;
+    }
+
+    @Override
+    public boolean isVariable(int depth) {
+        return ast.kinds[stack[top - 1 - depth]] == VARIABLE;
+    }
+
+    @Override
+    public void drop() {
+        top--;
+    }
+
+    @Override
+    public void expressionStatement() {
+        push(node(EXPRESSION, NONE, NONE, 1));
+    }
+
+    @Override
+    public void printStatement() {
+        push(node(PRINT, NONE, NONE, 1));
+    }
+
+    @Override
+    public void varStatement(Token name, int nameIndex, Token type, int typeIndex, boolean initialized) {
+        push(node(VAR, nameIndex, typeIndex, initialized ? 1 : 0));
+    }
+
+    @Override
+    public void ifStatement(boolean hasElse) {
+        push(node(IF, NONE, NONE, hasElse ? 3 : 2));
+    }
+
+    @Override
+    public void whileStatement() {
+        push(node(WHILE, NONE, NONE, 2));
+    }
+
+    @Override
+    public void block(int count) {
+        push(node(BLOCK, NONE, NONE, count));
+    }
+
+    // Positions are node counts: everything built since is discarded, and so is every stack
+    // entry made since, since a node is always newer than the ones below it on the stack
+    @Override
+    public int mark() {
+        return ast.size;
+    }
+
+    @Override
+    public void reset(int position) {
+        while (top > 0 && stack[top - 1] >= position) {
+            top--;
+        }
+        ast.size = position;
+    }
+
+    // Appends a node whose children are the top children entries of the stack, which it pops
+    private int node(byte kind, int token, int constant, int children) {
+        int node = ast.size;
+        if (node == ast.kinds.length) grow();
+        ast.size++;
+
+        ast.kinds[node] = kind;
+        ast.token[node] = token;
+        ast.constant[node] = constant;
+        ast.nextSibling[node] = NONE;
+        ast.firstChild[node] = children == 0 ? NONE : stack[top - children];
+        for (int i = top - children; i < top - 1; i++) {
+            ast.nextSibling[stack[i]] = stack[i + 1];
+        }
+        top -= children;
+        return node;
+    }
+
+    private int number(double value) {
+        if (ast.numberCount == ast.numbers.length) ast.numbers = Arrays.copyOf(ast.numbers, ast.numberCount * 2);
+        ast.numbers[ast.numberCount] = value;
+        return ast.numberCount++;
+    }
+
+    private void push(int node) {
+        if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+        stack[top++] = node;
+    }
+
+    private void grow() {
+        int capacity = ast.kinds.length * 2;
+        ast.kinds = Arrays.copyOf(ast.kinds, capacity);
+        ast.firstChild = Arrays.copyOf(ast.firstChild, capacity);
+        ast.nextSibling = Arrays.copyOf(ast.nextSibling, capacity);
+        ast.token = Arrays.copyOf(ast.token, capacity);
+        ast.constant = Arrays.copyOf(ast.constant, capacity);
+    }
+}
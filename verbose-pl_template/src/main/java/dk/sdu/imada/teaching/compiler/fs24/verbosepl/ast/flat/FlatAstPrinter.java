@@ -0,0 +1,173 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat.FlatAst.NONE;
+
+/** Prints a FlatAst in the same indented format as ASTPrinter. */
+public class FlatAstPrinter implements FlatVisitor<Void> {
+
+    private static final String INDENT = "  ";
+
+    private FlatAst ast;
+    private Appendable out;
+    private int depth;
+
+    public void print(FlatAst ast, Appendable out) throws IOException {
+        this.ast = ast;
+        this.out = out;
+        this.depth = 0;
+        try {
+            for (int node = ast.firstStatement(); node != NONE; node = ast.nextSibling(node)) {
+                ast.accept(node, this);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public String print(FlatAst ast) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            print(ast, builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public Void visitNumber(int node) {
+        return line(Double.toString(ast.number(node)));
+    }
+
+    @Override
+    public Void visitString(int node) {
+        return line("\"" + ast.string(node) + "\"");
+    }
+
+    @Override
+    public Void visitBoolean(int node) {
+        return line(ast.kind(node) == FlatAst.TRUE ? "true" : "false");
+    }
+
+    @Override
+    public Void visitVariable(int node) {
+        line("VariableExpr");
+        depth++;
+        line(ast.lexeme(node));
+        depth--;
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(int node) {
+        return node("GroupingExpr", node);
+    }
+
+    @Override
+    public Void visitUnary(int node) {
+        line("UnaryExpr");
+        depth++;
+        line(ast.lexeme(node));
+        children(node);
+        depth--;
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(int node) {
+        return infix("BinaryExpr", node);
+    }
+
+    @Override
+    public Void visitLogical(int node) {
+        return infix("LogicalExpr", node);
+    }
+
+    @Override
+    public Void visitAssignment(int node) {
+        line("AssignExpr");
+        depth++;
+        line(ast.lexeme(node));
+        children(node);
+        depth--;
+        return null;
+    }
+
+    @Override
+    public Void visitExpression(int node) {
+        return node("ExprStmt", node);
+    }
+
+    @Override
+    public Void visitPrint(int node) {
+        return node("PrintStmt", node);
+    }
+
+    @Override
+    public Void visitVar(int node) {
+        line("VarDecl");
+        depth++;
+        line(ast.lexeme(node));
+        line(ast.tokens().lexeme(ast.constant(node)));
+        children(node);
+        depth--;
+        return null;
+    }
+
+    @Override
+    public Void visitIf(int node) {
+        return node("IfStmt", node);
+    }
+
+    @Override
+    public Void visitWhile(int node) {
+        return node("WhileStmt", node);
+    }
+
+    @Override
+    public Void visitBlock(int node) {
+        return node("BlockStmt", node);
+    }
+
+    // A line for the node, then its children one level deeper
+    private Void node(String name, int node) {
+        line(name);
+        depth++;
+        children(node);
+        depth--;
+        return null;
+    }
+
+    // Left operand, operator, right operand
+    private Void infix(String name, int node) {
+        int left = ast.firstChild(node);
+        line(name);
+        depth++;
+        ast.accept(left, this);
+        line(ast.lexeme(node));
+        ast.accept(ast.nextSibling(left), this);
+        depth--;
+        return null;
+    }
+
+    private void children(int node) {
+        for (int child = ast.firstChild(node); child != NONE; child = ast.nextSibling(child)) {
+            ast.accept(child, this);
+        }
+    }
+
+    private Void line(String text) {
+        try {
+            for (int i = 0; i < depth; i++) {
+                out.append(INDENT);
+            }
+            out.append(text).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+}
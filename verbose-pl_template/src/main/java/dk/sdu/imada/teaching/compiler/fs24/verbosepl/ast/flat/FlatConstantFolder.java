@@ -0,0 +1,113 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat;
+
+import java.util.Arrays;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat.FlatAst.*;
+
+/**
+ * Folds constant expressions of a FlatAst in place, the way the Optimizer folds them on the
+ * object graph: Binary nodes over two numbers, negation of a number, negation of a boolean and
+ * Grouping around a literal. A folded node just changes its kind and constant, so its children
+ * stay behind in the arrays unreachable and nothing is allocated.
+ */
+public class FlatConstantFolder {
+
+    private FlatAst ast;
+    private int folded;
+
+    // Folds the whole program and returns how many nodes were folded
+    public int fold(FlatAst ast) {
+        this.ast = ast;
+        this.folded = 0;
+        for (int node = ast.firstStatement; node != NONE; node = ast.nextSibling[node]) {
+            fold(node);
+        }
+        return folded;
+    }
+
+    // Children first, so folds bubble up through nested expressions
+    private void fold(int node) {
+        for (int child = ast.firstChild[node]; child != NONE; child = ast.nextSibling[child]) {
+            fold(child);
+        }
+
+        switch (ast.kinds[node]) {
+            case GROUPING:
+                foldGrouping(node);
+                break;
+            case UNARY:
+                foldUnary(node);
+                break;
+            case BINARY:
+                foldBinary(node);
+                break;
+        }
+    }
+
+    private void foldGrouping(int node) {
+        int inner = ast.firstChild[node];
+        if (!isLiteral(inner)) return;
+        become(node, ast.kinds[inner], ast.constant[inner]);
+    }
+
+    private void foldUnary(int node) {
+        int operand = ast.firstChild[node];
+        switch (ast.operator(node)) {
+            case MINUS:
+                if (ast.kinds[operand] == NUMBER) becomeNumber(node, -ast.number(operand));
+                break;
+            case BANG:
+            case NOT:
+                if (ast.kinds[operand] == TRUE) become(node, FALSE, NONE);
+                else if (ast.kinds[operand] == FALSE) become(node, TRUE, NONE);
+                break;
+        }
+    }
+
+    private void foldBinary(int node) {
+        int left = ast.firstChild[node];
+        int right = ast.nextSibling[left];
+        if (ast.kinds[left] != NUMBER || ast.kinds[right] != NUMBER) return;
+
+        double a = ast.number(left);
+        double b = ast.number(right);
+        switch (ast.operator(node)) {
+            case PLUS: becomeNumber(node, a + b); break;
+            case MINUS: becomeNumber(node, a - b); break;
+            case STAR: becomeNumber(node, a * b); break;
+            case SLASH:
+            case DIV: becomeNumber(node, a / b); break;
+            case GREATER: becomeBoolean(node, a > b); break;
+            case GREATER_EQUAL: becomeBoolean(node, a >= b); break;
+            case LESS: becomeBoolean(node, a < b); break;
+            case LESS_EQUAL: becomeBoolean(node, a <= b); break;
+            case EQUAL_EQUAL:
+            case EQUALS: becomeBoolean(node, Double.doubleToLongBits(a) == Double.doubleToLongBits(b)); break;
+            case BANG_EQUAL: becomeBoolean(node, Double.doubleToLongBits(a) != Double.doubleToLongBits(b)); break;
+        }
+    }
+
+    private boolean isLiteral(int node) {
+        byte kind = ast.kinds[node];
+        return kind == NUMBER || kind == STRING || kind == TRUE || kind == FALSE;
+    }
+
+    private void becomeNumber(int node, double value) {
+        if (ast.numberCount == ast.numbers.length) {
+            ast.numbers = Arrays.copyOf(ast.numbers, ast.numberCount * 2);
+        }
+        ast.numbers[ast.numberCount] = value;
+        become(node, NUMBER, ast.numberCount++);
+    }
+
+    private void becomeBoolean(int node, boolean value) {
+        become(node, value ? TRUE : FALSE, NONE);
+    }
+
+    private void become(int node, byte kind, int constant) {
+        ast.kinds[node] = kind;
+        ast.constant[node] = constant;
+        ast.firstChild[node] = NONE;
+        folded++;
+    }
+}
@@ -0,0 +1,20 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat;
+
+// Visitor over the nodes of a FlatAst; each method gets the node's index
+public interface FlatVisitor<R> {
+    R visitNumber(int node);
+    R visitString(int node);
+    R visitBoolean(int node);
+    R visitVariable(int node);
+    R visitGrouping(int node);
+    R visitUnary(int node);
+    R visitBinary(int node);
+    R visitLogical(int node);
+    R visitAssignment(int node);
+    R visitExpression(int node);
+    R visitPrint(int node);
+    R visitVar(int node);
+    R visitIf(int node);
+    R visitWhile(int node);
+    R visitBlock(int node);
+}
@@ -2,116 +2,190 @@ package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors;
 
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
 
-public class ASTPrinter implements ASTVisitor<String> {
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Prints the AST one node per line, children indented two spaces below their parent:
+ *
+ *   VarDecl
+ *     average
+ *     Number
+ *     BinaryExpr
+ *       ...
+ *
+ * Lines are written straight into the Appendable as the tree is walked, so no node's text is
+ * built up and copied into its parent's, and a dump of any size only holds one line at a time.
+ */
+public class ASTPrinter implements ASTVisitor<Void> {
+
+    private static final String INDENT = "  ";
+
+    private Appendable out;
+    private int depth;
+
+    public void print(List<Stmt> statements, Appendable out) throws IOException {
+        for (Stmt stmt : statements) {
+            print(stmt, out);
+        }
+    }
 
-    public String print(Expr expr) {
-        return expr != null ? expr.accept(this) : "(null expression)";
+    public void print(Stmt stmt, Appendable out) throws IOException {
+        start(out);
+        try {
+            node(stmt);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
+    public void print(Expr expr, Appendable out) throws IOException {
+        start(out);
+        try {
+            node(expr);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // The printed lines of stmt, each ending in a newline
     public String print(Stmt stmt) {
-        return stmt != null ? stmt.accept(this) : "(null statement)";
+        StringBuilder builder = new StringBuilder();
+        start(builder);
+        node(stmt);
+        return builder.toString();
+    }
+
+    public String print(Expr expr) {
+        StringBuilder builder = new StringBuilder();
+        start(builder);
+        node(expr);
+        return builder.toString();
+    }
+
+    private void start(Appendable out) {
+        this.out = out;
+        this.depth = 0;
     }
 
     @Override
-    public String visitVarStmt(Stmt.Var stmt) {
-        if (stmt.initializer != null) {
-            return "VarDecl ==> " + stmt.name.lexeme + " : " + stmt.type.lexeme + " = " + print(stmt.initializer);
-        } else {
-            return "VarDecl ==> " + stmt.name.lexeme + " : " + stmt.type.lexeme;
-        }
+    public Void visitVarStmt(Stmt.Var stmt) {
+        return node("VarDecl", stmt.name.lexeme, stmt.type.lexeme, stmt.initializer);
     }
 
     @Override
-    public String visitBinaryExpr(Expr.Binary expr) {
-        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        return node("BinaryExpr", expr.left, expr.operator.lexeme, expr.right);
     }
 
     @Override
-    public String visitGroupingExpr(Expr.Grouping expr) {
-        return parenthesize("group", expr.expression);
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        return node("GroupingExpr", expr.expression);
     }
 
+    // Literals are leaves and print as their value alone
     @Override
-    public String visitLiteralExpr(Expr.Literal expr) {
-        if (expr.value == null) return "nil";
-        return expr.value.toString();
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            line("nil");
+        } else if (expr.value instanceof String) {
+            line("\"" + expr.value + "\"");
+        } else {
+            line(expr.value.toString());
+        }
+        return null;
     }
 
     @Override
-    public String visitUnaryExpr(Expr.Unary expr) {
-        return parenthesize(expr.operator.lexeme, expr.right);
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        return node("UnaryExpr", expr.operator.lexeme, expr.right);
     }
 
     @Override
-    public String visitVariableExpr(Expr.Variable expr) {
-        return expr.name.lexeme;
+    public Void visitVariableExpr(Expr.Variable expr) {
+        return node("VariableExpr", expr.name.lexeme);
     }
 
     @Override
-    public String visitAssignmentExpr(Expr.Assignment expr) {
-        return parenthesize("assign", expr.name.lexeme, expr.value);
+    public Void visitAssignmentExpr(Expr.Assignment expr) {
+        return node("AssignExpr", expr.name.lexeme, expr.value);
     }
 
     @Override
-    public String visitLogicalExpr(Expr.Logical expr) {
-        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        return node("LogicalExpr", expr.left, expr.operator.lexeme, expr.right);
     }
 
     @Override
-    public String visitExpressionStmt(Stmt.Expression stmt) {
-        return print(stmt.expression);
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        return node("ExprStmt", stmt.expression);
     }
 
     @Override
-    public String visitPrintStmt(Stmt.Print stmt) {
-        return parenthesize("print", stmt.expression);
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        return node("PrintStmt", stmt.expression);
     }
 
     @Override
-    public String visitBlockStmt(Stmt.Block stmt) {
-        StringBuilder builder = new StringBuilder();
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        line("BlockStmt");
+        depth++;
         for (Stmt statement : stmt.statements) {
-            builder.append(statement.accept(this)).append("\n");
+            node(statement);
         }
-        return builder.toString();
+        depth--;
+        return null;
     }
 
     @Override
-    public String visitIfStmt(Stmt.If stmt) {
-        if (stmt.elseBranch != null) {
-            return parenthesize("if", stmt.condition, stmt.thenBranch, stmt.elseBranch);
-        } else {
-            return parenthesize("if", stmt.condition, stmt.thenBranch);
-        }
+    public Void visitIfStmt(Stmt.If stmt) {
+        return node("IfStmt", stmt.condition, stmt.thenBranch, stmt.elseBranch);
     }
 
     @Override
-    public String visitWhileStmt(Stmt.While stmt) {
-        return parenthesize("while", stmt.condition, stmt.body);
+    public Void visitWhileStmt(Stmt.While stmt) {
+        return node("WhileStmt", stmt.condition, stmt.body);
     }
 
     @Override
-    public String visitReturnStmt(Stmt.Return stmt) {
-        if (stmt.value != null) {
-            return parenthesize("return", stmt.value);
-        }
-        return "(return)";
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        return node("ReturnStmt", stmt.value);
     }
 
-    private String parenthesize(String name, Object... parts) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("(").append(name);
+    // A line for the node, then its parts one level deeper; null parts are left out
+    private Void node(String name, Object... parts) {
+        line(name);
+        depth++;
         for (Object part : parts) {
-            builder.append(" ");
             if (part instanceof Expr) {
-                builder.append(((Expr) part).accept(this));
+                node((Expr) part);
             } else if (part instanceof Stmt) {
-                builder.append(((Stmt) part).accept(this));
-            } else {
-                builder.append(part.toString());
+                node((Stmt) part);
+            } else if (part != null) {
+                line(part.toString());
             }
         }
-        builder.append(")");
-        return builder.toString();
+        depth--;
+        return null;
+    }
+
+    private void node(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void node(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void line(String text) {
+        try {
+            for (int i = 0; i < depth; i++) {
+                out.append(INDENT);
+            }
+            out.append(text).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
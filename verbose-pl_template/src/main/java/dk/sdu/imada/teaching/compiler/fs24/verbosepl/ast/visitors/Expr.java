@@ -1,5 +1,7 @@
 package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors;
 
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Type;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
 
 public abstract class Expr {
@@ -84,6 +86,12 @@ public abstract class Expr {
 
         public final Token name;
         public final Expr value;
+
+        // Filled in by the Resolver: number of frames to walk up, the slot within that frame
+        // and the declaration the name refers to
+        public int depth = -1;
+        public int slot = -1;
+        public Stmt.Var declaration;
     }
 
     public static class Logical extends Expr {
@@ -114,7 +122,16 @@ public abstract class Expr {
         }
 
         public final Token name;
+
+        // Filled in by the Resolver: number of frames to walk up, the slot within that frame
+        // and the declaration the name refers to
+        public int depth = -1;
+        public int slot = -1;
+        public Stmt.Var declaration;
     }
 
+    // Filled in by the TypeChecker; null until it has run
+    public Type type;
+
     public abstract <R> R accept(Visitor<R> visitor);
 }
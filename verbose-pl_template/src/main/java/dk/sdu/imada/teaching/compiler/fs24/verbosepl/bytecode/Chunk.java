@@ -0,0 +1,159 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled VerbosePL program: a flat instruction stream, the line of each instruction byte,
+ * a constant pool of numbers and strings, and the number of local slots the VM must allocate.
+ */
+public class Chunk {
+    private static final int MAGIC = 0x56504C42;  // "VPLB"
+    public static final int FORMAT_VERSION = 2;
+
+    private static final byte NUMBER_CONSTANT = 0;
+    private static final byte STRING_CONSTANT = 1;
+
+    byte[] code = new byte[256];
+    int[] lines = new int[256];
+    int count = 0;
+    final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    int slots = 0;
+
+    void write(byte b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = b;
+        lines[count] = line;
+        count++;
+    }
+
+    int addConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+        constants.add(value);
+        constantIndex.put(value, constants.size() - 1);
+        return constants.size() - 1;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int slots() {
+        return slots;
+    }
+
+    public String disassemble() {
+        StringBuilder builder = new StringBuilder();
+        int offset = 0;
+        while (offset < count) {
+            byte op = code[offset];
+            builder.append(String.format("%04d %4d %-14s", offset, lines[offset], OpCode.name(op)));
+            if (OpCode.operandBytes(op) == 2) {
+                int operand = ((code[offset + 1] & 0xff) << 8) | (code[offset + 2] & 0xff);
+                builder.append(' ').append(operand);
+                if (op == OpCode.CONSTANT) {
+                    builder.append(" '").append(constants.get(operand)).append('\'');
+                }
+            }
+            builder.append('\n');
+            offset += 1 + OpCode.operandBytes(op);
+        }
+        return builder.toString();
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(slots);
+
+        out.writeInt(constants.size());
+        for (Object constant : constants) {
+            if (constant instanceof Double) {
+                out.writeByte(NUMBER_CONSTANT);
+                out.writeDouble((Double) constant);
+            } else {
+                // Varint length and UTF-8, as in binary ASTs; writeUTF stops at 64KB
+                byte[] utf8 = ((String) constant).getBytes(StandardCharsets.UTF_8);
+                out.writeByte(STRING_CONSTANT);
+                writeVarint(out, utf8.length);
+                out.write(utf8);
+            }
+        }
+
+        out.writeInt(count);
+        out.write(code, 0, count);
+
+        // Lines are stored run-length encoded as (line, run) pairs
+        int i = 0;
+        while (i < count) {
+            int run = 1;
+            while (i + run < count && lines[i + run] == lines[i]) run++;
+            out.writeInt(lines[i]);
+            out.writeInt(run);
+            i += run;
+        }
+    }
+
+    public static Chunk readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a VerbosePL bytecode file.");
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) throw new IOException("Unsupported bytecode version " + version + ".");
+
+        Chunk chunk = new Chunk();
+        chunk.slots = in.readInt();
+
+        int constantCount = in.readInt();
+        for (int i = 0; i < constantCount; i++) {
+            byte kind = in.readByte();
+            chunk.addConstant(kind == NUMBER_CONSTANT ? (Object) in.readDouble() : readString(in));
+        }
+
+        chunk.count = in.readInt();
+        chunk.code = new byte[chunk.count];
+        chunk.lines = new int[chunk.count];
+        in.readFully(chunk.code);
+
+        int i = 0;
+        while (i < chunk.count) {
+            int line = in.readInt();
+            int run = in.readInt();
+            Arrays.fill(chunk.lines, i, i + run, line);
+            i += run;
+        }
+        return chunk;
+    }
+
+    private static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 28) throw new IOException("Malformed string length.");
+            byte b = in.readByte();
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        if (length < 0) throw new IOException("Malformed string length.");
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
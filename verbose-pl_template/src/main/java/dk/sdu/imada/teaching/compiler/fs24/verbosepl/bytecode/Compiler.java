@@ -0,0 +1,267 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTVisitor;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lowers a resolved Stmt/Expr tree into a Chunk. The Resolver's nested (depth, slot) frames
+ * are flattened into one array of locals: each block frame is laid out right after its
+ * enclosing frame, and sibling blocks reuse the same slots.
+ */
+public class Compiler implements ASTVisitor<Void> {
+    // Bump whenever the same program would compile to different code, so cached chunks expire
+    public static final int VERSION = 1;
+
+    private final Chunk chunk = new Chunk();
+    // Base slot of every frame currently in scope, innermost last
+    private final List<Integer> frameBases = new ArrayList<>();
+    private final List<Integer> frameSizes = new ArrayList<>();
+    private int line = 1;
+
+    public Chunk compile(List<Stmt> statements, int globalSlots) {
+        pushFrame(globalSlots);
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+        emit(OpCode.RETURN);
+        return chunk;
+    }
+
+    private void pushFrame(int size) {
+        int base = frameBases.isEmpty() ? 0 : top(frameBases) + top(frameSizes);
+        frameBases.add(base);
+        frameSizes.add(size);
+        chunk.slots = Math.max(chunk.slots, base + size);
+    }
+
+    private void popFrame() {
+        frameBases.remove(frameBases.size() - 1);
+        frameSizes.remove(frameSizes.size() - 1);
+    }
+
+    private static int top(List<Integer> list) {
+        return list.get(list.size() - 1);
+    }
+
+    private int flatSlot(int depth, int slot) {
+        return frameBases.get(frameBases.size() - 1 - depth) + slot;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.slots > 0) pushFrame(stmt.slots);
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        if (stmt.slots > 0) popFrame();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        stmt.condition.accept(this);
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        stmt.thenBranch.accept(this);
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emit(OpCode.POP);
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        stmt.expression.accept(this);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+        if (stmt.initializer != null) {
+            stmt.initializer.accept(this);
+        } else {
+            emit(OpCode.NIL);
+        }
+        emitWithOperand(OpCode.SET_LOCAL, flatSlot(0, stmt.slot));
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = chunk.count;
+        stmt.condition.accept(this);
+
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        stmt.body.accept(this);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        throw new CompileError(stmt.keyword, "Can't return from top-level code.");
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        expr.left.accept(this);
+        expr.right.accept(this);
+        line = expr.operator.line;
+
+        switch (expr.operator.type) {
+            case PLUS: emit(OpCode.ADD); break;
+            case MINUS: emit(OpCode.SUBTRACT); break;
+            case STAR: emit(OpCode.MULTIPLY); break;
+            case SLASH:
+            case DIV: emit(OpCode.DIVIDE); break;
+            case GREATER: emit(OpCode.GREATER); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL); break;
+            case LESS: emit(OpCode.LESS); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL); break;
+            case EQUAL_EQUAL:
+            case EQUALS: emit(OpCode.EQUAL); break;
+            case BANG_EQUAL: emit(OpCode.NOT_EQUAL); break;
+            default:
+                throw new CompileError(expr.operator, "Unsupported binary operator.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL);
+        } else if (expr.value instanceof Boolean) {
+            emit((Boolean) expr.value ? OpCode.TRUE : OpCode.FALSE);
+        } else {
+            emitWithOperand(OpCode.CONSTANT, chunk.addConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        expr.right.accept(this);
+        line = expr.operator.line;
+
+        switch (expr.operator.type) {
+            case MINUS: emit(OpCode.NEGATE); break;
+            case BANG:
+            case NOT: emit(OpCode.NOT); break;
+            default:
+                throw new CompileError(expr.operator, "Unsupported unary operator.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignmentExpr(Expr.Assignment expr) {
+        expr.value.accept(this);
+        line = expr.name.line;
+        emitWithOperand(OpCode.SET_LOCAL, flatSlot(expr.depth, expr.slot));
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        expr.left.accept(this);
+        line = expr.operator.line;
+
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emit(OpCode.POP);
+            expr.right.accept(this);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emit(OpCode.POP);
+            expr.right.accept(this);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line;
+        emitWithOperand(OpCode.GET_LOCAL, flatSlot(expr.depth, expr.slot));
+        return null;
+    }
+
+    private void emit(byte op) {
+        chunk.write(op, line);
+    }
+
+    private void emitWithOperand(byte op, int operand) {
+        if (operand > 0xffff) {
+            throw new CompileError(null, "Too many constants or locals in one program.");
+        }
+        emit(op);
+        emit((byte) (operand >> 8));
+        emit((byte) operand);
+    }
+
+    private int emitJump(byte op) {
+        emitWithOperand(op, 0xffff);
+        return chunk.count - 2;
+    }
+
+    private void patchJump(int offset) {
+        // -2 to adjust for the operand itself
+        int jump = chunk.count - offset - 2;
+        if (jump > 0xffff) {
+            throw new CompileError(null, "Too much code to jump over.");
+        }
+        chunk.code[offset] = (byte) (jump >> 8);
+        chunk.code[offset + 1] = (byte) jump;
+    }
+
+    private void emitLoop(int loopStart) {
+        // +3 to also jump back over the LOOP instruction itself
+        int offset = chunk.count - loopStart + 3;
+        if (offset > 0xffff) {
+            throw new CompileError(null, "Loop body too large.");
+        }
+        emitWithOperand(OpCode.LOOP, offset);
+    }
+
+    public static class CompileError extends RuntimeException {
+        public final Token token;
+
+        CompileError(Token token, String message) {
+            super(message);
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode;
+
+/**
+ * Instruction set of the VM. Operands follow the opcode byte inline; all operands are
+ * unsigned 16-bit big-endian values (constant index, local slot or jump distance).
+ */
+public final class OpCode {
+    public static final byte CONSTANT      = 0;  // u16 constant index
+    public static final byte NIL           = 1;
+    public static final byte TRUE          = 2;
+    public static final byte FALSE         = 3;
+    public static final byte POP           = 4;
+    public static final byte GET_LOCAL     = 5;  // u16 slot
+    public static final byte SET_LOCAL     = 6;  // u16 slot, leaves the value on the stack
+    public static final byte ADD           = 7;
+    public static final byte SUBTRACT      = 8;
+    public static final byte MULTIPLY      = 9;
+    public static final byte DIVIDE        = 10;
+    public static final byte GREATER       = 11;
+    public static final byte GREATER_EQUAL = 12;
+    public static final byte LESS          = 13;
+    public static final byte LESS_EQUAL    = 14;
+    public static final byte EQUAL         = 15;
+    public static final byte NOT_EQUAL     = 16;
+    public static final byte NEGATE        = 17;
+    public static final byte NOT           = 18;
+    public static final byte PRINT         = 19;
+    public static final byte JUMP          = 20;  // u16 forward distance
+    public static final byte JUMP_IF_FALSE = 21;  // u16 forward distance, does not pop the condition
+    public static final byte LOOP          = 22;  // u16 backward distance
+    public static final byte RETURN        = 23;
+
+    private static final String[] NAMES = {
+            "CONSTANT", "NIL", "TRUE", "FALSE", "POP", "GET_LOCAL", "SET_LOCAL",
+            "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE",
+            "GREATER", "GREATER_EQUAL", "LESS", "LESS_EQUAL", "EQUAL", "NOT_EQUAL",
+            "NEGATE", "NOT", "PRINT", "JUMP", "JUMP_IF_FALSE", "LOOP", "RETURN"
+    };
+
+    private OpCode() {}
+
+    public static String name(byte op) {
+        return op >= 0 && op < NAMES.length ? NAMES[op] : "UNKNOWN(" + op + ")";
+    }
+
+    // Number of operand bytes following the opcode
+    public static int operandBytes(byte op) {
+        switch (op) {
+            case CONSTANT:
+            case GET_LOCAL:
+            case SET_LOCAL:
+            case JUMP:
+            case JUMP_IF_FALSE:
+            case LOOP:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.RuntimeError;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Values.*;
+
+/**
+ * Stack machine that executes a Chunk with a single dispatch loop. Locals live in one flat
+ * array sized by the compiler, so every variable access is a plain array index.
+ */
+public class VM {
+    private static final int STACK_MAX = 256;
+
+    private final PrintStream out;
+    private boolean hadRuntimeError = false;
+
+    public VM() {
+        this(System.out);
+    }
+
+    public VM(PrintStream out) {
+        this.out = out;
+    }
+
+    public boolean hadRuntimeError() {
+        return hadRuntimeError;
+    }
+
+    public void interpret(Chunk chunk) {
+        try {
+            run(chunk);
+        } catch (RuntimeError error) {
+            hadRuntimeError = true;
+            System.err.println("[line " + error.line + "] Runtime error: " + error.getMessage());
+        }
+    }
+
+    private void run(Chunk chunk) {
+        final byte[] code = chunk.code;
+        final Object[] constants = chunk.constants.toArray();
+        final Object[] locals = new Object[chunk.slots];
+        Object[] stack = new Object[STACK_MAX];
+        int sp = 0;
+        int ip = 0;
+
+        while (true) {
+            byte op = code[ip++];
+            switch (op) {
+                case OpCode.CONSTANT: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+                    stack[sp++] = constants[index];
+                    break;
+                }
+                case OpCode.NIL:
+                    if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+                    stack[sp++] = null;
+                    break;
+                case OpCode.TRUE:
+                    if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+                    stack[sp++] = Boolean.TRUE;
+                    break;
+                case OpCode.FALSE:
+                    if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+                    stack[sp++] = Boolean.FALSE;
+                    break;
+                case OpCode.POP:
+                    sp--;
+                    break;
+                case OpCode.GET_LOCAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+                    stack[sp++] = locals[slot];
+                    break;
+                }
+                case OpCode.SET_LOCAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    locals[slot] = stack[sp - 1];
+                    break;
+                }
+                case OpCode.ADD: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Double && right instanceof Double) {
+                        stack[sp - 1] = (double) left + (double) right;
+                    } else if (left instanceof String || right instanceof String) {
+                        stack[sp - 1] = stringify(left) + stringify(right);
+                    } else {
+                        throw new RuntimeError(chunk.lines[ip - 1], "Operands must be two numbers or include a string.");
+                    }
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    double right = number(chunk, ip, stack[--sp]);
+                    stack[sp - 1] = number(chunk, ip, stack[sp - 1]) - right;
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    double right = number(chunk, ip, stack[--sp]);
+                    stack[sp - 1] = number(chunk, ip, stack[sp - 1]) * right;
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    double right = number(chunk, ip, stack[--sp]);
+                    stack[sp - 1] = number(chunk, ip, stack[sp - 1]) / right;
+                    break;
+                }
+                case OpCode.GREATER: {
+                    double right = number(chunk, ip, stack[--sp]);
+                    stack[sp - 1] = number(chunk, ip, stack[sp - 1]) > right;
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    double right = number(chunk, ip, stack[--sp]);
+                    stack[sp - 1] = number(chunk, ip, stack[sp - 1]) >= right;
+                    break;
+                }
+                case OpCode.LESS: {
+                    double right = number(chunk, ip, stack[--sp]);
+                    stack[sp - 1] = number(chunk, ip, stack[sp - 1]) < right;
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    double right = number(chunk, ip, stack[--sp]);
+                    stack[sp - 1] = number(chunk, ip, stack[sp - 1]) <= right;
+                    break;
+                }
+                case OpCode.EQUAL: {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = isEqual(stack[sp - 1], right);
+                    break;
+                }
+                case OpCode.NOT_EQUAL: {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = !isEqual(stack[sp - 1], right);
+                    break;
+                }
+                case OpCode.NEGATE:
+                    if (!(stack[sp - 1] instanceof Double)) {
+                        throw new RuntimeError(chunk.lines[ip - 1], "Operand must be a number.");
+                    }
+                    stack[sp - 1] = -(double) stack[sp - 1];
+                    break;
+                case OpCode.NOT:
+                    stack[sp - 1] = !isTruthy(stack[sp - 1]);
+                    break;
+                case OpCode.PRINT:
+                    out.println(stringify(stack[--sp]));
+                    break;
+                case OpCode.JUMP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 + offset;
+                    break;
+                }
+                case OpCode.JUMP_IF_FALSE: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (!isTruthy(stack[sp - 1])) ip += offset;
+                    break;
+                }
+                case OpCode.LOOP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 - offset;
+                    break;
+                }
+                case OpCode.RETURN:
+                    return;
+                default:
+                    throw new RuntimeError(chunk.lines[ip - 1], "Unknown opcode " + op + ".");
+            }
+        }
+    }
+
+    private static double number(Chunk chunk, int ip, Object value) {
+        if (value instanceof Double) return (double) value;
+        throw new RuntimeError(chunk.lines[ip - 1], "Operands must be numbers.");
+    }
+}
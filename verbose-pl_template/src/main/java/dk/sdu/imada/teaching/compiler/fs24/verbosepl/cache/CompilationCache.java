@@ -0,0 +1,178 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.cache;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode.Chunk;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode.Compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Directory of compiled Chunks, one file per entry, named after the SHA-256 of the source bytes,
+ * the compiler version and the optimize setting. A source file that hasn't changed since it was
+ * last compiled can be run without scanning, parsing or compiling it again.
+ *
+ * Entries are written to a temporary file and moved into place, so concurrent processes sharing
+ * the directory only ever see complete entries. Reading an entry touches its modification time,
+ * which is what eviction orders by: once the entries take more than maxBytes, the least recently
+ * used ones are deleted. The directory is only listed when a running estimate of its size, taken
+ * at the first store and grown by every entry stored since, goes over maxBytes; entries added by
+ * other processes are noticed at that point.
+ */
+public class CompilationCache {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final String SUFFIX = ".vplb";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Leftovers of writers that died before moving their file into place
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    private final Path directory;
+    private final long maxBytes;
+    // Bytes of entries in the directory as of the last listing plus those stored since; -1 before
+    // the first store
+    private long estimatedBytes = -1;
+
+    public CompilationCache(Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_BYTES);
+    }
+
+    public CompilationCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+    }
+
+    /** The key of a source file's optimized compiled form. */
+    public static String key(byte[] source) {
+        return key(source, true);
+    }
+
+    /**
+     * The key of a source file's compiled form; changes with the source, the compiler and
+     * whether the program was optimized before it was compiled.
+     */
+    public static String key(byte[] source, boolean optimized) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every Java platform.", e);
+        }
+        digest.update(("verbose-pl compiler " + Compiler.VERSION + ", bytecode " + Chunk.FORMAT_VERSION
+                        + (optimized ? ", optimized" : "") + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        digest.update(source);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** The cached Chunk for key, or null. Unreadable entries are deleted and count as misses. */
+    public Chunk load(String key) {
+        Path entry = directory.resolve(key + SUFFIX);
+        Chunk chunk;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(entry))) {
+            chunk = Chunk.readFrom(new DataInputStream(in));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(entry);
+            return null;
+        }
+
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Evicted by another process in the meantime; the chunk we read is still good
+        }
+        return chunk;
+    }
+
+    public void store(String key, Chunk chunk) throws IOException {
+        Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+        long size;
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                chunk.writeTo(new DataOutputStream(out));
+            }
+            size = Files.size(temp);
+            Path entry = directory.resolve(key + SUFFIX);
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            deleteQuietly(temp);
+        }
+        if (estimatedBytes >= 0 && estimatedBytes + size <= maxBytes) {
+            estimatedBytes += size;
+        } else {
+            estimatedBytes = evict();
+        }
+    }
+
+    // Deletes least recently used entries until the rest fit in maxBytes; returns their size
+    private long evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        List<Long> lastUsed = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    long modified = Files.getLastModifiedTime(file).toMillis();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        if (now - modified > STALE_TEMP_MILLIS) deleteQuietly(file);
+                        continue;
+                    }
+                    if (!name.endsWith(SUFFIX)) continue;
+                    long size = Files.size(file);
+                    entries.add(file);
+                    sizes.add(size);
+                    lastUsed.add(modified);
+                    total += size;
+                } catch (NoSuchFileException e) {
+                    // Removed by a concurrent eviction
+                }
+            }
+        }
+        if (total <= maxBytes) return total;
+
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(lastUsed.get(a), lastUsed.get(b)));
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            deleteQuietly(entries.get(order[i]));
+            total -= sizes.get(order[i]);
+        }
+        return total;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Another process is using or removing it; leave it be
+        }
+    }
+}
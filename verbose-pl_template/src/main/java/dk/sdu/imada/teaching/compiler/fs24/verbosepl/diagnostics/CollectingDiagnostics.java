@@ -0,0 +1,39 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps every diagnostic at or above a threshold level in memory. The default threshold
+ * records warnings and errors and drops token traces.
+ */
+public class CollectingDiagnostics implements Diagnostics {
+    private final Level threshold;
+    private final List<Diagnostic> records = new ArrayList<>();
+
+    public CollectingDiagnostics() {
+        this(Level.WARNING);
+    }
+
+    public CollectingDiagnostics(Level threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public boolean isEnabled(Level level) {
+        return level.compareTo(threshold) >= 0;
+    }
+
+    @Override
+    public void report(Level level, int line, String token, String message) {
+        if (isEnabled(level)) {
+            records.add(new Diagnostic(level, line, token, message));
+        }
+    }
+
+    @Override
+    public List<Diagnostic> records() {
+        return Collections.unmodifiableList(records);
+    }
+}
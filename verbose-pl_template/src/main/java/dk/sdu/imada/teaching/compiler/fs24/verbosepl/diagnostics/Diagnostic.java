@@ -0,0 +1,24 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics;
+
+public class Diagnostic {
+    public final Diagnostics.Level level;
+    public final int line;
+    public final String token;
+    public final String message;
+
+    public Diagnostic(Diagnostics.Level level, int line, String token, String message) {
+        this.level = level;
+        this.line = line;
+        this.token = token;
+        this.message = message;
+    }
+
+    public String toString() {
+        String kind = level == Diagnostics.Level.ERROR ? "Error"
+                : level == Diagnostics.Level.WARNING ? "Warning" : "Trace";
+        if (token == null) {
+            return "[line " + line + "] " + kind + ": " + message;
+        }
+        return "[line " + line + "] " + kind + " at '" + token + "': " + message;
+    }
+}
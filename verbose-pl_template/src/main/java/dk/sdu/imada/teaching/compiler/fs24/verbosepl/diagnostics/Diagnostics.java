@@ -0,0 +1,27 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics;
+
+import java.util.List;
+
+/**
+ * Sink for everything the front end has to say: token traces, warnings and errors. Producers
+ * check isEnabled() before building a message, so a disabled level costs one comparison.
+ */
+public interface Diagnostics {
+
+    enum Level { TRACE, WARNING, ERROR }
+
+    boolean isEnabled(Level level);
+
+    /** token is the offending lexeme, or null when the problem isn't tied to a token. */
+    void report(Level level, int line, String token, String message);
+
+    /** Everything reported so far at an enabled level, in reporting order. */
+    List<Diagnostic> records();
+
+    default boolean hasErrors() {
+        for (Diagnostic diagnostic : records()) {
+            if (diagnostic.level == Level.ERROR) return true;
+        }
+        return false;
+    }
+}
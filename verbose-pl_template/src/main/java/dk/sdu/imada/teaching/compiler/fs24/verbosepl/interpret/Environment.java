@@ -0,0 +1,41 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret;
+
+/**
+ * A single frame of variable slots. Every block that declares variables gets its own frame;
+ * the Resolver has already mapped each variable use to a (depth, slot) pair, so lookups are
+ * a short walk up the enclosing chain followed by an array access.
+ */
+public class Environment {
+    final Environment enclosing;
+    final Object[] values;
+
+    public Environment(Environment enclosing, int slots) {
+        this.enclosing = enclosing;
+        this.values = new Object[slots];
+    }
+
+    public Object get(int depth, int slot) {
+        return ancestor(depth).values[slot];
+    }
+
+    public void assign(int depth, int slot, Object value) {
+        ancestor(depth).values[slot] = value;
+    }
+
+    public void define(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    // A slot of this frame itself, for callers that know the depth is 0
+    public Object getLocal(int slot) {
+        return values[slot];
+    }
+
+    private Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) {
+            environment = environment.enclosing;
+        }
+        return environment;
+    }
+}
@@ -0,0 +1,298 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Type;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTVisitor;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Values.*;
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType.*;
+
+/**
+ * Tree-walking interpreter. Expects the statements to have been run through the Resolver first,
+ * which fills in the frame sizes and (depth, slot) pairs used here.
+ *
+ * If the TypeChecker has run as well, expressions typed NUMBER and BOOL are evaluated as double
+ * and boolean throughout, and only the final result is boxed.
+ */
+public class Interpreter implements ASTVisitor<Object> {
+
+    protected final PrintStream out;
+    protected Environment environment;
+    private boolean hadRuntimeError = false;
+
+    public Interpreter() {
+        this(System.out);
+    }
+
+    public Interpreter(PrintStream out) {
+        this.out = out;
+    }
+
+    public void interpret(List<Stmt> statements, int globalSlots) {
+        environment = new Environment(null, globalSlots);
+        try {
+            for (Stmt statement : statements) {
+                execute(statement);
+            }
+        } catch (RuntimeError error) {
+            hadRuntimeError = true;
+            System.err.println("[line " + error.line + "] Runtime error: " + error.getMessage());
+        }
+    }
+
+    public boolean hadRuntimeError() {
+        return hadRuntimeError;
+    }
+
+    protected void execute(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    protected Object evaluate(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // Value of an expression the TypeChecker typed NUMBER; the operands are never boxed
+    protected double evaluateNumber(Expr expr) {
+        if (expr instanceof Expr.Binary binary && binary.left.type == Type.NUMBER && binary.right.type == Type.NUMBER) {
+            switch (binary.operator.type) {
+                case PLUS: return evaluateNumber(binary.left) + evaluateNumber(binary.right);
+                case MINUS: return evaluateNumber(binary.left) - evaluateNumber(binary.right);
+                case STAR: return evaluateNumber(binary.left) * evaluateNumber(binary.right);
+                case SLASH:
+                case DIV: return evaluateNumber(binary.left) / evaluateNumber(binary.right);
+            }
+        } else if (expr instanceof Expr.Unary unary && unary.right.type == Type.NUMBER) {
+            return -evaluateNumber(unary.right);
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return evaluateNumber(grouping.expression);
+        }
+        // Literals and definitely assigned variables hold a Double
+        return (double) evaluate(expr);
+    }
+
+    // Truthiness of a condition; comparisons and logic over typed operands run unboxed
+    protected boolean evaluateCondition(Expr expr) {
+        if (expr.type != Type.BOOL) return isTruthy(evaluate(expr));
+
+        if (expr instanceof Expr.Binary binary && binary.left.type == Type.NUMBER && binary.right.type == Type.NUMBER) {
+            double left = evaluateNumber(binary.left);
+            double right = evaluateNumber(binary.right);
+            switch (binary.operator.type) {
+                case GREATER: return left > right;
+                case GREATER_EQUAL: return left >= right;
+                case LESS: return left < right;
+                case LESS_EQUAL: return left <= right;
+                // Same as Double.equals, which the boxed path uses
+                case EQUAL_EQUAL:
+                case EQUALS: return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+                case BANG_EQUAL: return Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+            }
+        } else if (expr instanceof Expr.Unary unary && unary.right.type == Type.BOOL) {
+            return !evaluateCondition(unary.right);
+        } else if (expr instanceof Expr.Logical logical && logical.left.type == Type.BOOL && logical.right.type == Type.BOOL) {
+            if (logical.operator.type == OR) {
+                return evaluateCondition(logical.left) || evaluateCondition(logical.right);
+            }
+            return evaluateCondition(logical.left) && evaluateCondition(logical.right);
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return evaluateCondition(grouping.expression);
+        }
+        return isTruthy(evaluate(expr));
+    }
+
+    @Override
+    public Object visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.slots == 0) {
+            for (Stmt statement : stmt.statements) {
+                execute(statement);
+            }
+            return null;
+        }
+
+        Environment previous = environment;
+        try {
+            environment = new Environment(previous, stmt.slots);
+            for (Stmt statement : stmt.statements) {
+                execute(statement);
+            }
+        } finally {
+            environment = previous;
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionStmt(Stmt.Expression stmt) {
+        evaluate(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Object visitIfStmt(Stmt.If stmt) {
+        if (evaluateCondition(stmt.condition)) {
+            execute(stmt.thenBranch);
+        } else if (stmt.elseBranch != null) {
+            execute(stmt.elseBranch);
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitPrintStmt(Stmt.Print stmt) {
+        out.println(stringify(evaluate(stmt.expression)));
+        return null;
+    }
+
+    @Override
+    public Object visitVarStmt(Stmt.Var stmt) {
+        Object value = null;
+        if (stmt.initializer != null) {
+            value = evaluate(stmt.initializer);
+        }
+        environment.define(stmt.slot, value);
+        return null;
+    }
+
+    @Override
+    public Object visitWhileStmt(Stmt.While stmt) {
+        while (evaluateCondition(stmt.condition)) {
+            execute(stmt.body);
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitReturnStmt(Stmt.Return stmt) {
+        throw new RuntimeError(stmt.keyword, "Can't return from top-level code.");
+    }
+
+    @Override
+    public Object visitVariableExpr(Expr.Variable expr) {
+        return environment.get(expr.depth, expr.slot);
+    }
+
+    @Override
+    public Object visitAssignmentExpr(Expr.Assignment expr) {
+        Object value = evaluate(expr.value);
+        environment.assign(expr.depth, expr.slot, value);
+        return value;
+    }
+
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+        return expr.value;
+    }
+
+    @Override
+    public Object visitGroupingExpr(Expr.Grouping expr) {
+        return evaluate(expr.expression);
+    }
+
+    @Override
+    public Object visitLogicalExpr(Expr.Logical expr) {
+        if (expr.left.type == Type.BOOL && expr.right.type == Type.BOOL) {
+            return evaluateCondition(expr);
+        }
+
+        Object left = evaluate(expr.left);
+
+        if (expr.operator.type == OR) {
+            if (isTruthy(left)) return left;
+        } else {
+            if (!isTruthy(left)) return left;
+        }
+
+        return evaluate(expr.right);
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr.right.type == Type.NUMBER && expr.operator.type == MINUS) {
+            return evaluateNumber(expr);
+        }
+        if (expr.right.type == Type.BOOL && expr.operator.type != MINUS) {
+            return evaluateCondition(expr);
+        }
+
+        Object right = evaluate(expr.right);
+
+        switch (expr.operator.type) {
+            case MINUS:
+                checkNumberOperand(expr.operator, right);
+                return -(double) right;
+            case BANG:
+            case NOT:
+                return !isTruthy(right);
+        }
+
+        // Unreachable.
+        return null;
+    }
+
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr) {
+        if (expr.left.type == Type.NUMBER && expr.right.type == Type.NUMBER) {
+            return expr.type == Type.NUMBER ? (Object) evaluateNumber(expr) : (Object) evaluateCondition(expr);
+        }
+
+        Object left = evaluate(expr.left);
+        Object right = evaluate(expr.right);
+
+        switch (expr.operator.type) {
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) {
+                    return (double) left + (double) right;
+                }
+                if (left instanceof String || right instanceof String) {
+                    return stringify(left) + stringify(right);
+                }
+                throw new RuntimeError(expr.operator, "Operands must be two numbers or include a string.");
+            case MINUS:
+                checkNumberOperands(expr.operator, left, right);
+                return (double) left - (double) right;
+            case STAR:
+                checkNumberOperands(expr.operator, left, right);
+                return (double) left * (double) right;
+            case SLASH:
+            case DIV:
+                checkNumberOperands(expr.operator, left, right);
+                return (double) left / (double) right;
+            case GREATER:
+                checkNumberOperands(expr.operator, left, right);
+                return (double) left > (double) right;
+            case GREATER_EQUAL:
+                checkNumberOperands(expr.operator, left, right);
+                return (double) left >= (double) right;
+            case LESS:
+                checkNumberOperands(expr.operator, left, right);
+                return (double) left < (double) right;
+            case LESS_EQUAL:
+                checkNumberOperands(expr.operator, left, right);
+                return (double) left <= (double) right;
+            case EQUAL_EQUAL:
+            case EQUALS:
+                return isEqual(left, right);
+            case BANG_EQUAL:
+                return !isEqual(left, right);
+        }
+
+        // Unreachable.
+        return null;
+    }
+
+    private void checkNumberOperand(Token operator, Object operand) {
+        if (operand instanceof Double) return;
+        throw new RuntimeError(operator, "Operand must be a number.");
+    }
+
+    private void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+}
@@ -0,0 +1,252 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTVisitor;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.SymbolTable;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Static pass that runs before the Interpreter. It assigns every declared variable a slot in
+ * the frame of its enclosing block and annotates each Expr.Variable / Expr.Assignment with the
+ * (depth, slot) pair it refers to, so the Interpreter never looks variables up by name.
+ *
+ * Names are looked up by the symbol their tokens carry. For every symbol the Resolver keeps the
+ * innermost visible declaration in an array; declaring in a block saves what it shadows on an
+ * undo log, which leaving the block plays back.
+ */
+public class Resolver implements ASTVisitor<Void> {
+
+    // By symbol: the innermost visible declaration (null if none) and the scope declaring it
+    private Stmt.Var[] visible = new Stmt.Var[64];
+    private int[] visibleScope = new int[64];
+    // Shadowed declarations to restore, as (symbol, declaration, scope) entries
+    private int[] undoSymbols = new int[16];
+    private Stmt.Var[] undoDeclarations = new Stmt.Var[16];
+    private int[] undoScopes = new int[16];
+    private int undoSize = 0;
+    // By scope, innermost last, index 0 the global scope: slots declared and undo log start
+    private int[] scopeSlots = new int[8];
+    private int[] scopeUndoStart = new int[8];
+    private int scope = 0;
+    // Interns the names of tokens built without a symbol
+    private final SymbolTable unscanned = new SymbolTable();
+    private boolean hadError = false;
+
+    public void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    public int globalSlots() {
+        return scopeSlots[0];
+    }
+
+    public boolean hadError() {
+        return hadError;
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        // Only blocks that declare something need a frame of their own
+        boolean declares = false;
+        for (Stmt statement : stmt.statements) {
+            if (statement instanceof Stmt.Var) {
+                declares = true;
+                break;
+            }
+        }
+
+        if (!declares) {
+            resolve(stmt.statements);
+            return null;
+        }
+
+        beginScope();
+        resolve(stmt.statements);
+        stmt.slots = scopeSlots[scope];
+        endScope();
+        return null;
+    }
+
+    private void beginScope() {
+        scope++;
+        if (scope == scopeSlots.length) {
+            scopeSlots = Arrays.copyOf(scopeSlots, scope * 2);
+            scopeUndoStart = Arrays.copyOf(scopeUndoStart, scope * 2);
+        }
+        scopeSlots[scope] = 0;
+        scopeUndoStart[scope] = undoSize;
+    }
+
+    private void endScope() {
+        while (undoSize > scopeUndoStart[scope]) {
+            undoSize--;
+            visible[undoSymbols[undoSize]] = undoDeclarations[undoSize];
+            visibleScope[undoSymbols[undoSize]] = undoScopes[undoSize];
+            undoDeclarations[undoSize] = null;
+        }
+        scope--;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // The initializer is resolved before the name is declared, so it can't refer to itself
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+
+        int symbol = symbol(stmt.name);
+        Stmt.Var existing = visible[symbol];
+        if (existing != null && visibleScope[symbol] == scope) {
+            if (scope > 0) {
+                error(stmt.name, "Already a variable with this name in this scope.");
+            }
+            // Redeclaring a global reuses its slot
+            stmt.slot = existing.slot;
+        } else {
+            if (scope > 0) saveShadowed(symbol);
+            stmt.slot = scopeSlots[scope]++;
+        }
+
+        visible[symbol] = stmt;
+        visibleScope[symbol] = scope;
+        return null;
+    }
+
+    private void saveShadowed(int symbol) {
+        if (undoSize == undoSymbols.length) {
+            undoSymbols = Arrays.copyOf(undoSymbols, undoSize * 2);
+            undoDeclarations = Arrays.copyOf(undoDeclarations, undoSize * 2);
+            undoScopes = Arrays.copyOf(undoScopes, undoSize * 2);
+        }
+        undoSymbols[undoSize] = symbol;
+        undoDeclarations[undoSize] = visible[symbol];
+        undoScopes[undoSize] = visibleScope[symbol];
+        undoSize++;
+    }
+
+    // The token's symbol, with the visible tables grown to hold it
+    private int symbol(Token name) {
+        int symbol = name.symbol != Token.NO_SYMBOL ? name.symbol : unscanned.intern(name.lexeme);
+        if (symbol >= visible.length) {
+            int capacity = Math.max(visible.length * 2, symbol + 1);
+            visible = Arrays.copyOf(visible, capacity);
+            visibleScope = Arrays.copyOf(visibleScope, capacity);
+        }
+        return symbol;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        Stmt.Var declaration = lookup(expr.name);
+        if (declaration == null) return null;
+
+        expr.depth = scope - visibleScope[symbol(expr.name)];
+        expr.declaration = declaration;
+        expr.slot = declaration.slot;
+        return null;
+    }
+
+    @Override
+    public Void visitAssignmentExpr(Expr.Assignment expr) {
+        resolve(expr.value);
+        Stmt.Var declaration = lookup(expr.name);
+        if (declaration == null) return null;
+
+        expr.depth = scope - visibleScope[symbol(expr.name)];
+        expr.declaration = declaration;
+        expr.slot = declaration.slot;
+        return null;
+    }
+
+    // The innermost declaration of the name, or null after reporting it undefined
+    private Stmt.Var lookup(Token name) {
+        Stmt.Var declaration = visible[symbol(name)];
+        if (declaration == null) {
+            error(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+        return declaration;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        if (stmt.elseBranch != null) resolve(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) resolve(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    private void error(Token token, String message) {
+        hadError = true;
+        System.err.println("[line " + token.line + "] Error at '" + token.lexeme + "': " + message);
+    }
+}
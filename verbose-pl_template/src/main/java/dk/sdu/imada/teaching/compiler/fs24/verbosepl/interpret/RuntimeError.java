@@ -0,0 +1,21 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+
+public class RuntimeError extends RuntimeException {
+    public final Token token;
+    public final int line;
+
+    public RuntimeError(Token token, String message) {
+        super(message);
+        this.token = token;
+        this.line = token.line;
+    }
+
+    // For engines that only keep line information around, like the bytecode VM
+    public RuntimeError(int line, String message) {
+        super(message);
+        this.token = null;
+        this.line = line;
+    }
+}
@@ -0,0 +1,282 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Type;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTVisitor;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Type.*;
+
+/**
+ * Static pass that runs after the Resolver. It infers the type of every expression from the
+ * declared types of the variables it reads, reports operations that can never succeed (such as
+ * comparing a Number with a String) and stores the result in Expr.type, which lets the
+ * Interpreter evaluate numbers and conditions without boxing or checking them.
+ *
+ * A variable only has its declared type where it is definitely assigned. Reading one that may
+ * still be nil gives ANY, and the expression keeps its runtime checks.
+ */
+public class TypeChecker implements ASTVisitor<Type> {
+
+    // Declarations that are definitely assigned at the current point
+    private Set<Stmt.Var> assigned = newSet();
+    // What is assigned at the top of each loop, as far as it has been worked out
+    private final Map<Stmt.While, Set<Stmt.Var>> loopHeads = new IdentityHashMap<>();
+    // Above 0 while checking a loop body against a state that may still shrink
+    private int tentative = 0;
+    private boolean hadError = false;
+
+    public void check(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            check(statement);
+        }
+    }
+
+    public boolean hadError() {
+        return hadError;
+    }
+
+    private void check(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private Type check(Expr expr) {
+        Type type = expr.accept(this);
+        expr.type = type;
+        return type;
+    }
+
+    // Checks expr and reports at operator if it has a known type other than expected
+    private void expect(Expr expr, Type expected, Token operator, String message) {
+        Type type = check(expr);
+        if (type != ANY && type != expected) error(operator, message);
+    }
+
+    @Override
+    public Type visitBlockStmt(Stmt.Block stmt) {
+        check(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Type visitExpressionStmt(Stmt.Expression stmt) {
+        check(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Type visitIfStmt(Stmt.If stmt) {
+        expect(stmt.condition, BOOL, tokenOf(stmt.condition), "Condition must be a Bool.");
+
+        // Only what both branches assign is assigned afterwards
+        Set<Stmt.Var> before = copy(assigned);
+        check(stmt.thenBranch);
+        Set<Stmt.Var> afterThen = assigned;
+        assigned = before;
+        if (stmt.elseBranch != null) check(stmt.elseBranch);
+        assigned.retainAll(afterThen);
+        return null;
+    }
+
+    @Override
+    public Type visitPrintStmt(Stmt.Print stmt) {
+        check(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Type visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) {
+            assigned.remove(stmt);
+            return null;
+        }
+
+        Type declared = Type.of(stmt.type);
+        Type value = check(stmt.initializer);
+        if (value != ANY && value != declared) {
+            error(stmt.name, "Cannot initialize '" + stmt.name.lexeme + "' of type " + declared + " with a " + value + ".");
+        }
+        if (value == declared) {
+            assigned.add(stmt);
+        } else {
+            assigned.remove(stmt);
+        }
+        return null;
+    }
+
+    @Override
+    public Type visitWhileStmt(Stmt.While stmt) {
+        // An iteration starts with what was assigned both before the loop and at the end of the
+        // iteration before it. Shrink that until a pass over the loop keeps all of it; types
+        // seen before then may be too precise, so those passes report nothing.
+        Set<Stmt.Var> head = copy(assigned);
+        Set<Stmt.Var> known = loopHeads.get(stmt);
+        if (known != null) head.retainAll(known);
+        Set<Stmt.Var> exit;
+        tentative++;
+        do {
+            exit = checkIteration(stmt, head);
+        } while (head.retainAll(assigned));
+        tentative--;
+        loopHeads.put(stmt, head);
+        // Once more to report errors, unless an enclosing loop is still being worked out
+        if (tentative == 0) exit = checkIteration(stmt, head);
+
+        // The body may not run at all, but the condition always does
+        assigned = exit;
+        return null;
+    }
+
+    // Checks the condition and then the body from head; returns what is assigned when the condition is false
+    private Set<Stmt.Var> checkIteration(Stmt.While stmt, Set<Stmt.Var> head) {
+        assigned = copy(head);
+        expect(stmt.condition, BOOL, tokenOf(stmt.condition), "Condition must be a Bool.");
+        Set<Stmt.Var> exit = copy(assigned);
+        check(stmt.body);
+        return exit;
+    }
+
+    @Override
+    public Type visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) check(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        if (expr.declaration == null || !assigned.contains(expr.declaration)) return ANY;
+        return Type.of(expr.declaration.type);
+    }
+
+    @Override
+    public Type visitAssignmentExpr(Expr.Assignment expr) {
+        Type value = check(expr.value);
+        if (expr.declaration == null) return value;
+
+        Type declared = Type.of(expr.declaration.type);
+        if (value != ANY && value != declared) {
+            error(expr.name, "Cannot assign a " + value + " to '" + expr.name.lexeme + "' of type " + declared + ".");
+        }
+        if (value == declared) {
+            assigned.add(expr.declaration);
+        } else {
+            assigned.remove(expr.declaration);
+        }
+        return value;
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        return Type.of(expr.value);
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) {
+        return check(expr.expression);
+    }
+
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) {
+        expect(expr.left, BOOL, expr.operator, "Operands of '" + expr.operator.lexeme + "' must be Bools.");
+
+        // The right operand is not always evaluated, so its assignments don't count
+        Set<Stmt.Var> before = copy(assigned);
+        expect(expr.right, BOOL, expr.operator, "Operands of '" + expr.operator.lexeme + "' must be Bools.");
+        assigned = before;
+        return BOOL;
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) {
+        switch (expr.operator.type) {
+            case MINUS:
+                expect(expr.right, NUMBER, expr.operator, "Operand must be a Number.");
+                return NUMBER;
+            case BANG:
+            case NOT:
+                expect(expr.right, BOOL, expr.operator, "Operand of '" + expr.operator.lexeme + "' must be a Bool.");
+                return BOOL;
+        }
+        check(expr.right);
+        return ANY;
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) {
+        Type left = check(expr.left);
+        Type right = check(expr.right);
+
+        switch (expr.operator.type) {
+            case PLUS:
+                if (left == STRING || right == STRING) return STRING;
+                if (left == NUMBER && right == NUMBER) return NUMBER;
+                if (left == BOOL || right == BOOL) {
+                    error(expr.operator, "Operands must be two Numbers or include a String.");
+                }
+                return ANY;
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case DIV:
+                checkNumbers(expr.operator, left, right);
+                return NUMBER;
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                checkNumbers(expr.operator, left, right);
+                return BOOL;
+            case EQUAL_EQUAL:
+            case EQUALS:
+            case BANG_EQUAL:
+                if (left != ANY && right != ANY && left != right) {
+                    error(expr.operator, "Cannot compare a " + left + " with a " + right + ".");
+                }
+                return BOOL;
+        }
+        return ANY;
+    }
+
+    private void checkNumbers(Token operator, Type left, Type right) {
+        if ((left == NUMBER || left == ANY) && (right == NUMBER || right == ANY)) return;
+        error(operator, "Operands must be Numbers.");
+    }
+
+    // A token to report a problem with expr at, or null for a bare literal
+    private static Token tokenOf(Expr expr) {
+        if (expr instanceof Expr.Binary binary) return binary.operator;
+        if (expr instanceof Expr.Logical logical) return logical.operator;
+        if (expr instanceof Expr.Unary unary) return unary.operator;
+        if (expr instanceof Expr.Variable variable) return variable.name;
+        if (expr instanceof Expr.Assignment assignment) return assignment.name;
+        if (expr instanceof Expr.Grouping grouping) return tokenOf(grouping.expression);
+        return null;
+    }
+
+    private static Set<Stmt.Var> newSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static Set<Stmt.Var> copy(Set<Stmt.Var> set) {
+        Set<Stmt.Var> copy = newSet();
+        copy.addAll(set);
+        return copy;
+    }
+
+    private void error(Token token, String message) {
+        if (tentative > 0) return;
+        hadError = true;
+        if (token == null) {
+            System.err.println("Error: " + message);
+            return;
+        }
+        System.err.println("[line " + token.line + "] Error at '" + token.lexeme + "': " + message);
+    }
+}
@@ -0,0 +1,36 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret;
+
+/**
+ * Value semantics shared by every execution engine, so the tree-walker and the bytecode VM
+ * agree on truthiness, equality and how values are printed.
+ */
+public final class Values {
+
+    private Values() {}
+
+    public static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean) object;
+        return true;
+    }
+
+    public static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+        return a.equals(b);
+    }
+
+    public static String stringify(Object object) {
+        if (object == null) return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return object.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Basic block: phis, then straight-line instructions, then one terminator that names the
+ * successors. Predecessors are kept in a fixed order, the order of every phi's operands.
+ */
+public final class Block {
+    private static final Block[] NO_SUCCESSORS = new Block[0];
+
+    final List<Instruction> phis = new ArrayList<>();
+    final List<Instruction> instructions = new ArrayList<>();
+    Instruction terminator;
+    final List<Block> predecessors = new ArrayList<>();
+
+    // Position in reverse postorder and immediate dominator, set by ControlFlowGraph
+    int index = -1;
+    Block dominator;
+
+    public List<Instruction> phis() {
+        return Collections.unmodifiableList(phis);
+    }
+
+    public List<Instruction> instructions() {
+        return Collections.unmodifiableList(instructions);
+    }
+
+    public Instruction terminator() {
+        return terminator;
+    }
+
+    public List<Block> predecessors() {
+        return Collections.unmodifiableList(predecessors);
+    }
+
+    public Block[] successors() {
+        return terminator == null || terminator.targets == null ? NO_SUCCESSORS : terminator.targets;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    // Whether every path from the entry to other passes through this block
+    public boolean dominates(Block other) {
+        for (Block block = other; block != null; block = block.dominator) {
+            if (block == this) return true;
+            if (block.dominator == block) return false;
+        }
+        return false;
+    }
+
+    void add(Instruction instruction) {
+        instruction.block = this;
+        instructions.add(instruction);
+    }
+
+    @Override
+    public String toString() {
+        return "b" + index;
+    }
+}
@@ -0,0 +1,262 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A whole program in SSA form, as built by IrBuilder: blocks linked through their
+ * terminators, starting at the entry block. Also holds the bookkeeping every pass needs, such as
+ * block order, dominators, types and replacing one value with another.
+ */
+public final class ControlFlowGraph {
+
+    final Block entry;
+    // Creation order until order() runs, reverse postorder after
+    private List<Block> blocks = new ArrayList<>();
+
+    ControlFlowGraph() {
+        entry = newBlock();
+    }
+
+    public Block entry() {
+        return entry;
+    }
+
+    // The reachable blocks in reverse postorder
+    public List<Block> blocks() {
+        order();
+        return Collections.unmodifiableList(blocks);
+    }
+
+    Block newBlock() {
+        Block block = new Block();
+        blocks.add(block);
+        return block;
+    }
+
+    /**
+     * Puts the blocks in reverse postorder and numbers them, dropping those control never
+     * reaches. Returns whether any block was dropped.
+     */
+    boolean order() {
+        Map<Block, Boolean> visited = new IdentityHashMap<>();
+        List<Block> postorder = new ArrayList<>(blocks.size());
+        // Explicit stack of blocks and how many of their successors have been visited
+        List<Block> stack = new ArrayList<>();
+        List<Integer> next = new ArrayList<>();
+        visited.put(entry, true);
+        stack.add(entry);
+        next.add(0);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            Block block = stack.get(top);
+            Block[] successors = block.successors();
+            int i = next.get(top);
+            if (i < successors.length) {
+                next.set(top, i + 1);
+                if (visited.put(successors[i], true) == null) {
+                    stack.add(successors[i]);
+                    next.add(0);
+                }
+            } else {
+                stack.remove(top);
+                next.remove(top);
+                postorder.add(block);
+            }
+        }
+
+        boolean removed = postorder.size() != blocks.size();
+        if (removed) {
+            for (Block block : blocks) {
+                if (visited.containsKey(block)) continue;
+                for (Block successor : block.successors()) {
+                    if (visited.containsKey(successor)) removePredecessor(successor, block);
+                }
+            }
+        }
+
+        Collections.reverse(postorder);
+        blocks = postorder;
+        for (int i = 0; i < blocks.size(); i++) {
+            blocks.get(i).index = i;
+        }
+        return removed;
+    }
+
+    // Unlinks the edge from predecessor to block, along with the phi operands for it
+    void removePredecessor(Block block, Block predecessor) {
+        int index = block.predecessors.indexOf(predecessor);
+        block.predecessors.remove(index);
+        for (Instruction phi : block.phis) {
+            phi.operands = without(phi.operands, index);
+        }
+    }
+
+    // Immediate dominators by the iterative algorithm of Cooper, Harvey and Kennedy
+    void computeDominators() {
+        order();
+        for (Block block : blocks) {
+            block.dominator = null;
+        }
+        entry.dominator = entry;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block block : blocks) {
+                if (block == entry) continue;
+                Block dominator = null;
+                for (Block predecessor : block.predecessors) {
+                    if (predecessor.dominator == null) continue;
+                    dominator = dominator == null ? predecessor : intersect(predecessor, dominator);
+                }
+                if (block.dominator != dominator) {
+                    block.dominator = dominator;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static Block intersect(Block a, Block b) {
+        while (a != b) {
+            while (a.index > b.index) a = a.dominator;
+            while (b.index > a.index) b = b.dominator;
+        }
+        return a;
+    }
+
+    // Numbers every instruction in block order, and returns how many there are
+    int number() {
+        order();
+        int id = 0;
+        for (Block block : blocks) {
+            for (Instruction phi : block.phis) phi.id = id++;
+            for (Instruction instruction : block.instructions) instruction.id = id++;
+            block.terminator.id = id++;
+        }
+        return id;
+    }
+
+    /**
+     * Gives every value its static type. Phis start out unknown and only widen, so a loop
+     * variable that only ever holds numbers is typed NUMBER.
+     */
+    void inferTypes() {
+        order();
+        for (Block block : blocks) {
+            for (Instruction phi : block.phis) phi.type = null;
+            for (Instruction instruction : block.instructions) instruction.type = null;
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block block : blocks) {
+                changed |= inferTypes(block.phis);
+                changed |= inferTypes(block.instructions);
+            }
+        }
+
+        for (Block block : blocks) {
+            for (Instruction phi : block.phis) {
+                if (phi.type == null) phi.type = Type.ANY;
+            }
+            for (Instruction instruction : block.instructions) {
+                if (instruction.type == null && instruction.op != Op.PRINT) instruction.type = Type.ANY;
+            }
+        }
+    }
+
+    private static boolean inferTypes(List<Instruction> instructions) {
+        boolean changed = false;
+        for (Instruction instruction : instructions) {
+            Type type = instruction.resultType();
+            if (type != instruction.type) {
+                instruction.type = type;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // Makes every use of a key use its value instead
+    void replaceUses(Map<Instruction, Instruction> replacements) {
+        if (replacements.isEmpty()) return;
+        for (Block block : blocks) {
+            for (Instruction phi : block.phis) replaceOperands(phi, replacements);
+            for (Instruction instruction : block.instructions) replaceOperands(instruction, replacements);
+            replaceOperands(block.terminator, replacements);
+        }
+    }
+
+    private static void replaceOperands(Instruction instruction, Map<Instruction, Instruction> replacements) {
+        Instruction[] operands = instruction.operands;
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = resolve(replacements, operands[i]);
+        }
+    }
+
+    static Instruction resolve(Map<Instruction, Instruction> replacements, Instruction value) {
+        Instruction replacement;
+        while ((replacement = replacements.get(value)) != null) {
+            value = replacement;
+        }
+        return value;
+    }
+
+    /**
+     * Removes every phi whose operands are all one other value (or the phi itself), which then
+     * stands in for it. Returns whether any phi was removed.
+     */
+    boolean removeTrivialPhis() {
+        Map<Instruction, Instruction> replacements = new IdentityHashMap<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block block : blocks) {
+                for (Iterator<Instruction> phis = block.phis.iterator(); phis.hasNext(); ) {
+                    Instruction phi = phis.next();
+                    Instruction same = trivialValue(phi, replacements);
+                    if (same == null) continue;
+                    replacements.put(phi, same);
+                    phis.remove();
+                    changed = true;
+                }
+            }
+        }
+        replaceUses(replacements);
+        return !replacements.isEmpty();
+    }
+
+    // The one value phi can be replaced with, or null if it merges different values
+    private Instruction trivialValue(Instruction phi, Map<Instruction, Instruction> replacements) {
+        Instruction same = null;
+        for (Instruction operand : phi.operands) {
+            Instruction value = resolve(replacements, operand);
+            if (value == phi || value == same) continue;
+            if (same != null) return null;
+            same = value;
+        }
+        if (same == null) {
+            // Only ever assigned itself: the variable is never defined on the way here
+            same = Instruction.constant(null, phi.line);
+            entry.instructions.add(0, same);
+            same.block = entry;
+        }
+        return same;
+    }
+
+    private static Instruction[] without(Instruction[] operands, int index) {
+        Instruction[] result = Arrays.copyOf(operands, operands.length - 1);
+        System.arraycopy(operands, index + 1, result, index, operands.length - index - 1);
+        return result;
+    }
+}
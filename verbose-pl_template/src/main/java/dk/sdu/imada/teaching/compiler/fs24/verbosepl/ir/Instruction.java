@@ -0,0 +1,173 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Type;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Type.*;
+
+/**
+ * One SSA value, or a PRINT or terminator. Operands refer straight to the instructions that
+ * define them. A PHI has one operand per predecessor of its block, in the same order.
+ *
+ * Passes rewrite instructions in place (folding turns one into a CONST, say), so op, operands
+ * and constant are not final.
+ */
+public final class Instruction {
+    private static final Instruction[] NO_OPERANDS = new Instruction[0];
+
+    Op op;
+    Instruction[] operands;
+    // The value of a CONST: a Double, String, Boolean or null
+    Object constant;
+    // Successors of a JUMP (one) or BRANCH (taken if truthy, then not taken)
+    Block[] targets;
+    final int line;
+    Block block;
+
+    // Static type, filled in by ControlFlowGraph.inferTypes(); null until then
+    Type type;
+    // Register number, assigned by ControlFlowGraph.number()
+    int id = -1;
+
+    Instruction(Op op, int line, Instruction... operands) {
+        this.op = op;
+        this.line = line;
+        this.operands = operands.length == 0 ? NO_OPERANDS : operands;
+    }
+
+    static Instruction constant(Object value, int line) {
+        Instruction instruction = new Instruction(Op.CONST, line);
+        instruction.constant = value;
+        instruction.type = Type.of(value);
+        return instruction;
+    }
+
+    public Op op() {
+        return op;
+    }
+
+    public int operandCount() {
+        return operands.length;
+    }
+
+    public Instruction operand(int index) {
+        return operands[index];
+    }
+
+    public Object constant() {
+        return constant;
+    }
+
+    public Block target(int index) {
+        return targets[index];
+    }
+
+    public int line() {
+        return line;
+    }
+
+    public Block block() {
+        return block;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public boolean isConstant() {
+        return op == Op.CONST;
+    }
+
+    // Whether executing this can be a runtime error, judging by the operand types. An
+    // instruction that can must stay where it is, even if its value is never used
+    public boolean canThrow() {
+        switch (op) {
+            case ADD:
+                return !(isNumber(0) && isNumber(1)) && !(isString(0) || isString(1));
+            case SUB:
+            case MUL:
+            case DIV:
+            case LT:
+            case LE:
+            case GT:
+            case GE:
+                return !(isNumber(0) && isNumber(1));
+            case NEG:
+                return !isNumber(0);
+            default:
+                return false;
+        }
+    }
+
+    // Type of the result given the operand types, which may be null while unknown
+    Type resultType() {
+        switch (op) {
+            case CONST:
+                return Type.of(constant);
+            case PHI: {
+                Type joined = null;
+                for (Instruction operand : operands) {
+                    joined = join(joined, operand.type);
+                }
+                return joined;
+            }
+            case ADD: {
+                Type left = operands[0].type;
+                Type right = operands[1].type;
+                if (left == STRING || right == STRING) return STRING;
+                if (left == null || right == null) return null;
+                return left == NUMBER && right == NUMBER ? NUMBER : ANY;
+            }
+            case SUB:
+            case MUL:
+            case DIV:
+            case NEG:
+                return NUMBER;
+            case NOT:
+            case EQ:
+            case NE:
+            case LT:
+            case LE:
+            case GT:
+            case GE:
+                return BOOL;
+            default:
+                return null;
+        }
+    }
+
+    private static Type join(Type a, Type b) {
+        if (a == null) return b;
+        if (b == null || a == b) return a;
+        return ANY;
+    }
+
+    private boolean isNumber(int index) {
+        return operands[index].type == NUMBER;
+    }
+
+    private boolean isString(int index) {
+        return operands[index].type == STRING;
+    }
+
+    // Turns this into a CONST holding value
+    void becomeConstant(Object value) {
+        op = Op.CONST;
+        operands = NO_OPERANDS;
+        constant = value;
+        type = Type.of(value);
+    }
+
+    void become(Op op, Instruction... operands) {
+        this.op = op;
+        this.operands = operands;
+    }
+
+    @Override
+    public String toString() {
+        return id >= 0 ? "v" + id : op.toString();
+    }
+}
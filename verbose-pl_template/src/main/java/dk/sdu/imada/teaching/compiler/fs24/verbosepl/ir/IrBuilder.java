@@ -0,0 +1,337 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTVisitor;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lowers a resolved Stmt/Expr tree into a ControlFlowGraph in SSA form. If and While statements
+ * and the short-circuiting Logical operators become blocks and branches; every other expression
+ * becomes one instruction in the current block.
+ *
+ * Variables are the Resolver's declarations, and SSA form is built while lowering, after Braun
+ * et al., "Simple and Efficient Construction of Static Single Assignment Form": a read looks up
+ * the value the variable last got in the current block, and otherwise asks the predecessors,
+ * placing a phi where they may disagree. A loop header only learns its last predecessor once
+ * the body has been lowered, so until then (while it is not sealed) its phis are left
+ * incomplete.
+ */
+public class IrBuilder implements ASTVisitor<Instruction> {
+
+    private final ControlFlowGraph graph = new ControlFlowGraph();
+    private Block current = graph.entry;
+
+    // The value each variable last got in each block
+    private final Map<Block, Map<Stmt.Var, Instruction>> definitions = new IdentityHashMap<>();
+    // Phis of unsealed blocks still waiting for their operands
+    private final Map<Block, Map<Stmt.Var, Instruction>> incompletePhis = new IdentityHashMap<>();
+    private final Set<Block> sealed = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Trivial phis removed while building, and the value each stands for
+    private final Map<Instruction, Instruction> replaced = new IdentityHashMap<>();
+
+    public ControlFlowGraph build(List<Stmt> statements) {
+        seal(graph.entry);
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+        terminate(new Instruction(Op.RETURN, 0));
+
+        graph.order();
+        graph.replaceUses(replaced);
+        graph.removeTrivialPhis();
+        graph.inferTypes();
+        return graph;
+    }
+
+    @Override
+    public Instruction visitBlockStmt(Stmt.Block stmt) {
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Instruction visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Instruction visitIfStmt(Stmt.If stmt) {
+        Instruction condition = stmt.condition.accept(this);
+        Block thenBlock = graph.newBlock();
+        Block merge = graph.newBlock();
+        Block elseBlock = stmt.elseBranch != null ? graph.newBlock() : merge;
+        branch(condition, thenBlock, elseBlock);
+
+        seal(thenBlock);
+        current = thenBlock;
+        stmt.thenBranch.accept(this);
+        jump(merge);
+
+        if (stmt.elseBranch != null) {
+            seal(elseBlock);
+            current = elseBlock;
+            stmt.elseBranch.accept(this);
+            jump(merge);
+        }
+
+        seal(merge);
+        current = merge;
+        return null;
+    }
+
+    @Override
+    public Instruction visitPrintStmt(Stmt.Print stmt) {
+        Instruction value = stmt.expression.accept(this);
+        emit(new Instruction(Op.PRINT, 0, value));
+        return null;
+    }
+
+    @Override
+    public Instruction visitVarStmt(Stmt.Var stmt) {
+        Instruction value = stmt.initializer != null
+                ? stmt.initializer.accept(this)
+                : emit(Instruction.constant(null, stmt.name.line));
+        write(stmt, current, value);
+        return null;
+    }
+
+    // The header is entered from the block before the loop and from the end of the body; the
+    // block before only jumps to it, so it can take code hoisted out of the loop
+    @Override
+    public Instruction visitWhileStmt(Stmt.While stmt) {
+        Block header = graph.newBlock();
+        jump(header);
+
+        current = header;
+        Instruction condition = stmt.condition.accept(this);
+        Block body = graph.newBlock();
+        Block exit = graph.newBlock();
+        branch(condition, body, exit);
+
+        seal(body);
+        current = body;
+        stmt.body.accept(this);
+        jump(header);
+
+        seal(header);
+        seal(exit);
+        current = exit;
+        return null;
+    }
+
+    @Override
+    public Instruction visitReturnStmt(Stmt.Return stmt) {
+        throw new LoweringError(stmt.keyword, "Can't return from top-level code.");
+    }
+
+    @Override
+    public Instruction visitBinaryExpr(Expr.Binary expr) {
+        Instruction left = expr.left.accept(this);
+        Instruction right = expr.right.accept(this);
+        return emit(new Instruction(binaryOp(expr.operator), expr.operator.line, left, right));
+    }
+
+    private static Op binaryOp(Token operator) {
+        switch (operator.type) {
+            case PLUS: return Op.ADD;
+            case MINUS: return Op.SUB;
+            case STAR: return Op.MUL;
+            case SLASH:
+            case DIV: return Op.DIV;
+            case GREATER: return Op.GT;
+            case GREATER_EQUAL: return Op.GE;
+            case LESS: return Op.LT;
+            case LESS_EQUAL: return Op.LE;
+            case EQUAL_EQUAL:
+            case EQUALS: return Op.EQ;
+            case BANG_EQUAL: return Op.NE;
+            default:
+                throw new LoweringError(operator, "Unsupported binary operator.");
+        }
+    }
+
+    @Override
+    public Instruction visitGroupingExpr(Expr.Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public Instruction visitLiteralExpr(Expr.Literal expr) {
+        return emit(Instruction.constant(expr.value, 0));
+    }
+
+    @Override
+    public Instruction visitUnaryExpr(Expr.Unary expr) {
+        Instruction operand = expr.right.accept(this);
+        switch (expr.operator.type) {
+            case MINUS:
+                return emit(new Instruction(Op.NEG, expr.operator.line, operand));
+            case BANG:
+            case NOT:
+                return emit(new Instruction(Op.NOT, expr.operator.line, operand));
+            default:
+                throw new LoweringError(expr.operator, "Unsupported unary operator.");
+        }
+    }
+
+    @Override
+    public Instruction visitAssignmentExpr(Expr.Assignment expr) {
+        Instruction value = expr.value.accept(this);
+        write(expr.declaration, current, value);
+        return value;
+    }
+
+    // The result is the left operand if that decides it, else the right one, so it is a phi
+    // over the two ways into the block after
+    @Override
+    public Instruction visitLogicalExpr(Expr.Logical expr) {
+        Instruction left = expr.left.accept(this);
+        Block rightBlock = graph.newBlock();
+        Block merge = graph.newBlock();
+        if (expr.operator.type == TokenType.OR) {
+            branch(left, merge, rightBlock);
+        } else {
+            branch(left, rightBlock, merge);
+        }
+
+        seal(rightBlock);
+        current = rightBlock;
+        Instruction right = expr.right.accept(this);
+        jump(merge);
+
+        seal(merge);
+        current = merge;
+        Instruction phi = phi(merge);
+        phi.operands = new Instruction[] { left, right };
+        return phi;
+    }
+
+    @Override
+    public Instruction visitVariableExpr(Expr.Variable expr) {
+        return read(expr.declaration, current);
+    }
+
+    private Instruction emit(Instruction instruction) {
+        current.add(instruction);
+        return instruction;
+    }
+
+    private void jump(Block target) {
+        terminate(new Instruction(Op.JUMP, 0), target);
+    }
+
+    private void branch(Instruction condition, Block ifTrue, Block ifFalse) {
+        terminate(new Instruction(Op.BRANCH, 0, condition), ifTrue, ifFalse);
+    }
+
+    private void terminate(Instruction terminator, Block... targets) {
+        terminator.block = current;
+        if (targets.length > 0) {
+            terminator.targets = targets;
+            for (Block target : targets) {
+                target.predecessors.add(current);
+            }
+        }
+        current.terminator = terminator;
+    }
+
+    private Instruction phi(Block block) {
+        Instruction phi = new Instruction(Op.PHI, 0);
+        phi.block = block;
+        block.phis.add(phi);
+        return phi;
+    }
+
+    private void write(Stmt.Var variable, Block block, Instruction value) {
+        definitions.computeIfAbsent(block, b -> new IdentityHashMap<>()).put(variable, value);
+    }
+
+    private Instruction read(Stmt.Var variable, Block block) {
+        Map<Stmt.Var, Instruction> defined = definitions.get(block);
+        if (defined != null) {
+            Instruction value = defined.get(variable);
+            if (value != null) return ControlFlowGraph.resolve(replaced, value);
+        }
+        return readFromPredecessors(variable, block);
+    }
+
+    private Instruction readFromPredecessors(Stmt.Var variable, Block block) {
+        Instruction value;
+        if (!sealed.contains(block)) {
+            value = phi(block);
+            incompletePhis.computeIfAbsent(block, b -> new IdentityHashMap<>()).put(variable, value);
+        } else if (block.predecessors.size() == 1) {
+            value = read(variable, block.predecessors.get(0));
+        } else if (block.predecessors.isEmpty()) {
+            // Read before any declaration ran; the Resolver normally rules this out
+            value = Instruction.constant(null, 0);
+            graph.entry.instructions.add(0, value);
+            value.block = graph.entry;
+        } else {
+            // Written first, so a loop back to this block finds the phi and stops
+            Instruction phi = phi(block);
+            write(variable, block, phi);
+            value = completePhi(variable, phi);
+        }
+        write(variable, block, value);
+        return value;
+    }
+
+    private Instruction completePhi(Stmt.Var variable, Instruction phi) {
+        List<Block> predecessors = phi.block.predecessors;
+        Instruction[] operands = new Instruction[predecessors.size()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = read(variable, predecessors.get(i));
+        }
+        phi.operands = operands;
+        return removeIfTrivial(phi);
+    }
+
+    // A phi over one value (besides itself) is dropped, and that value used in its place
+    private Instruction removeIfTrivial(Instruction phi) {
+        Instruction same = null;
+        for (Instruction operand : phi.operands) {
+            Instruction value = ControlFlowGraph.resolve(replaced, operand);
+            if (value == phi || value == same) continue;
+            if (same != null) return phi;
+            same = value;
+        }
+        if (same == null) return phi;
+
+        phi.block.phis.remove(phi);
+        replaced.put(phi, same);
+        return same;
+    }
+
+    private void seal(Block block) {
+        Map<Stmt.Var, Instruction> incomplete = incompletePhis.remove(block);
+        if (incomplete != null) {
+            for (Map.Entry<Stmt.Var, Instruction> entry : incomplete.entrySet()) {
+                Instruction value = completePhi(entry.getKey(), entry.getValue());
+                Map<Stmt.Var, Instruction> defined = definitions.get(block);
+                if (defined.get(entry.getKey()) == entry.getValue()) defined.put(entry.getKey(), value);
+            }
+        }
+        sealed.add(block);
+    }
+
+    public static class LoweringError extends RuntimeException {
+        public final Token token;
+
+        LoweringError(Token token, String message) {
+            super(message);
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.RuntimeError;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Values.*;
+
+/**
+ * Runs a ControlFlowGraph. Every instruction writes its value into its own register, so a
+ * value is computed once where it is defined and read from there by every use. Entering a block
+ * first copies each phi's operand for the edge taken, all at once.
+ *
+ * Counts the instructions it executes, phis and terminators included, which is how the
+ * IrOptimizer's effect is measured.
+ */
+public class IrInterpreter {
+
+    private final PrintStream out;
+    private boolean hadRuntimeError = false;
+    private long executed = 0;
+
+    public IrInterpreter() {
+        this(System.out);
+    }
+
+    public IrInterpreter(PrintStream out) {
+        this.out = out;
+    }
+
+    public boolean hadRuntimeError() {
+        return hadRuntimeError;
+    }
+
+    public long executed() {
+        return executed;
+    }
+
+    public void interpret(ControlFlowGraph graph) {
+        try {
+            run(graph);
+        } catch (RuntimeError error) {
+            hadRuntimeError = true;
+            System.err.println("[line " + error.line + "] Runtime error: " + error.getMessage());
+        }
+    }
+
+    private void run(ControlFlowGraph graph) {
+        Object[] registers = new Object[graph.number()];
+        Object[] incoming = new Object[0];
+        Block block = graph.entry;
+        Block from = null;
+
+        while (true) {
+            List<Instruction> phis = block.phis;
+            if (!phis.isEmpty()) {
+                int edge = block.predecessors.indexOf(from);
+                if (incoming.length < phis.size()) incoming = new Object[phis.size()];
+                for (int i = 0; i < phis.size(); i++) {
+                    incoming[i] = registers[phis.get(i).operands[edge].id];
+                }
+                for (int i = 0; i < phis.size(); i++) {
+                    registers[phis.get(i).id] = incoming[i];
+                }
+                executed += phis.size();
+            }
+
+            for (Instruction instruction : block.instructions) {
+                if (instruction.op == Op.PRINT) {
+                    out.println(stringify(registers[instruction.operands[0].id]));
+                } else {
+                    registers[instruction.id] = execute(instruction, registers);
+                }
+            }
+            executed += block.instructions.size() + 1;
+
+            Instruction terminator = block.terminator;
+            from = block;
+            switch (terminator.op) {
+                case JUMP:
+                    block = terminator.targets[0];
+                    break;
+                case BRANCH:
+                    block = terminator.targets[isTruthy(registers[terminator.operands[0].id]) ? 0 : 1];
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    private static Object execute(Instruction instruction, Object[] registers) {
+        Instruction[] operands = instruction.operands;
+        switch (operands.length) {
+            case 0:
+                return instruction.constant;
+            case 1:
+                return evaluate(instruction, registers[operands[0].id], null);
+            default:
+                return evaluate(instruction, registers[operands[0].id], registers[operands[1].id]);
+        }
+    }
+
+    // The value of a pure instruction over the given operand values; also used for folding
+    static Object evaluate(Instruction instruction, Object left, Object right) {
+        switch (instruction.op) {
+            case CONST:
+                return instruction.constant;
+            case ADD:
+                if (left instanceof Double && right instanceof Double) {
+                    return (double) left + (double) right;
+                }
+                if (left instanceof String || right instanceof String) {
+                    return stringify(left) + stringify(right);
+                }
+                throw new RuntimeError(instruction.line, "Operands must be two numbers or include a string.");
+            case SUB:
+                return number(instruction, left) - number(instruction, right);
+            case MUL:
+                return number(instruction, left) * number(instruction, right);
+            case DIV:
+                return number(instruction, left) / number(instruction, right);
+            case LT:
+                return number(instruction, left) < number(instruction, right);
+            case LE:
+                return number(instruction, left) <= number(instruction, right);
+            case GT:
+                return number(instruction, left) > number(instruction, right);
+            case GE:
+                return number(instruction, left) >= number(instruction, right);
+            case EQ:
+                return isEqual(left, right);
+            case NE:
+                return !isEqual(left, right);
+            case NEG:
+                if (!(left instanceof Double)) {
+                    throw new RuntimeError(instruction.line, "Operand must be a number.");
+                }
+                return -(double) left;
+            case NOT:
+                return !isTruthy(left);
+            default:
+                throw new IllegalStateException("Cannot evaluate " + instruction.op + ".");
+        }
+    }
+
+    private static double number(Instruction instruction, Object value) {
+        if (value instanceof Double) return (double) value;
+        throw new RuntimeError(instruction.line, "Operands must be numbers.");
+    }
+}
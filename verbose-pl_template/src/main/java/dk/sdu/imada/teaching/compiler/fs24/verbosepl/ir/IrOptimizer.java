@@ -0,0 +1,241 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Type;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Values.isTruthy;
+
+/**
+ * Optimizes a ControlFlowGraph in place, running these passes in turn until none of them finds
+ * anything left to do:
+ *  - simplification: constant folding, algebraic identities, strength reduction (x * 2 becomes
+ *    x + x, a division by a power of two a multiplication) and branches on constants turned into
+ *    jumps, which leaves the branch not taken unreachable;
+ *  - common-subexpression elimination (ValueNumbering);
+ *  - loop-invariant code motion (LoopInvariantCodeMotion);
+ *  - dead-code elimination of unused values and unreachable blocks.
+ *
+ * Rewrites rely on the inferred operand types, and none of them changes the program's output.
+ * An instruction that may be a runtime error is never folded, moved or removed, so the error
+ * still happens, at the same point.
+ */
+public class IrOptimizer {
+    // Each round only ever shrinks the program; this just bounds the worst case
+    private static final int MAX_ROUNDS = 16;
+
+    public void optimize(ControlFlowGraph graph) {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean changed = simplify(graph);
+            changed |= graph.removeTrivialPhis();
+            changed |= new ValueNumbering().run(graph);
+            changed |= new LoopInvariantCodeMotion().run(graph);
+            changed |= eliminateDeadCode(graph);
+            if (!changed) return;
+        }
+    }
+
+    boolean simplify(ControlFlowGraph graph) {
+        graph.inferTypes();
+        Map<Instruction, Instruction> replacements = new IdentityHashMap<>();
+        boolean changed = false;
+
+        for (Block block : graph.blocks()) {
+            List<Instruction> instructions = block.instructions;
+            for (int i = 0; i < instructions.size(); i++) {
+                Instruction instruction = instructions.get(i);
+                resolveOperands(instruction, replacements);
+                if (!instruction.op.isPure() || instruction.op == Op.CONST) continue;
+
+                Instruction replacement = simplify(instruction, instructions, i);
+                if (replacement == null) continue;
+                changed = true;
+                if (replacement != instruction) {
+                    replacements.put(instruction, replacement);
+                } else {
+                    // Rewritten in place; a constant may have been inserted before it
+                    i = instructions.indexOf(instruction);
+                }
+            }
+
+            resolveOperands(block.terminator, replacements);
+            changed |= simplifyBranch(graph, block);
+        }
+
+        graph.replaceUses(replacements);
+        changed |= graph.order();
+        return changed;
+    }
+
+    private static void resolveOperands(Instruction instruction, Map<Instruction, Instruction> replacements) {
+        Instruction[] operands = instruction.operands;
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = ControlFlowGraph.resolve(replacements, operands[i]);
+        }
+    }
+
+    /**
+     * Returns the value that instruction (at index in instructions) can be replaced with,
+     * instruction itself if it was rewritten in place, or null if there's nothing to do.
+     */
+    private static Instruction simplify(Instruction instruction, List<Instruction> instructions, int index) {
+        Instruction[] operands = instruction.operands;
+
+        boolean constant = true;
+        for (Instruction operand : operands) {
+            constant &= operand.isConstant();
+        }
+        if (constant && !instruction.canThrow()) {
+            Object left = operands[0].constant;
+            Object right = operands.length > 1 ? operands[1].constant : null;
+            instruction.becomeConstant(IrInterpreter.evaluate(instruction, left, right));
+            return instruction;
+        }
+
+        switch (instruction.op) {
+            case NEG:
+                // If the inner negation did not fail, its operand was a number
+                if (operands[0].op == Op.NEG) return operands[0].operands[0];
+                return null;
+            case NOT:
+                if (operands[0].op == Op.NOT && operands[0].operands[0].type == Type.BOOL) {
+                    return operands[0].operands[0];
+                }
+                return null;
+            case EQ:
+                // Every value equals itself, even NaN and nil
+                if (operands[0] != operands[1]) return null;
+                instruction.becomeConstant(true);
+                return instruction;
+            case NE:
+                if (operands[0] != operands[1]) return null;
+                instruction.becomeConstant(false);
+                return instruction;
+            default:
+                break;
+        }
+
+        if (instruction.canThrow() || instruction.type != Type.NUMBER) return null;
+        Instruction left = operands[0];
+        Instruction right = operands.length > 1 ? operands[1] : null;
+        switch (instruction.op) {
+            case ADD:
+                // Only adding -0 leaves every number as it was; -0 + 0 is 0
+                if (isConstant(right, -0.0)) return left;
+                if (isConstant(left, -0.0)) return right;
+                return null;
+            case SUB:
+                if (isConstant(right, 0.0)) return left;
+                return null;
+            case MUL:
+                if (isConstant(right, 1.0)) return left;
+                if (isConstant(left, 1.0)) return right;
+                if (isConstant(right, 2.0)) {
+                    instruction.become(Op.ADD, left, left);
+                    return instruction;
+                }
+                if (isConstant(left, 2.0)) {
+                    instruction.become(Op.ADD, right, right);
+                    return instruction;
+                }
+                return null;
+            case DIV:
+                if (isConstant(right, 1.0)) return left;
+                if (right.isConstant() && isPowerOfTwo((double) right.constant)) {
+                    // Exact: both round the same real number, and the reciprocal is a double
+                    Instruction reciprocal = Instruction.constant(1.0 / (double) right.constant, right.line);
+                    reciprocal.block = instruction.block;
+                    instructions.add(index, reciprocal);
+                    instruction.become(Op.MUL, left, reciprocal);
+                    return instruction;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    // Compares bit patterns, so 0 and -0 are told apart
+    private static boolean isConstant(Instruction instruction, double value) {
+        return instruction.isConstant() && instruction.constant instanceof Double
+                && Double.doubleToLongBits((double) instruction.constant) == Double.doubleToLongBits(value);
+    }
+
+    private static boolean isPowerOfTwo(double value) {
+        int exponent = Math.getExponent(value);
+        return exponent > Double.MIN_EXPONENT && exponent <= Double.MAX_EXPONENT
+                && Math.abs(value) == Math.scalb(1.0, exponent);
+    }
+
+    // A branch on a constant becomes a jump; one on a negation branches on its operand instead
+    private static boolean simplifyBranch(ControlFlowGraph graph, Block block) {
+        Instruction terminator = block.terminator;
+        if (terminator.op != Op.BRANCH) return false;
+
+        Instruction condition = terminator.operands[0];
+        if (condition.isConstant()) {
+            int taken = isTruthy(condition.constant) ? 0 : 1;
+            Block target = terminator.targets[taken];
+            graph.removePredecessor(terminator.targets[1 - taken], block);
+            terminator.become(Op.JUMP);
+            terminator.targets = new Block[] { target };
+            return true;
+        }
+        if (condition.op == Op.NOT) {
+            terminator.operands = new Instruction[] { condition.operands[0] };
+            terminator.targets = new Block[] { terminator.targets[1], terminator.targets[0] };
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes every value nothing observable depends on. Prints, terminators and instructions
+     * that may fail are kept, and so is everything they use.
+     */
+    boolean eliminateDeadCode(ControlFlowGraph graph) {
+        graph.inferTypes();
+        Set<Instruction> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Instruction> worklist = new ArrayDeque<>();
+        for (Block block : graph.blocks()) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction.op == Op.PRINT || instruction.canThrow()) markLive(instruction, live, worklist);
+            }
+            markLive(block.terminator, live, worklist);
+        }
+        while (!worklist.isEmpty()) {
+            for (Instruction operand : worklist.pop().operands) {
+                markLive(operand, live, worklist);
+            }
+        }
+
+        boolean removed = false;
+        for (Block block : graph.blocks()) {
+            removed |= removeDead(block.phis, live);
+            removed |= removeDead(block.instructions, live);
+        }
+        return removed;
+    }
+
+    private static void markLive(Instruction instruction, Set<Instruction> live, Deque<Instruction> worklist) {
+        if (live.add(instruction)) worklist.push(instruction);
+    }
+
+    private static boolean removeDead(List<Instruction> instructions, Set<Instruction> live) {
+        boolean removed = false;
+        for (Iterator<Instruction> iterator = instructions.iterator(); iterator.hasNext(); ) {
+            if (!live.contains(iterator.next())) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,74 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Values.stringify;
+
+/**
+ * Prints a ControlFlowGraph one block after another in reverse postorder, values numbered in
+ * the order they are defined:
+ *
+ *   b1: <- b0, b2
+ *     v3: Number = phi v0, v9
+ *     v4: Bool = lt v3, v1
+ *     branch v4, b2, b3
+ *
+ * A phi's operands come in the order of the predecessors listed after its block's name.
+ */
+public class IrPrinter {
+
+    public void print(ControlFlowGraph graph, Appendable out) throws IOException {
+        graph.number();
+        for (Block block : graph.blocks()) {
+            out.append(block.toString()).append(':');
+            for (int i = 0; i < block.predecessors.size(); i++) {
+                out.append(i == 0 ? " <- " : ", ").append(block.predecessors.get(i).toString());
+            }
+            out.append('\n');
+
+            for (Instruction phi : block.phis) {
+                line(phi, out);
+            }
+            for (Instruction instruction : block.instructions) {
+                line(instruction, out);
+            }
+            line(block.terminator, out);
+        }
+    }
+
+    public String print(ControlFlowGraph graph) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            print(graph, builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+
+    private static void line(Instruction instruction, Appendable out) throws IOException {
+        out.append("  ");
+        if (instruction.type != null) {
+            out.append(instruction.toString()).append(": ").append(instruction.type.toString()).append(" = ");
+        }
+        out.append(instruction.op.toString());
+
+        String separator = " ";
+        if (instruction.op == Op.CONST) {
+            Object value = instruction.constant;
+            out.append(separator).append(value instanceof String ? "\"" + value + "\"" : stringify(value));
+        }
+        for (Instruction operand : instruction.operands) {
+            out.append(separator).append(operand.toString());
+            separator = ", ";
+        }
+        if (instruction.targets != null) {
+            for (Block target : instruction.targets) {
+                out.append(separator).append(target.toString());
+                separator = ", ";
+            }
+        }
+        out.append('\n');
+    }
+}
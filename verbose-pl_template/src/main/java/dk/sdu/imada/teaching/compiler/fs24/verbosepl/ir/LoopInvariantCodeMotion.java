@@ -0,0 +1,102 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves instructions whose operands are all defined outside a loop into the loop's preheader,
+ * so they run once instead of on every iteration. Loops are the natural loops of the back
+ * edges (edges to a block that dominates their source), and are handled innermost first, so an
+ * instruction can move out through several levels.
+ *
+ * Only instructions that can't fail are moved: one that runs a single time before the loop (or
+ * runs although the loop body never does) must not be able to stop the program.
+ */
+final class LoopInvariantCodeMotion {
+
+    boolean run(ControlFlowGraph graph) {
+        graph.computeDominators();
+        graph.inferTypes();
+        List<Block> blocks = graph.blocks();
+
+        Map<Block, Set<Block>> loops = new IdentityHashMap<>();
+        List<Block> headers = new ArrayList<>();
+        for (Block block : blocks) {
+            for (Block successor : block.successors()) {
+                if (!successor.dominates(block)) continue;
+                Set<Block> body = loops.get(successor);
+                if (body == null) {
+                    body = Collections.newSetFromMap(new IdentityHashMap<>());
+                    body.add(successor);
+                    loops.put(successor, body);
+                    headers.add(successor);
+                }
+                addLoopBody(block, body);
+            }
+        }
+        headers.sort(Comparator.comparingInt(header -> loops.get(header).size()));
+
+        boolean changed = false;
+        for (Block header : headers) {
+            Set<Block> body = loops.get(header);
+            Block preheader = preheader(header, body);
+            if (preheader == null) continue;
+
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                for (Block block : blocks) {
+                    if (!body.contains(block)) continue;
+                    for (Iterator<Instruction> iterator = block.instructions.iterator(); iterator.hasNext(); ) {
+                        Instruction instruction = iterator.next();
+                        if (!isInvariant(instruction, body)) continue;
+                        iterator.remove();
+                        preheader.add(instruction);
+                        moved = true;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    // Everything that reaches the back edge's source without passing the header
+    private static void addLoopBody(Block source, Set<Block> body) {
+        Deque<Block> worklist = new ArrayDeque<>();
+        if (body.add(source)) worklist.push(source);
+        while (!worklist.isEmpty()) {
+            for (Block predecessor : worklist.pop().predecessors) {
+                if (body.add(predecessor)) worklist.push(predecessor);
+            }
+        }
+    }
+
+    // The one block outside the loop that enters it, if all it does afterwards is jump there
+    private static Block preheader(Block header, Set<Block> body) {
+        Block preheader = null;
+        for (Block predecessor : header.predecessors) {
+            if (body.contains(predecessor)) continue;
+            if (preheader != null) return null;
+            preheader = predecessor;
+        }
+        if (preheader == null || preheader.terminator.op != Op.JUMP) return null;
+        return preheader;
+    }
+
+    private static boolean isInvariant(Instruction instruction, Set<Block> body) {
+        if (!instruction.op.isPure() || instruction.canThrow()) return false;
+        for (Instruction operand : instruction.operands) {
+            if (body.contains(operand.block)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,52 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir;
+
+// What an Instruction computes; the name is how IrPrinter spells it
+public enum Op {
+    CONST("const"),
+    PHI("phi"),
+
+    ADD("add"),
+    SUB("sub"),
+    MUL("mul"),
+    DIV("div"),
+    NEG("neg"),
+    NOT("not"),
+    EQ("eq"),
+    NE("ne"),
+    LT("lt"),
+    LE("le"),
+    GT("gt"),
+    GE("ge"),
+
+    PRINT("print"),
+
+    // Terminators, one at the end of every block
+    JUMP("jump"),
+    BRANCH("branch"),
+    RETURN("return");
+
+    private final String spelling;
+
+    Op(String spelling) {
+        this.spelling = spelling;
+    }
+
+    public boolean isTerminator() {
+        return this == JUMP || this == BRANCH || this == RETURN;
+    }
+
+    // Computes a value from its operands alone; may still throw, see Instruction.canThrow()
+    public boolean isPure() {
+        return this != PHI && this != PRINT && !isTerminator();
+    }
+
+    // Whether swapping the operands never changes the result
+    public boolean isCommutative() {
+        return this == MUL || this == EQ || this == NE;
+    }
+
+    @Override
+    public String toString() {
+        return spelling;
+    }
+}
@@ -0,0 +1,106 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Type;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Common-subexpression elimination by dominator-based value numbering. The dominator tree is
+ * walked from the entry, and an instruction that computes what an instruction in a dominating
+ * block (or earlier in its own block) already computed is replaced by that one. Whatever might
+ * fail was already tried there, so this is safe for every pure instruction.
+ */
+final class ValueNumbering {
+
+    // What an instruction computes: its operation, constant and operands
+    private record Key(Op op, Object constant, Instruction left, Instruction right) {}
+
+    private final Map<Key, Instruction> available = new HashMap<>();
+    // Keys added to available, so leaving a subtree can take them out again
+    private final List<Key> added = new ArrayList<>();
+    private final Map<Instruction, Instruction> replacements = new IdentityHashMap<>();
+
+    boolean run(ControlFlowGraph graph) {
+        graph.computeDominators();
+        graph.inferTypes();
+        graph.number();
+
+        Map<Block, List<Block>> children = new IdentityHashMap<>();
+        for (Block block : graph.blocks()) {
+            if (block != graph.entry) children.computeIfAbsent(block.dominator, b -> new ArrayList<>()).add(block);
+        }
+
+        // A block is pushed once to number it and once more, with its mark, to leave it
+        Deque<Block> stack = new ArrayDeque<>();
+        Deque<Integer> marks = new ArrayDeque<>();
+        stack.push(graph.entry);
+        marks.push(-1);
+        while (!stack.isEmpty()) {
+            Block block = stack.pop();
+            int mark = marks.pop();
+            if (mark >= 0) {
+                while (added.size() > mark) {
+                    available.remove(added.remove(added.size() - 1));
+                }
+                continue;
+            }
+
+            stack.push(block);
+            marks.push(added.size());
+            number(block);
+            for (Block child : children.getOrDefault(block, List.of())) {
+                stack.push(child);
+                marks.push(-1);
+            }
+        }
+
+        graph.replaceUses(replacements);
+        return !replacements.isEmpty();
+    }
+
+    private void number(Block block) {
+        for (Iterator<Instruction> iterator = block.instructions.iterator(); iterator.hasNext(); ) {
+            Instruction instruction = iterator.next();
+            Instruction[] operands = instruction.operands;
+            for (int i = 0; i < operands.length; i++) {
+                operands[i] = ControlFlowGraph.resolve(replacements, operands[i]);
+            }
+            if (!instruction.op.isPure()) continue;
+
+            Key key = key(instruction);
+            Instruction existing = available.get(key);
+            if (existing != null) {
+                replacements.put(instruction, existing);
+                iterator.remove();
+            } else {
+                available.put(key, instruction);
+                added.add(key);
+            }
+        }
+    }
+
+    private static Key key(Instruction instruction) {
+        Instruction[] operands = instruction.operands;
+        Instruction left = operands.length > 0 ? operands[0] : null;
+        Instruction right = operands.length > 1 ? operands[1] : null;
+        if (right != null && isCommutative(instruction) && left.id > right.id) {
+            Instruction swap = left;
+            left = right;
+            right = swap;
+        }
+        return new Key(instruction.op, instruction.constant, left, right);
+    }
+
+    // Adding strings concatenates them, which is not commutative
+    private static boolean isCommutative(Instruction instruction) {
+        if (instruction.op == Op.ADD) return instruction.operands[0].type == Type.NUMBER && instruction.operands[1].type == Type.NUMBER;
+        return instruction.op.isCommutative();
+    }
+}
@@ -0,0 +1,17 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.jit;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Environment;
+
+import java.io.PrintStream;
+
+/**
+ * A Stmt.While that has been compiled to a JVM hidden class.
+ */
+public interface CompiledLoop {
+    /**
+     * Runs the loop to completion against the environment the loop statement executes in.
+     * Returns false without side effects if a captured variable does not hold a value of its
+     * declared type, in which case the caller keeps interpreting.
+     */
+    boolean run(Environment environment, PrintStream out);
+}
@@ -0,0 +1,18 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.jit;
+
+/**
+ * Static helpers called from generated loop classes.
+ */
+public final class JitRuntime {
+
+    private JitRuntime() {}
+
+    // Same text as Values.stringify for a Double, without boxing
+    public static String stringify(double value) {
+        String text = Double.toString(value);
+        if (text.endsWith(".0")) {
+            text = text.substring(0, text.length() - 2);
+        }
+        return text;
+    }
+}
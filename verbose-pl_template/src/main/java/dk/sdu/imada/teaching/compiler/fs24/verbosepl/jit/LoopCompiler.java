@@ -0,0 +1,522 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.jit;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Environment;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Compiles a single Stmt.While into a hidden class implementing CompiledLoop.
+ *
+ * Every variable the loop touches is kept in a JVM local typed after its declaration:
+ * Number as double, Bool as int and String as a reference. Variables declared outside the
+ * loop are loaded from the environment once, behind a type guard, and written back when the
+ * loop exits. Loops that use anything the generated code can't type statically (nil, mixed
+ * operand types, return) are rejected and stay in the interpreter.
+ */
+final class LoopCompiler {
+
+    private enum Kind { NUMBER, BOOL, STRING }
+
+    private static final String ENVIRONMENT = Type.getInternalName(Environment.class);
+    private static final String PRINT_STREAM = "java/io/PrintStream";
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    // A variable declared outside the loop, addressed relative to the loop's environment
+    private static class Captured {
+        int depth;
+        int slot;
+        boolean assigned;
+    }
+
+    private final Stmt.While loop;
+    private final Set<Stmt.Var> inner = new HashSet<>();
+    private final Map<Stmt.Var, Captured> captured = new LinkedHashMap<>();
+    private final Map<Stmt.Var, Integer> locals = new IdentityHashMap<>();
+    private int nextLocal = 3;  // 0 = this, 1 = environment, 2 = out
+    private MethodVisitor mv;
+
+    private LoopCompiler(Stmt.While loop) {
+        this.loop = loop;
+    }
+
+    /** Returns null if the loop uses something the generated code can't handle. */
+    static CompiledLoop compile(Stmt.While loop) {
+        try {
+            byte[] bytes = new LoopCompiler(loop).generate();
+            Class<?> type = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            return (CompiledLoop) type.getDeclaredConstructor().newInstance();
+        } catch (Unsupported e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not load compiled loop", e);
+        }
+    }
+
+    private byte[] generate() {
+        new Analysis().stmt(loop, 0);
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+            @Override
+            protected ClassLoader getClassLoader() {
+                return LoopCompiler.class.getClassLoader();
+            }
+        };
+        String name = Type.getInternalName(LoopCompiler.class).replace("LoopCompiler", "Loop");
+        cw.visit(V21, ACC_FINAL | ACC_SYNTHETIC, name, null, "java/lang/Object",
+                new String[] { Type.getInternalName(CompiledLoop.class) });
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "run", "(L" + ENVIRONMENT + ";L" + PRINT_STREAM + ";)Z", null, null);
+        mv.visitCode();
+        emitPrologue();
+        stmt(loop);
+        emitEpilogue();
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    // ---------------------------------------------------------------- analysis
+
+    /** Finds inner declarations and captured variables, and rejects unsupported statements. */
+    private class Analysis {
+        void stmt(Stmt stmt, int frames) {
+            if (stmt instanceof Stmt.Block) {
+                Stmt.Block block = (Stmt.Block) stmt;
+                int inside = block.slots > 0 ? frames + 1 : frames;
+                for (Stmt statement : block.statements) stmt(statement, inside);
+            } else if (stmt instanceof Stmt.Var) {
+                Stmt.Var var = (Stmt.Var) stmt;
+                if (var.initializer == null) throw new Unsupported();
+                expr(var.initializer, frames);
+                inner.add(var);
+            } else if (stmt instanceof Stmt.Expression) {
+                expr(((Stmt.Expression) stmt).expression, frames);
+            } else if (stmt instanceof Stmt.Print) {
+                expr(((Stmt.Print) stmt).expression, frames);
+            } else if (stmt instanceof Stmt.If) {
+                Stmt.If ifStmt = (Stmt.If) stmt;
+                expr(ifStmt.condition, frames);
+                stmt(ifStmt.thenBranch, frames);
+                if (ifStmt.elseBranch != null) stmt(ifStmt.elseBranch, frames);
+            } else if (stmt instanceof Stmt.While) {
+                Stmt.While whileStmt = (Stmt.While) stmt;
+                expr(whileStmt.condition, frames);
+                stmt(whileStmt.body, frames);
+            } else {
+                throw new Unsupported();
+            }
+        }
+
+        void expr(Expr expr, int frames) {
+            if (expr instanceof Expr.Variable) {
+                Expr.Variable variable = (Expr.Variable) expr;
+                use(variable.declaration, variable.depth, frames, false);
+            } else if (expr instanceof Expr.Assignment) {
+                Expr.Assignment assignment = (Expr.Assignment) expr;
+                expr(assignment.value, frames);
+                use(assignment.declaration, assignment.depth, frames, true);
+            } else if (expr instanceof Expr.Binary) {
+                expr(((Expr.Binary) expr).left, frames);
+                expr(((Expr.Binary) expr).right, frames);
+            } else if (expr instanceof Expr.Logical) {
+                expr(((Expr.Logical) expr).left, frames);
+                expr(((Expr.Logical) expr).right, frames);
+            } else if (expr instanceof Expr.Unary) {
+                expr(((Expr.Unary) expr).right, frames);
+            } else if (expr instanceof Expr.Grouping) {
+                expr(((Expr.Grouping) expr).expression, frames);
+            }
+        }
+
+        void use(Stmt.Var declaration, int depth, int frames, boolean assigned) {
+            if (declaration == null) throw new Unsupported();
+            if (inner.contains(declaration)) return;
+
+            Captured capture = captured.computeIfAbsent(declaration, k -> new Captured());
+            capture.depth = depth - frames;
+            capture.slot = declaration.slot;
+            capture.assigned |= assigned;
+        }
+    }
+
+    // ---------------------------------------------------------------- code generation
+
+    private static Kind kindOf(Stmt.Var declaration) {
+        switch (declaration.type.type) {
+            case NUMBER_TYPE: return Kind.NUMBER;
+            case BOOL_TYPE: return Kind.BOOL;
+            case STRING_TYPE: return Kind.STRING;
+            default: throw new Unsupported();
+        }
+    }
+
+    private int local(Stmt.Var declaration) {
+        Integer index = locals.get(declaration);
+        if (index == null) {
+            index = nextLocal;
+            nextLocal += kindOf(declaration) == Kind.NUMBER ? 2 : 1;
+            locals.put(declaration, index);
+        }
+        return index;
+    }
+
+    private void emitPrologue() {
+        if (captured.isEmpty()) return;
+
+        Label guardFailed = new Label();
+        Label guardsPassed = new Label();
+
+        for (Map.Entry<Stmt.Var, Captured> entry : captured.entrySet()) {
+            Captured capture = entry.getValue();
+            mv.visitVarInsn(ALOAD, 1);
+            pushInt(capture.depth);
+            pushInt(capture.slot);
+            mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "get", "(II)Ljava/lang/Object;", false);
+            mv.visitInsn(DUP);
+
+            Kind kind = kindOf(entry.getKey());
+            String box = kind == Kind.NUMBER ? "java/lang/Double" : kind == Kind.BOOL ? "java/lang/Boolean" : "java/lang/String";
+            mv.visitTypeInsn(INSTANCEOF, box);
+            mv.visitJumpInsn(IFEQ, guardFailed);
+            mv.visitTypeInsn(CHECKCAST, box);
+
+            int index = local(entry.getKey());
+            switch (kind) {
+                case NUMBER:
+                    mv.visitMethodInsn(INVOKEVIRTUAL, box, "doubleValue", "()D", false);
+                    mv.visitVarInsn(DSTORE, index);
+                    break;
+                case BOOL:
+                    mv.visitMethodInsn(INVOKEVIRTUAL, box, "booleanValue", "()Z", false);
+                    mv.visitVarInsn(ISTORE, index);
+                    break;
+                case STRING:
+                    mv.visitVarInsn(ASTORE, index);
+                    break;
+            }
+        }
+        mv.visitJumpInsn(GOTO, guardsPassed);
+
+        mv.visitLabel(guardFailed);
+        mv.visitInsn(POP);
+        mv.visitInsn(ICONST_0);
+        mv.visitInsn(IRETURN);
+
+        mv.visitLabel(guardsPassed);
+    }
+
+    private void emitEpilogue() {
+        for (Map.Entry<Stmt.Var, Captured> entry : captured.entrySet()) {
+            Captured capture = entry.getValue();
+            if (!capture.assigned) continue;
+
+            mv.visitVarInsn(ALOAD, 1);
+            pushInt(capture.depth);
+            pushInt(capture.slot);
+            int index = local(entry.getKey());
+            switch (kindOf(entry.getKey())) {
+                case NUMBER:
+                    mv.visitVarInsn(DLOAD, index);
+                    mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", false);
+                    break;
+                case BOOL:
+                    mv.visitVarInsn(ILOAD, index);
+                    mv.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+                    break;
+                case STRING:
+                    mv.visitVarInsn(ALOAD, index);
+                    break;
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "assign", "(IILjava/lang/Object;)V", false);
+        }
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IRETURN);
+    }
+
+    private void stmt(Stmt stmt) {
+        if (stmt instanceof Stmt.Block) {
+            for (Stmt statement : ((Stmt.Block) stmt).statements) stmt(statement);
+        } else if (stmt instanceof Stmt.Var) {
+            Stmt.Var var = (Stmt.Var) stmt;
+            Kind kind = kindOf(var);
+            expect(expr(var.initializer), kind);
+            store(kind, local(var));
+        } else if (stmt instanceof Stmt.Expression) {
+            Kind kind = expr(((Stmt.Expression) stmt).expression);
+            mv.visitInsn(kind == Kind.NUMBER ? POP2 : POP);
+        } else if (stmt instanceof Stmt.Print) {
+            mv.visitVarInsn(ALOAD, 2);
+            toText(expr(((Stmt.Print) stmt).expression));
+            mv.visitMethodInsn(INVOKEVIRTUAL, PRINT_STREAM, "println", "(Ljava/lang/String;)V", false);
+        } else if (stmt instanceof Stmt.If) {
+            Stmt.If ifStmt = (Stmt.If) stmt;
+            Label elseBranch = new Label();
+            Label end = new Label();
+            expect(expr(ifStmt.condition), Kind.BOOL);
+            mv.visitJumpInsn(IFEQ, elseBranch);
+            stmt(ifStmt.thenBranch);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(elseBranch);
+            if (ifStmt.elseBranch != null) stmt(ifStmt.elseBranch);
+            mv.visitLabel(end);
+        } else if (stmt instanceof Stmt.While) {
+            Stmt.While whileStmt = (Stmt.While) stmt;
+            Label start = new Label();
+            Label end = new Label();
+            mv.visitLabel(start);
+            expect(expr(whileStmt.condition), Kind.BOOL);
+            mv.visitJumpInsn(IFEQ, end);
+            stmt(whileStmt.body);
+            mv.visitJumpInsn(GOTO, start);
+            mv.visitLabel(end);
+        } else {
+            throw new Unsupported();
+        }
+    }
+
+    private Kind expr(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) expr).value;
+            if (value instanceof Double) {
+                mv.visitLdcInsn(value);
+                return Kind.NUMBER;
+            }
+            if (value instanceof Boolean) {
+                mv.visitInsn((Boolean) value ? ICONST_1 : ICONST_0);
+                return Kind.BOOL;
+            }
+            if (value instanceof String) {
+                mv.visitLdcInsn(value);
+                return Kind.STRING;
+            }
+            throw new Unsupported();
+        }
+        if (expr instanceof Expr.Grouping) {
+            return expr(((Expr.Grouping) expr).expression);
+        }
+        if (expr instanceof Expr.Variable) {
+            Stmt.Var declaration = ((Expr.Variable) expr).declaration;
+            Kind kind = kindOf(declaration);
+            load(kind, local(declaration));
+            return kind;
+        }
+        if (expr instanceof Expr.Assignment) {
+            Expr.Assignment assignment = (Expr.Assignment) expr;
+            Kind kind = kindOf(assignment.declaration);
+            expect(expr(assignment.value), kind);
+            mv.visitInsn(kind == Kind.NUMBER ? DUP2 : DUP);
+            store(kind, local(assignment.declaration));
+            return kind;
+        }
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            Kind operand = expr(unary.right);
+            if (unary.operator.type == TokenType.MINUS) {
+                expect(operand, Kind.NUMBER);
+                mv.visitInsn(DNEG);
+                return Kind.NUMBER;
+            }
+            expect(operand, Kind.BOOL);
+            mv.visitInsn(ICONST_1);
+            mv.visitInsn(IXOR);
+            return Kind.BOOL;
+        }
+        if (expr instanceof Expr.Logical) {
+            Expr.Logical logical = (Expr.Logical) expr;
+            Label shortCircuit = new Label();
+            Label end = new Label();
+            boolean isOr = logical.operator.type == TokenType.OR;
+            expect(expr(logical.left), Kind.BOOL);
+            mv.visitJumpInsn(isOr ? IFNE : IFEQ, shortCircuit);
+            expect(expr(logical.right), Kind.BOOL);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(shortCircuit);
+            mv.visitInsn(isOr ? ICONST_1 : ICONST_0);
+            mv.visitLabel(end);
+            return Kind.BOOL;
+        }
+        if (expr instanceof Expr.Binary) {
+            return binary((Expr.Binary) expr);
+        }
+        throw new Unsupported();
+    }
+
+    private Kind binary(Expr.Binary expr) {
+        TokenType operator = expr.operator.type;
+
+        if (operator == TokenType.PLUS) {
+            // Decide between addition and concatenation before emitting anything
+            if (staticKind(expr.left) == Kind.STRING || staticKind(expr.right) == Kind.STRING) {
+                toText(expr(expr.left));
+                toText(expr(expr.right));
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;", false);
+                return Kind.STRING;
+            }
+        }
+
+        Kind left = expr(expr.left);
+        Kind right = expr(expr.right);
+
+        switch (operator) {
+            case PLUS:
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case DIV:
+                expect(left, Kind.NUMBER);
+                expect(right, Kind.NUMBER);
+                mv.visitInsn(operator == TokenType.PLUS ? DADD
+                        : operator == TokenType.MINUS ? DSUB
+                        : operator == TokenType.STAR ? DMUL : DDIV);
+                return Kind.NUMBER;
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                expect(left, Kind.NUMBER);
+                expect(right, Kind.NUMBER);
+                // dcmpg/dcmpl are picked so that NaN makes every comparison false
+                boolean less = operator == TokenType.LESS || operator == TokenType.LESS_EQUAL;
+                mv.visitInsn(less ? DCMPG : DCMPL);
+                int jumpIfFalse = operator == TokenType.GREATER ? IFLE
+                        : operator == TokenType.GREATER_EQUAL ? IFLT
+                        : operator == TokenType.LESS ? IFGE : IFGT;
+                pushCondition(jumpIfFalse);
+                return Kind.BOOL;
+            case EQUAL_EQUAL:
+            case EQUALS:
+            case BANG_EQUAL:
+                if (left != right) throw new Unsupported();
+                boolean negate = operator == TokenType.BANG_EQUAL;
+                switch (left) {
+                    case NUMBER:
+                        // Double.compare matches Double.equals, which Values.isEqual uses
+                        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "compare", "(DD)I", false);
+                        pushCondition(negate ? IFEQ : IFNE);
+                        break;
+                    case BOOL:
+                        pushCondition(negate ? IF_ICMPEQ : IF_ICMPNE);
+                        break;
+                    case STRING:
+                        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "equals", "(Ljava/lang/Object;)Z", false);
+                        if (negate) {
+                            mv.visitInsn(ICONST_1);
+                            mv.visitInsn(IXOR);
+                        }
+                        break;
+                }
+                return Kind.BOOL;
+            default:
+                throw new Unsupported();
+        }
+    }
+
+    // The kind an expression would produce, without emitting code for it
+    private Kind staticKind(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) expr).value;
+            if (value instanceof Double) return Kind.NUMBER;
+            if (value instanceof Boolean) return Kind.BOOL;
+            if (value instanceof String) return Kind.STRING;
+            throw new Unsupported();
+        }
+        if (expr instanceof Expr.Grouping) return staticKind(((Expr.Grouping) expr).expression);
+        if (expr instanceof Expr.Variable) return kindOf(((Expr.Variable) expr).declaration);
+        if (expr instanceof Expr.Assignment) return kindOf(((Expr.Assignment) expr).declaration);
+        if (expr instanceof Expr.Logical) return Kind.BOOL;
+        if (expr instanceof Expr.Unary) {
+            return ((Expr.Unary) expr).operator.type == TokenType.MINUS ? Kind.NUMBER : Kind.BOOL;
+        }
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case PLUS:
+                    return staticKind(binary.left) == Kind.STRING || staticKind(binary.right) == Kind.STRING
+                            ? Kind.STRING : Kind.NUMBER;
+                case MINUS:
+                case STAR:
+                case SLASH:
+                case DIV:
+                    return Kind.NUMBER;
+                default:
+                    return Kind.BOOL;
+            }
+        }
+        throw new Unsupported();
+    }
+
+    private void toText(Kind kind) {
+        switch (kind) {
+            case NUMBER:
+                mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(JitRuntime.class), "stringify", "(D)Ljava/lang/String;", false);
+                break;
+            case BOOL:
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/String", "valueOf", "(Z)Ljava/lang/String;", false);
+                break;
+            case STRING:
+                break;
+        }
+    }
+
+    private void pushCondition(int jumpIfFalse) {
+        Label isFalse = new Label();
+        Label end = new Label();
+        mv.visitJumpInsn(jumpIfFalse, isFalse);
+        mv.visitInsn(ICONST_1);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(isFalse);
+        mv.visitInsn(ICONST_0);
+        mv.visitLabel(end);
+    }
+
+    private void load(Kind kind, int index) {
+        mv.visitVarInsn(kind == Kind.NUMBER ? DLOAD : kind == Kind.BOOL ? ILOAD : ALOAD, index);
+    }
+
+    private void store(Kind kind, int index) {
+        mv.visitVarInsn(kind == Kind.NUMBER ? DSTORE : kind == Kind.BOOL ? ISTORE : ASTORE, index);
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private static void expect(Kind actual, Kind expected) {
+        if (actual != expected) throw new Unsupported();
+    }
+}
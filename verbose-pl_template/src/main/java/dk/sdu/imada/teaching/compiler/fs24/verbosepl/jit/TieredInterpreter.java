@@ -0,0 +1,73 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.jit;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+
+import java.io.PrintStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Tier 0 is the plain tree-walking Interpreter. Every Stmt.While counts its iterations; once a
+ * loop crosses the threshold it is handed to the LoopCompiler and, if that succeeds, the rest
+ * of the loop (and every later execution of it) runs as JVM bytecode that C2 can optimize.
+ */
+public class TieredInterpreter extends Interpreter {
+    public static final int DEFAULT_THRESHOLD = 1000;
+    // Give up on a loop whose entry guards keep failing
+    private static final int MAX_GUARD_FAILURES = 10;
+
+    private final int threshold;
+    private final Map<Stmt.While, LoopProfile> profiles = new IdentityHashMap<>();
+
+    public TieredInterpreter() {
+        this(System.out, DEFAULT_THRESHOLD);
+    }
+
+    public TieredInterpreter(PrintStream out, int threshold) {
+        super(out);
+        this.threshold = threshold;
+    }
+
+    private static class LoopProfile {
+        int iterations = 0;
+        int guardFailures = 0;
+        boolean uncompilable = false;
+        CompiledLoop compiled;
+    }
+
+    @Override
+    public Object visitWhileStmt(Stmt.While stmt) {
+        LoopProfile profile = profiles.computeIfAbsent(stmt, k -> new LoopProfile());
+
+        if (profile.compiled != null && runCompiled(profile)) {
+            return null;
+        }
+
+        while (evaluateCondition(stmt.condition)) {
+            execute(stmt.body);
+
+            if (++profile.iterations >= threshold && profile.compiled == null && !profile.uncompilable) {
+                profile.compiled = LoopCompiler.compile(stmt);
+                profile.uncompilable = profile.compiled == null;
+            }
+            // On-stack replacement: the loop state lives in the environment, so the compiled
+            // code can pick up with the next iteration
+            if (profile.compiled != null && runCompiled(profile)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private boolean runCompiled(LoopProfile profile) {
+        if (profile.compiled.run(environment, out)) {
+            return true;
+        }
+        if (++profile.guardFailures >= MAX_GUARD_FAILURES) {
+            profile.compiled = null;
+            profile.uncompilable = true;
+        }
+        return false;
+    }
+}
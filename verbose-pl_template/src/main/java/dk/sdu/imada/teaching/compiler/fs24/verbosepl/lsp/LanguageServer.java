@@ -0,0 +1,381 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.lsp;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostic;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostics;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.IncrementalDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Language Server Protocol over a pair of streams (stdin/stdout for `VerbosePL lsp`).
+ *
+ * Every open document keeps its text and its last analysis (an IncrementalDocument) in memory.
+ * Changes are applied to the text right away and queued as edits. Analysis runs on a single
+ * background thread once a document has been quiet for the debounce delay. Each change cancels
+ * the analysis that was still waiting. One that already started runs to the end, since later
+ * edits build on its result, but it is only published if no change came in meanwhile.
+ * Analysis replays the queued edits on the previous IncrementalDocument, so only the edited
+ * statements are scanned and parsed again.
+ */
+public class LanguageServer {
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 150;
+
+    // LSP TextDocumentSyncKind.Incremental
+    private static final int SYNC_INCREMENTAL = 2;
+    private static final int SEVERITY_ERROR = 1;
+    private static final int SEVERITY_WARNING = 2;
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final long debounceMillis;
+    private final ScheduledExecutorService analyzer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vpl-analysis");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, OpenDocument> documents = new ConcurrentHashMap<>();
+    private boolean shutdownRequested = false;
+
+    private static final class TextEdit {
+        final int offset;
+        final int removed;
+        final String inserted;
+
+        TextEdit(int offset, int removed, String inserted) {
+            this.offset = offset;
+            this.removed = removed;
+            this.inserted = inserted;
+        }
+    }
+
+    // Guarded by its own monitor; the analysis thread and the reader thread both touch it
+    private static final class OpenDocument {
+        final String uri;
+        String text;
+        int version;
+        // Edits made since analyzed was computed; null when the next analysis starts over
+        List<TextEdit> pending = null;
+        IncrementalDocument analyzed;
+        ScheduledFuture<?> scheduled;
+        boolean closed = false;
+
+        OpenDocument(String uri, String text, int version) {
+            this.uri = uri;
+            this.text = text;
+            this.version = version;
+        }
+    }
+
+    public LanguageServer(InputStream in, OutputStream out) {
+        this(in, out, DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    public LanguageServer(InputStream in, OutputStream out, long debounceMillis) {
+        this.in = in;
+        this.out = out;
+        this.debounceMillis = debounceMillis;
+    }
+
+    /** Serves requests until the client sends exit or closes the input. Returns the exit code. */
+    public int run() throws IOException {
+        try {
+            while (true) {
+                String body;
+                Object parsed;
+                try {
+                    body = readMessage();
+                    if (body == null) return 1;
+                    parsed = Json.parse(body);
+                } catch (IllegalArgumentException e) {
+                    // JSON-RPC parse error, for the headers as well as the body
+                    sendError(null, -32700, "Parse error: " + e.getMessage());
+                    continue;
+                }
+                if (!(parsed instanceof Map)) {
+                    sendError(null, -32600, "Invalid Request: expected a JSON object.");
+                    continue;
+                }
+                Map<?, ?> message = (Map<?, ?>) parsed;
+                Object id = message.get("id");
+                try {
+                    String method = (String) message.get("method");
+                    if ("exit".equals(method)) return shutdownRequested ? 0 : 1;
+                    handle(method, id, (Map<?, ?>) message.get("params"));
+                } catch (NullPointerException | ClassCastException | IllegalArgumentException e) {
+                    // A field is missing or has the wrong type; notifications get no reply
+                    if (id != null) sendError(id, -32602, "Invalid params: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    if (id != null) sendError(id, -32603, "Internal error: " + e);
+                }
+            }
+        } finally {
+            analyzer.shutdownNow();
+        }
+    }
+
+    private void handle(String method, Object id, Map<?, ?> params) throws IOException {
+        if (method == null) return;  // a response to something we never ask
+        switch (method) {
+            case "initialize": {
+                Map<String, Object> capabilities = new LinkedHashMap<>();
+                capabilities.put("textDocumentSync", SYNC_INCREMENTAL);
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("capabilities", capabilities);
+                result.put("serverInfo", Map.of("name", "verbose-pl"));
+                sendResult(id, result);
+                break;
+            }
+            case "shutdown":
+                shutdownRequested = true;
+                sendResult(id, null);
+                break;
+            case "textDocument/didOpen": {
+                Map<?, ?> textDocument = (Map<?, ?>) params.get("textDocument");
+                String uri = (String) textDocument.get("uri");
+                String text = (String) textDocument.get("text");
+                if (uri == null || text == null) throw new IllegalArgumentException("didOpen needs a uri and a text.");
+                OpenDocument document = new OpenDocument(uri, text, intValue(textDocument.get("version")));
+                documents.put(uri, document);
+                schedule(document);
+                break;
+            }
+            case "textDocument/didChange": {
+                Map<?, ?> textDocument = (Map<?, ?>) params.get("textDocument");
+                OpenDocument document = documents.get((String) textDocument.get("uri"));
+                if (document == null) break;
+                synchronized (document) {
+                    for (Object change : (List<?>) params.get("contentChanges")) {
+                        apply(document, (Map<?, ?>) change);
+                    }
+                    document.version = intValue(textDocument.get("version"));
+                }
+                schedule(document);
+                break;
+            }
+            case "textDocument/didClose": {
+                Map<?, ?> textDocument = (Map<?, ?>) params.get("textDocument");
+                OpenDocument document = documents.remove((String) textDocument.get("uri"));
+                if (document == null) break;
+                synchronized (document) {
+                    document.closed = true;
+                    if (document.scheduled != null) document.scheduled.cancel(false);
+                }
+                publish(document.uri, null, List.of());
+                break;
+            }
+            default:
+                // Unknown notifications are ignored; unknown requests get "method not found"
+                if (id != null) sendError(id, -32601, "Method not found: " + method);
+        }
+    }
+
+    // Applies one contentChanges entry to the text, and queues it for the next analysis
+    private void apply(OpenDocument document, Map<?, ?> change) {
+        String inserted = (String) change.get("text");
+        if (inserted == null) throw new IllegalArgumentException("A content change needs a text.");
+        Map<?, ?> range = (Map<?, ?>) change.get("range");
+        if (range == null) {
+            document.text = inserted;
+            document.pending = null;
+            return;
+        }
+        int start = offsetOf(document.text, (Map<?, ?>) range.get("start"));
+        int end = offsetOf(document.text, (Map<?, ?>) range.get("end"));
+        document.text = document.text.substring(0, start) + inserted + document.text.substring(end);
+        if (document.pending != null) document.pending.add(new TextEdit(start, end - start, inserted));
+    }
+
+    private void schedule(OpenDocument document) {
+        synchronized (document) {
+            if (document.scheduled != null) document.scheduled.cancel(false);
+            document.scheduled = analyzer.schedule(() -> analyze(document), debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void analyze(OpenDocument document) {
+        IncrementalDocument base;
+        List<TextEdit> edits;
+        String text;
+        int version;
+        synchronized (document) {
+            if (document.closed) return;
+            base = document.analyzed;
+            edits = document.pending;
+            text = document.text;
+            version = document.version;
+            document.pending = new ArrayList<>();
+        }
+
+        IncrementalDocument analyzed;
+        if (base == null || edits == null) {
+            analyzed = IncrementalDocument.parse(text);
+        } else {
+            analyzed = base;
+            for (TextEdit edit : edits) {
+                analyzed = analyzed.edit(edit.offset, edit.removed, edit.inserted);
+            }
+        }
+
+        synchronized (document) {
+            if (document.closed) return;
+            // Later edits are queued relative to this analysis, so keep it even if it is stale
+            document.analyzed = analyzed;
+            if (document.version != version) return;
+        }
+        try {
+            publish(document.uri, version, analyzed.diagnostics(), text);
+        } catch (IOException e) {
+            // The client has gone away; the reader thread will notice too
+        }
+    }
+
+    private void publish(String uri, Integer version, List<Diagnostic> diagnostics) throws IOException {
+        publish(uri, version, diagnostics, "");
+    }
+
+    private void publish(String uri, Integer version, List<Diagnostic> diagnostics, String text) throws IOException {
+        String[] lines = text.split("\n", -1);
+        List<Object> items = new ArrayList<>();
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.level == Diagnostics.Level.TRACE) continue;
+            int line = Math.max(0, Math.min(diagnostic.line - 1, lines.length - 1));
+            String lineText = lines.length == 0 ? "" : lines[line];
+            // Underline the offending token when it can be found on its line, otherwise the line
+            int startCharacter = diagnostic.token == null || diagnostic.token.isEmpty() ? -1 : lineText.indexOf(diagnostic.token);
+            int endCharacter = startCharacter < 0 ? lineText.length() : startCharacter + diagnostic.token.length();
+            if (startCharacter < 0) startCharacter = 0;
+
+            Map<String, Object> range = new LinkedHashMap<>();
+            range.put("start", position(line, startCharacter));
+            range.put("end", position(line, endCharacter));
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("range", range);
+            item.put("severity", diagnostic.level == Diagnostics.Level.ERROR ? SEVERITY_ERROR : SEVERITY_WARNING);
+            item.put("source", "verbose-pl");
+            item.put("message", diagnostic.message);
+            items.add(item);
+        }
+
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("uri", uri);
+        if (version != null) params.put("version", version);
+        params.put("diagnostics", items);
+        Map<String, Object> notification = new LinkedHashMap<>();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", "textDocument/publishDiagnostics");
+        notification.put("params", params);
+        send(notification);
+    }
+
+    private static Map<String, Object> position(int line, int character) {
+        Map<String, Object> position = new LinkedHashMap<>();
+        position.put("line", line);
+        position.put("character", character);
+        return position;
+    }
+
+    // LSP positions count UTF-16 code units, which is what String indices are
+    private static int offsetOf(String text, Map<?, ?> position) {
+        int line = intValue(position.get("line"));
+        int character = intValue(position.get("character"));
+        int offset = 0;
+        for (int i = 0; i < line; i++) {
+            int newline = text.indexOf('\n', offset);
+            if (newline < 0) return text.length();
+            offset = newline + 1;
+        }
+        int lineEnd = text.indexOf('\n', offset);
+        if (lineEnd < 0) lineEnd = text.length();
+        return Math.min(offset + character, lineEnd);
+    }
+
+    private static int intValue(Object number) {
+        return number == null ? 0 : ((Number) number).intValue();
+    }
+
+    private void sendResult(Object id, Object result) throws IOException {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("result", result);
+        send(response);
+    }
+
+    private void sendError(Object id, int code, String message) throws IOException {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", code);
+        error.put("message", message);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("error", error);
+        send(response);
+    }
+
+    private void send(Object message) throws IOException {
+        byte[] body = Json.write(message).getBytes(StandardCharsets.UTF_8);
+        byte[] header = ("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        synchronized (out) {
+            out.write(header);
+            out.write(body);
+            out.flush();
+        }
+    }
+
+    // Reads one Content-Length framed message body, or returns null at end of input. Headers
+    // without a usable length throw IllegalArgumentException, and reading can go on from there.
+    private String readMessage() throws IOException {
+        int length = -1;
+        String invalid = null;
+        while (true) {
+            String header = readHeaderLine();
+            if (header == null) return null;
+            if (header.isEmpty()) break;
+            // The name is matched at the end of the line: a body whose length was never given
+            // runs into the next message's header line, and is skipped along with it
+            int colon = header.lastIndexOf(':');
+            if (colon >= CONTENT_LENGTH.length()
+                    && header.regionMatches(true, colon - CONTENT_LENGTH.length(), CONTENT_LENGTH, 0, CONTENT_LENGTH.length())) {
+                String value = header.substring(colon + 1).trim();
+                try {
+                    length = Integer.parseInt(value);
+                    invalid = length < 0 ? value : null;
+                } catch (NumberFormatException e) {
+                    invalid = value;
+                }
+            }
+        }
+        if (invalid != null) throw new IllegalArgumentException("Invalid Content-Length: " + invalid);
+        if (length < 0) throw new IllegalArgumentException("Message without Content-Length header.");
+
+        byte[] body = in.readNBytes(length);
+        if (body.length < length) return null;
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private String readHeaderLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            int b = in.read();
+            if (b < 0) return line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII);
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+}
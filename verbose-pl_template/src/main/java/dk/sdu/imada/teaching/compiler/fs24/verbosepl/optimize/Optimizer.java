@@ -0,0 +1,303 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.optimize;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTVisitor;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Values.*;
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType.*;
+
+/**
+ * Rewrites a resolved program into an equivalent, cheaper one:
+ *  - Binary, Unary and Logical expressions over literals are folded, unless evaluating them
+ *    would be a runtime error, which has to stay in place;
+ *  - Grouping wrappers are dropped;
+ *  - an If with a constant condition is replaced by the branch it takes, a while (false) loop
+ *    and an expression statement without effects are removed;
+ *  - a variable whose initializer folds to a literal and that is never assigned is replaced by
+ *    that literal wherever it is read.
+ *
+ * Visitor methods return the replacement node, or null for a statement that disappears. Nodes
+ * are rebuilt, so run the Resolver again on the result before executing it.
+ */
+public class Optimizer implements ASTVisitor<Object> {
+
+    // Declarations some Expr.Assignment writes to; their reads can't be replaced
+    private final Set<Stmt.Var> assigned = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Literal value of every propagatable declaration seen so far
+    private final Map<Stmt.Var, Expr.Literal> constants = new IdentityHashMap<>();
+
+    public List<Stmt> optimize(List<Stmt> statements) {
+        new AssignmentFinder().scan(statements);
+        return statements(statements);
+    }
+
+    private List<Stmt> statements(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            Stmt optimized = optimize(statement);
+            if (optimized != null) result.add(optimized);
+        }
+        return result;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return (Stmt) stmt.accept(this);
+    }
+
+    // For places that need some statement, like a branch or a loop body
+    private Stmt optimizeOrEmpty(Stmt stmt) {
+        Stmt optimized = optimize(stmt);
+        return optimized != null ? optimized : new Stmt.Block(new ArrayList<>());
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr == null ? null : (Expr) expr.accept(this);
+    }
+
+    private static boolean isLiteral(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    @Override
+    public Object visitBlockStmt(Stmt.Block stmt) {
+        return new Stmt.Block(statements(stmt.statements));
+    }
+
+    @Override
+    public Object visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        // Evaluating a literal does nothing
+        if (isLiteral(expression)) return null;
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Object visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition)) {
+            if (isTruthy(((Expr.Literal) condition).value)) return optimize(stmt.thenBranch);
+            return stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+        }
+        Stmt elseBranch = stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+        return new Stmt.If(condition, optimizeOrEmpty(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public Object visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Object visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = optimize(stmt.initializer);
+        Stmt.Var var = new Stmt.Var(stmt.name, stmt.type, initializer);
+        // Keyed by the original declaration, which is what the resolved reads point at
+        if (isLiteral(initializer) && !assigned.contains(stmt)) {
+            constants.put(stmt, (Expr.Literal) initializer);
+        }
+        return var;
+    }
+
+    @Override
+    public Object visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition) && !isTruthy(((Expr.Literal) condition).value)) return null;
+        return new Stmt.While(condition, optimizeOrEmpty(stmt.body));
+    }
+
+    @Override
+    public Object visitReturnStmt(Stmt.Return stmt) {
+        return new Stmt.Return(stmt.keyword, optimize(stmt.value));
+    }
+
+    @Override
+    public Object visitVariableExpr(Expr.Variable expr) {
+        Expr.Literal constant = expr.declaration != null ? constants.get(expr.declaration) : null;
+        return constant != null ? new Expr.Literal(constant.value) : new Expr.Variable(expr.name);
+    }
+
+    @Override
+    public Object visitAssignmentExpr(Expr.Assignment expr) {
+        return new Expr.Assignment(expr.name, optimize(expr.value));
+    }
+
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Object visitGroupingExpr(Expr.Grouping expr) {
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Object visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (!isLiteral(left)) return new Expr.Logical(left, expr.operator, right);
+
+        // Same short circuit as the Interpreter: the result is an operand, not a boolean
+        boolean truthy = isTruthy(((Expr.Literal) left).value);
+        if (expr.operator.type == OR) return truthy ? left : right;
+        return truthy ? right : left;
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        if (isLiteral(right)) {
+            Object value = ((Expr.Literal) right).value;
+            switch (expr.operator.type) {
+                case MINUS:
+                    if (value instanceof Double) return new Expr.Literal(-(double) value);
+                    break;
+                case BANG:
+                case NOT:
+                    return new Expr.Literal(!isTruthy(value));
+            }
+        }
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (isLiteral(left) && isLiteral(right)) {
+            Object folded = fold(expr, ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+            if (folded != null) return new Expr.Literal(folded);
+        }
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    // The value the Interpreter would compute, or null where it would raise a runtime error
+    private static Object fold(Expr.Binary expr, Object left, Object right) {
+        boolean numbers = left instanceof Double && right instanceof Double;
+        switch (expr.operator.type) {
+            case PLUS:
+                if (numbers) return (double) left + (double) right;
+                if (left instanceof String || right instanceof String) return stringify(left) + stringify(right);
+                return null;
+            case MINUS: return numbers ? (Object) ((double) left - (double) right) : null;
+            case STAR: return numbers ? (Object) ((double) left * (double) right) : null;
+            case SLASH:
+            case DIV: return numbers ? (Object) ((double) left / (double) right) : null;
+            case GREATER: return numbers ? (Object) ((double) left > (double) right) : null;
+            case GREATER_EQUAL: return numbers ? (Object) ((double) left >= (double) right) : null;
+            case LESS: return numbers ? (Object) ((double) left < (double) right) : null;
+            case LESS_EQUAL: return numbers ? (Object) ((double) left <= (double) right) : null;
+            case EQUAL_EQUAL:
+            case EQUALS: return isEqual(left, right);
+            case BANG_EQUAL: return !isEqual(left, right);
+            default: return null;
+        }
+    }
+
+    // Collects every declaration that is assigned to anywhere in the program
+    private final class AssignmentFinder implements ASTVisitor<Void> {
+        void scan(List<Stmt> statements) {
+            for (Stmt statement : statements) statement.accept(this);
+        }
+
+        private void scan(Expr expr) {
+            if (expr != null) expr.accept(this);
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            scan(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            scan(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            scan(stmt.condition);
+            stmt.thenBranch.accept(this);
+            if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            scan(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            scan(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            scan(stmt.condition);
+            stmt.body.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            scan(stmt.value);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignmentExpr(Expr.Assignment expr) {
+            if (expr.declaration != null) assigned.add(expr.declaration);
+            scan(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            scan(expr.left);
+            scan(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            scan(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            scan(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            scan(expr.left);
+            scan(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            return null;
+        }
+    }
+}
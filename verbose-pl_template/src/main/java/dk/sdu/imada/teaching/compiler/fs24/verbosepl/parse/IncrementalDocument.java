@@ -0,0 +1,193 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.CollectingDiagnostics;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostic;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostics;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An immutable snapshot of a source text with its tokens, top-level statements and errors.
+ * edit() derives the snapshot for an edited text. It scans only around the edit and parses
+ * only the top-level statements whose tokens changed. Every other statement is carried over
+ * as the same Stmt object.
+ *
+ * Statements behind the edit are carried over even if the edit added or removed lines. Their
+ * spans then record how many lines the text moved since they were parsed, and statements() and
+ * diagnostics() hand out copies moved by that much, so every Token reports its current line.
+ */
+public class IncrementalDocument {
+
+    // A top-level statement and the tokens it was parsed from. Tokens of statements that failed
+    // to parse belong to the next span; trailing ones to a final span without a statement.
+    // stmt and errors carry the lines of the snapshot they were made in, lineDelta lines above
+    // where the text is now.
+    private static final class Span {
+        final int start;
+        final int end;
+        final Stmt stmt;
+        final List<Diagnostic> errors;
+        final int lineDelta;
+        // stmt moved by lineDelta, made on first use
+        private Stmt shiftedStmt;
+
+        Span(int start, int end, Stmt stmt, List<Diagnostic> errors, int lineDelta) {
+            this.start = start;
+            this.end = end;
+            this.stmt = stmt;
+            this.errors = errors;
+            this.lineDelta = lineDelta;
+        }
+
+        Span shifted(int delta, int lines) {
+            return new Span(start + delta, end + delta, stmt, errors, lineDelta + lines);
+        }
+
+        Stmt stmt() {
+            if (lineDelta == 0 || stmt == null) return stmt;
+            if (shiftedStmt == null) shiftedStmt = new LineShifter(lineDelta).shift(stmt);
+            return shiftedStmt;
+        }
+
+        List<Diagnostic> errors() {
+            if (lineDelta == 0 || errors.isEmpty()) return errors;
+            List<Diagnostic> shifted = new ArrayList<>(errors.size());
+            for (Diagnostic error : errors) {
+                shifted.add(new Diagnostic(error.level, error.line + lineDelta, error.token, error.message));
+            }
+            return shifted;
+        }
+    }
+
+    private final String source;
+    private final TokenBuffer tokens;
+    private final List<Span> spans;
+    private final int parsedStatements;
+    private List<Stmt> statements;
+
+    private IncrementalDocument(String source, TokenBuffer tokens, List<Span> spans, int parsedStatements) {
+        this.source = source;
+        this.tokens = tokens;
+        this.spans = spans;
+        this.parsedStatements = parsedStatements;
+    }
+
+    public static IncrementalDocument parse(String source) {
+        TokenBuffer tokens = new Scanner(source).scanTokenBuffer();
+        List<Span> spans = new ArrayList<>();
+        int parsed = parseSpans(tokens, 0, spans, Collections.emptyList(), 0, 0, 0);
+        return new IncrementalDocument(source, tokens, spans, parsed);
+    }
+
+    /** The document after replacing removedLength characters at offset with insertedText. */
+    public IncrementalDocument edit(int offset, int removedLength, String insertedText) {
+        if (offset < 0 || removedLength < 0 || offset + removedLength > source.length()) {
+            throw new IndexOutOfBoundsException("Edit [" + offset + ", " + (offset + removedLength)
+                    + ") outside of a document of length " + source.length() + ".");
+        }
+        String edited = source.substring(0, offset) + insertedText + source.substring(offset + removedLength);
+        TokenBuffer.Edit relexed = tokens.edit(edited, offset, removedLength, insertedText.length());
+
+        // A statement is untouched if every token it consumed or peeked at precedes the change
+        List<Span> result = new ArrayList<>();
+        int next = 0;
+        while (next < spans.size() && spans.get(next).end < relexed.firstChanged) {
+            result.add(spans.get(next++));
+        }
+        int from = next == 0 ? 0 : spans.get(next - 1).end;
+
+        int parsed = parseSpans(relexed.tokens, from, result, spans.subList(next, spans.size()),
+                relexed.newResume - relexed.oldResume, relexed.lineDelta, relexed.oldResume);
+        return new IncrementalDocument(edited, relexed.tokens, result, parsed);
+    }
+
+    /**
+     * Parses top-level statements from token index from and appends their spans to out. As
+     * soon as parsing reaches, at a statement boundary, the shifted start of a reusable span
+     * whose tokens all lie at or after firstReusable, that span and all following ones are
+     * appended instead, moved by shift tokens and lineShift lines. Returns the number of
+     * statements parsed.
+     */
+    private static int parseSpans(TokenBuffer tokens, int from, List<Span> out,
+                                  List<Span> reusable, int shift, int lineShift, int firstReusable) {
+        Diagnostics diagnostics = new CollectingDiagnostics();
+        Parser parser = new Parser(tokens.cursor(from), diagnostics);
+        Iterator<Stmt> statements = parser.iterator();
+        int spanStart = from;
+        int candidate = 0;
+        int parsed = 0;
+        while (true) {
+            int errorsBefore = diagnostics.records().size();
+            boolean more = statements.hasNext();
+            Stmt stmt = more ? statements.next() : null;
+            int end = from + parser.tokensConsumed();
+            List<Diagnostic> errors = List.copyOf(diagnostics.records().subList(errorsBefore, diagnostics.records().size()));
+            if (more || end > spanStart || !errors.isEmpty()) {
+                out.add(new Span(spanStart, end, stmt, errors, 0));
+                parsed++;
+            }
+            if (!more) return parsed;
+            spanStart = end;
+
+            while (candidate < reusable.size() && reusable.get(candidate).start + shift < end) candidate++;
+            if (candidate < reusable.size() && reusable.get(candidate).start >= firstReusable
+                    && reusable.get(candidate).start + shift == end) {
+                for (Span span : reusable.subList(candidate, reusable.size())) {
+                    out.add(span.shifted(shift, lineShift));
+                }
+                return parsed;
+            }
+        }
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    /** The top-level statements that parsed, in source order. */
+    public List<Stmt> statements() {
+        if (statements == null) {
+            List<Stmt> result = new ArrayList<>(spans.size());
+            for (Span span : spans) {
+                if (span.stmt != null) result.add(span.stmt());
+            }
+            statements = Collections.unmodifiableList(result);
+        }
+        return statements;
+    }
+
+    /** Scanner errors followed by parser errors, each in source order. */
+    public List<Diagnostic> diagnostics() {
+        List<Diagnostic> result = new ArrayList<>();
+        for (int i = 0; i < tokens.errorCount(); i++) {
+            result.add(new Diagnostic(Diagnostics.Level.ERROR, tokens.errorLine(i), null, tokens.errorMessage(i)));
+        }
+        for (Span span : spans) {
+            result.addAll(span.errors());
+        }
+        return result;
+    }
+
+    public boolean hasErrors() {
+        if (tokens.errorCount() > 0) return true;
+        for (Span span : spans) {
+            if (!span.errors.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    // How many top-level statements (or failed attempts) building this snapshot had to parse
+    public int parsedStatements() {
+        return parsedStatements;
+    }
+}
@@ -0,0 +1,107 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTVisitor;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies a statement as the parser would have built it lines further down: every Token in it is
+ * replaced by one whose line is moved by the given amount. The copy is unresolved, like a
+ * freshly parsed statement.
+ */
+final class LineShifter implements ASTVisitor<Object> {
+    private final int lines;
+
+    LineShifter(int lines) {
+        this.lines = lines;
+    }
+
+    Stmt shift(Stmt stmt) {
+        return stmt == null ? null : (Stmt) stmt.accept(this);
+    }
+
+    private Expr shift(Expr expr) {
+        return expr == null ? null : (Expr) expr.accept(this);
+    }
+
+    private Token shift(Token token) {
+        if (token == null) return null;
+        return new Token(token.type, token.lexeme, token.literal, token.line + lines, token.symbol);
+    }
+
+    @Override
+    public Object visitBlockStmt(Stmt.Block stmt) {
+        List<Stmt> statements = new ArrayList<>(stmt.statements.size());
+        for (Stmt statement : stmt.statements) statements.add(shift(statement));
+        return new Stmt.Block(statements);
+    }
+
+    @Override
+    public Object visitExpressionStmt(Stmt.Expression stmt) {
+        return new Stmt.Expression(shift(stmt.expression));
+    }
+
+    @Override
+    public Object visitIfStmt(Stmt.If stmt) {
+        return new Stmt.If(shift(stmt.condition), shift(stmt.thenBranch), shift(stmt.elseBranch));
+    }
+
+    @Override
+    public Object visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(shift(stmt.expression));
+    }
+
+    @Override
+    public Object visitVarStmt(Stmt.Var stmt) {
+        return new Stmt.Var(shift(stmt.name), shift(stmt.type), shift(stmt.initializer));
+    }
+
+    @Override
+    public Object visitWhileStmt(Stmt.While stmt) {
+        return new Stmt.While(shift(stmt.condition), shift(stmt.body));
+    }
+
+    @Override
+    public Object visitReturnStmt(Stmt.Return stmt) {
+        return new Stmt.Return(shift(stmt.keyword), shift(stmt.value));
+    }
+
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr) {
+        return new Expr.Binary(shift(expr.left), shift(expr.operator), shift(expr.right));
+    }
+
+    @Override
+    public Object visitGroupingExpr(Expr.Grouping expr) {
+        return new Expr.Grouping(shift(expr.expression));
+    }
+
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+        return new Expr.Literal(expr.value);
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+        return new Expr.Unary(shift(expr.operator), shift(expr.right));
+    }
+
+    @Override
+    public Object visitAssignmentExpr(Expr.Assignment expr) {
+        return new Expr.Assignment(shift(expr.name), shift(expr.value));
+    }
+
+    @Override
+    public Object visitLogicalExpr(Expr.Logical expr) {
+        return new Expr.Logical(shift(expr.left), shift(expr.operator), shift(expr.right));
+    }
+
+    @Override
+    public Object visitVariableExpr(Expr.Variable expr) {
+        return new Expr.Variable(shift(expr.name));
+    }
+}
@@ -0,0 +1,148 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.TreeBuilder;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType.*;
+
+/** Builds the Expr and Stmt object graph the rest of the pipeline works on. */
+final class ObjectTreeBuilder implements TreeBuilder {
+
+    // Finished Expr and Stmt nodes waiting for their parent
+    private Object[] stack = new Object[16];
+    private int top = 0;
+
+    // The top-level statement just built
+    Stmt pop() {
+        return (Stmt) take();
+    }
+
+    @Override
+    public void literal(Token token, int index) {
+        if (token.type == TRUE) {
+            push(new Expr.Literal(true));
+        } else if (token.type == FALSE) {
+            push(new Expr.Literal(false));
+        } else {
+            push(new Expr.Literal(token.literal));
+        }
+    }
+
+    @Override
+    public void variable(Token name, int index) {
+        push(new Expr.Variable(name));
+    }
+
+    @Override
+    public void grouping() {
+        push(new Expr.Grouping(expr()));
+    }
+
+    @Override
+    public void unary(Token operator, int index) {
+        push(new Expr.Unary(operator, expr()));
+    }
+
+    @Override
+    public void binary(Token operator, int index) {
+        Expr right = expr();
+        push(new Expr.Binary(expr(), operator, right));
+    }
+
+    @Override
+    public void logical(Token operator, int index) {
+        Expr right = expr();
+        push(new Expr.Logical(expr(), operator, right));
+    }
+
+    @Override
+    public void assignment() {
+        Expr value = expr();
+        push(new Expr.Assignment(((Expr.Variable) expr()).name, value));
+    }
+
+    @Override
+    public boolean isVariable(int depth) {
+        return stack[top - 1 - depth] instanceof Expr.Variable;
+    }
+
+    @Override
+    public void drop() {
+        take();
+    }
+
+    @Override
+    public void expressionStatement() {
+        push(new Stmt.Expression(expr()));
+    }
+
+    @Override
+    public void printStatement() {
+        push(new Stmt.Print(expr()));
+    }
+
+    @Override
+    public void varStatement(Token name, int nameIndex, Token type, int typeIndex, boolean initialized) {
+        push(new Stmt.Var(name, type, initialized ? expr() : null));
+    }
+
+    @Override
+    public void ifStatement(boolean hasElse) {
+        Stmt elseBranch = hasElse ? stmt() : null;
+        Stmt thenBranch = stmt();
+        push(new Stmt.If(expr(), thenBranch, elseBranch));
+    }
+
+    @Override
+    public void whileStatement() {
+        Stmt body = stmt();
+        push(new Stmt.While(expr(), body));
+    }
+
+    @Override
+    public void block(int count) {
+        List<Stmt> statements = new ArrayList<>(count);
+        for (int i = top - count; i < top; i++) {
+            statements.add((Stmt) stack[i]);
+        }
+        Arrays.fill(stack, top - count, top, null);
+        top -= count;
+        push(new Stmt.Block(statements));
+    }
+
+    @Override
+    public int mark() {
+        return top;
+    }
+
+    @Override
+    public void reset(int position) {
+        Arrays.fill(stack, position, top, null);
+        top = position;
+    }
+
+    private void push(Object node) {
+        if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+        stack[top++] = node;
+    }
+
+    private Object take() {
+        Object node = stack[--top];
+        stack[top] = null;
+        return node;
+    }
+
+    private Expr expr() {
+        return (Expr) take();
+    }
+
+    private Stmt stmt() {
+        return (Stmt) take();
+    }
+}
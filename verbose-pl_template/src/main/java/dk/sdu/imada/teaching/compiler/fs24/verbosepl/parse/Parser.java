@@ -1,87 +1,253 @@
 package dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse;
 
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.CollectingDiagnostics;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostics;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenBuffer;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenSource;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType;
 import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType.*;
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
-import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
-
-public class Parser {
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.TreeBuilder;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat.FlatAst;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat.FlatAstBuilder;
+
+public class Parser implements Iterable<Stmt> {
+
+    // The grammar needs one token of lookahead and one of history; the ring holds a few more
+    private static final int RING_SIZE = 4;
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    // How many parentheses, blocks and nested statements may enclose each other
+    public static final int MAX_NESTING = 256;
+    // How deep an expression tree may be. The passes after parsing recurse once per level
+    public static final int MAX_EXPRESSION_DEPTH = 1024;
+
+    // Binding power of each binary operator by TokenType ordinal; 0 for everything else
+    private static final byte[] PRECEDENCE = new byte[TokenType.values().length];
+
+    static {
+        PRECEDENCE[OR.ordinal()] = 1;
+        PRECEDENCE[AND.ordinal()] = 2;
+        PRECEDENCE[EQUAL_EQUAL.ordinal()] = 3;
+        PRECEDENCE[BANG_EQUAL.ordinal()] = 3;
+        PRECEDENCE[EQUALS.ordinal()] = 3;
+        PRECEDENCE[GREATER.ordinal()] = 4;
+        PRECEDENCE[GREATER_EQUAL.ordinal()] = 4;
+        PRECEDENCE[LESS.ordinal()] = 4;
+        PRECEDENCE[LESS_EQUAL.ordinal()] = 4;
+        PRECEDENCE[PLUS.ordinal()] = 5;
+        PRECEDENCE[MINUS.ordinal()] = 5;
+        PRECEDENCE[STAR.ordinal()] = 6;
+        PRECEDENCE[SLASH.ordinal()] = 6;
+        PRECEDENCE[DIV.ordinal()] = 6;
+    }
 
-    private final List<Token> tokens;
+    private final TokenSource source;
+    private final Diagnostics diagnostics;
+    private final Token[] ring = new Token[RING_SIZE];
+    // Number of tokens consumed so far, and number pulled from the source
     private int current = 0;
+    private int fetched = 0;
+    private boolean hadError = false;
+    // Set when the tokens come from a TokenBuffer, which parseFlat() needs
+    private final TokenBuffer tokens;
+
+    // Receives the nodes as they are parsed: objects, unless parseFlat() is running
+    private final ObjectTreeBuilder objects = new ObjectTreeBuilder();
+    private TreeBuilder builder = objects;
+
+    // Operators of binary(), unary() and assignment() waiting to be built, shared by nested
+    // calls, with the index of each in the token stream
+    private Token[] operators = new Token[16];
+    private int[] operatorIndices = new int[16];
+    private int operatorTop = 0;
+    // Parentheses and statements currently open around the parse position
+    private int nesting = 0;
+    // Tree depth of each operand on the builder's stack, while an expression is parsed
+    private int[] depths = new int[16];
+    private int depthTop = 0;
 
     public Parser(List<Token> tokens) {
+        this(tokens, new CollectingDiagnostics());
+    }
+
+    public Parser(List<Token> tokens, Diagnostics diagnostics) {
+        Iterator<Token> iterator = tokens.iterator();
+        this.source = () -> iterator.hasNext() ? iterator.next() : new Token(EOF, "", null, 0);
+        this.diagnostics = diagnostics;
+        this.tokens = null;
+    }
+
+    public Parser(TokenSource source) {
+        this(source, new CollectingDiagnostics());
+    }
+
+    public Parser(TokenSource source, Diagnostics diagnostics) {
+        this(source, diagnostics, null);
+    }
+
+    private Parser(TokenSource source, Diagnostics diagnostics, TokenBuffer tokens) {
+        this.source = source;
+        this.diagnostics = diagnostics;
         this.tokens = tokens;
     }
 
+    // Only the tokens in the lookahead ring and those kept by AST nodes are ever materialized
+    public Parser(TokenBuffer tokens) {
+        this(tokens, new CollectingDiagnostics());
+    }
+
+    public Parser(TokenBuffer tokens, Diagnostics diagnostics) {
+        this(tokens.cursor(), diagnostics, tokens);
+    }
+
     public List<Stmt> parse() {
-        List<Stmt> statements = new LinkedList<>();
-        while (!isAtEnd()) {
-            Stmt stmt = declaration();
-            if (stmt != null) {
-                statements.add(stmt);
-            }
+        List<Stmt> statements = new ArrayList<>();
+        for (Stmt stmt : this) {
+            statements.add(stmt);
         }
         return statements;
     }
 
-    private Expr expression() {
-        return assignment();
+    /**
+     * Parses the whole program into a FlatAst, without creating a node object. Only a parser
+     * over a TokenBuffer can do this, since the flat nodes refer to their tokens by index.
+     */
+    public FlatAst parseFlat() {
+        if (tokens == null) throw new IllegalStateException("A flat AST can only be built from a TokenBuffer.");
+
+        FlatAstBuilder flat = new FlatAstBuilder(tokens);
+        builder = flat;
+        try {
+            while (!isAtEnd()) {
+                if (declaration()) flat.addStatement();
+            }
+        } finally {
+            builder = objects;
+        }
+        return flat.build();
+    }
+
+    /**
+     * Yields the top-level statements one at a time, as soon as each has been parsed.
+     * Statements that failed to parse are skipped, just like in parse().
+     */
+    @Override
+    public Iterator<Stmt> iterator() {
+        return new Iterator<>() {
+            private Stmt next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !isAtEnd()) {
+                    if (declaration()) next = objects.pop();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Stmt next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Stmt stmt = next;
+                next = null;
+                return stmt;
+            }
+        };
+    }
+
+    public Stream<Stmt> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // Returns how deep the expression's tree is
+    private int expression() {
+        assignment();
+        return depths[--depthTop];
     }
 
-    private Stmt declaration() {
+    // Builds one statement, or nothing if it failed to parse
+    private boolean declaration() {
+        int mark = builder.mark();
         try {
-            if (match(VAR)) return varDeclaration();
-            return statement();
+            if (match(VAR)) {
+                varDeclaration();
+            } else {
+                statement();
+            }
+            return true;
         } catch (ParseError error) {
+            // Statements never sit inside expressions, so no binary() is still using the stack
+            Arrays.fill(operators, 0, operatorTop, null);
+            operatorTop = 0;
+            depthTop = 0;
+            builder.reset(mark);
             synchronize();
-            return null;
+            return false;
         }
     }
 
-    private Stmt statement() {
-        if (match(WHILE)) return whileStatement();  // Add this line to handle 'while' loops
-        if (match(IF)) return ifStatement();
-        if (match(PRINT)) return printStatement();
-        if (match(LEFT_BRACE)) return new Stmt.Block(block());
-        return expressionStatement();
+    private void statement() {
+        enterNesting();
+        try {
+            if (match(WHILE)) {
+                whileStatement();  // Add this line to handle 'while' loops
+            } else if (match(IF)) {
+                ifStatement();
+            } else if (match(PRINT)) {
+                printStatement();
+            } else if (match(LEFT_BRACE)) {
+                block();
+            } else {
+                expressionStatement();
+            }
+        } finally {
+            nesting--;
+        }
     }
 
-    private Stmt ifStatement() {
+    private void ifStatement() {
         consume(LEFT_PAREN, "Expect '(' after 'if'.");
-        Expr condition = expression();  // Parse the condition expression
+        expression();  // Parse the condition expression
         consume(RIGHT_PAREN, "Expect ')' after if condition.");  // Ensure the closing parenthesis is consumed
-        Stmt thenBranch = statement();
-        Stmt elseBranch = null;
-        if (match(ELSE)) {
-            elseBranch = statement();  // Parse the 'else' branch if it exists
+        statement();
+        boolean hasElse = match(ELSE);
+        if (hasElse) {
+            statement();  // Parse the 'else' branch if it exists
         }
-        return new Stmt.If(condition, thenBranch, elseBranch);
+        builder.ifStatement(hasElse);
     }
 
-    private Stmt whileStatement() {
+    private void whileStatement() {
         consume(LEFT_PAREN, "Expect '(' after 'while'.");
-        Expr condition = expression();  // Parse the loop condition
+        expression();  // Parse the loop condition
         consume(RIGHT_PAREN, "Expect ')' after condition.");
-        Stmt body = statement();  // Parse the loop body
-        return new Stmt.While(condition, body);
+        statement();  // Parse the loop body
+        builder.whileStatement();
     }
 
-    private Stmt printStatement() {
-        Expr value = expression();
+    private void printStatement() {
+        expression();
         consume(SEMICOLON, "Expect ';' after value.");
-        return new Stmt.Print(value);
+        builder.printStatement();
     }
 
-    private Stmt varDeclaration() {
+    private void varDeclaration() {
         Token name = consume(IDENTIFIER, "Expect variable name.");
-        Token ofType = consume(OF_TYPE, "Expect 'of_type' after variable name.");
+        int nameIndex = current - 1;
+        Token ofType = consume(TYPE_DEF, "Expect 'of_type' after variable name.");
 
         Token type;
         if (match(BOOL_TYPE, NUMBER_TYPE, STRING_TYPE)) {
@@ -89,148 +255,187 @@ public class Parser {
         } else {
             throw error(peek(), "Expect type name (Bool, Number, String) after 'of_type'.");
         }
+        int typeIndex = current - 1;
 
-        Expr initializer = null;
-        if (match(ASSIGN)) {
-            initializer = expression();
+        boolean initialized = match(ASSIGN);
+        if (initialized) {
+            expression();
         }
 
         consume(SEMICOLON, "Expect ';' after variable declaration.");  // Ensure semicolon consumption
 
-        return new Stmt.Var(name, type, initializer);
+        builder.varStatement(name, nameIndex, type, typeIndex, initialized);
     }
 
 
-    private Stmt expressionStatement() {
-        Expr expr = expression();  // Parse the expression
+    private void expressionStatement() {
+        expression();  // Parse the expression
         consume(SEMICOLON, "Expect ';' after expression.");  // Ensure the semicolon is consumed
-        return new Stmt.Expression(expr);
+        builder.expressionStatement();
     }
 
-    private List<Stmt> block() {
-        List<Stmt> statements = new ArrayList<>();
+    private void block() {
+        int count = 0;
         while (!check(RIGHT_BRACE) && !isAtEnd()) {
-            Stmt stmt = declaration();  // Parse each statement in the block
-            if (stmt != null) {
-                statements.add(stmt);
+            if (declaration()) {  // Parse each statement in the block
+                count++;
             }
         }
         consume(RIGHT_BRACE, "Expect '}' after block.");  // Ensure closing brace is consumed
-        return statements;
+        builder.block(count);
     }
-    private Expr assignment() {
-        Expr expr = logicalOr();
-
-        if (match(ASSIGN)) {
-            Token equals = previous();
-            Expr value = assignment();  // Recursively parse the right-hand side of the assignment
+    // Assignment is right-associative and binds loosest: a is b is c assigns c to both.
+    // The targets are built left to right, their 'is' tokens wait on the operator stack, and
+    // the assignments are then built from the right
+    private void assignment() {
+        binary();
+        if (!check(ASSIGN)) return;
+
+        int operatorBase = operatorTop;
+        while (match(ASSIGN)) {
+            pushOperator(previous(), current - 1);
+            binary();
+        }
 
-            if (expr instanceof Expr.Variable) {
-                return new Expr.Assignment(((Expr.Variable) expr).name, value);
+        while (operatorTop > operatorBase) {
+            Token equals = operators[--operatorTop];
+            operators[operatorTop] = null;
+            if (builder.isVariable(1)) {
+                builder.assignment();
+                int value = depths[--depthTop];
+                depthTop--;
+                pushDepth(value + 1, equals);
+            } else {
+                // The target is the result and the value is dropped
+                error(equals, "Invalid assignment target.");
+                builder.drop();
+                depthTop--;
             }
-            error(equals, "Invalid assignment target.");
         }
-
-        return expr;
     }
 
-    private Expr logicalOr() {
-        Expr expr = logicalAnd();
-
-        while (match(TokenType.OR)) {
-            Token operator = previous();
-            Expr right = logicalAnd();
-            expr = new Expr.Logical(expr, operator, right);
+    /**
+     * Every binary operator, from OR up to the multiplicative ones, parsed by operator
+     * precedence without recursing per level: operators wait on a stack (their operands on the
+     * builder's) until an operator that binds no tighter arrives, and are then reduced into
+     * left-associative Binary and Logical nodes. Parenthesized subexpressions reuse the stack
+     * above the part this call is working on.
+     */
+    private void binary() {
+        int operatorBase = operatorTop;
+
+        unary();
+        while (true) {
+            int precedence = PRECEDENCE[peek().type.ordinal()];
+            if (precedence == 0) break;
+
+            Token operator = advance();
+            while (operatorTop > operatorBase && PRECEDENCE[operators[operatorTop - 1].type.ordinal()] >= precedence) {
+                reduce();
+            }
+            pushOperator(operator, current - 1);
+            unary();
         }
-
-        return expr;
-    }
-
-    private Expr logicalAnd() {
-        Expr expr = equality();
-
-        while (match(TokenType.AND)) {
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
+        while (operatorTop > operatorBase) {
+            reduce();
         }
-
-        return expr;
     }
 
-    private Expr equality() {
-        Expr expr = comparison();  // Parse left-hand side of comparison
-
-        while (match(EQUAL_EQUAL, BANG_EQUAL)) {  // Matches '==' or '!='
-            Token operator = previous();
-            Expr right = comparison();  // Parse right-hand side of comparison
-            expr = new Expr.Binary(expr, operator, right);
+    // Replaces the top two operands with the top operator applied to them
+    private void reduce() {
+        Token operator = operators[--operatorTop];
+        operators[operatorTop] = null;
+        int index = operatorIndices[operatorTop];
+        if (operator.type == OR || operator.type == AND) {
+            builder.logical(operator, index);
+        } else {
+            builder.binary(operator, index);
         }
-
-        return expr;
+        int right = depths[--depthTop];
+        int left = depths[--depthTop];
+        pushDepth(Math.max(left, right) + 1, operator);
     }
-    private Expr comparison() {
-        Expr expr = term();
 
-        while (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+    private void pushOperator(Token operator, int index) {
+        if (operatorTop == operators.length) {
+            operators = Arrays.copyOf(operators, operatorTop * 2);
+            operatorIndices = Arrays.copyOf(operatorIndices, operatorTop * 2);
         }
-
-        return expr;
+        operators[operatorTop] = operator;
+        operatorIndices[operatorTop++] = index;
     }
 
-    private Expr term() {
-        Expr expr = factor();
-
-        while (match(TokenType.PLUS, TokenType.MINUS)) {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
+    // Prefix operators are collected first and applied innermost-first once the operand is known
+    private void unary() {
+        int operatorBase = operatorTop;
+        while (check(BANG) || check(MINUS) || check(NOT)) {
+            pushOperator(advance(), current - 1);
         }
 
-        return expr;
+        primary();
+        while (operatorTop > operatorBase) {
+            Token operator = operators[--operatorTop];
+            operators[operatorTop] = null;
+            builder.unary(operator, operatorIndices[operatorTop]);
+            pushDepth(depths[--depthTop] + 1, operator);
+        }
     }
 
-    private Expr factor() {
-        Expr expr = unary();
-
-        while (match(STAR, SLASH)) {  // Handles multiplication and division
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+    private void primary() {
+        switch (peek().type) {
+            case FALSE:
+            case TRUE:
+            case NUMBER:
+            case STRING:
+                builder.literal(advance(), current - 1);
+                pushDepth(1, previous());
+                return;
+            case IDENTIFIER:
+                builder.variable(advance(), current - 1);
+                pushDepth(1, previous());
+                return;
+            case LEFT_PAREN: {
+                advance();
+                enterNesting();
+                try {
+                    int depth = expression();
+                    consume(RIGHT_PAREN, "Expect ')' after expression.");
+                    builder.grouping();
+                    pushDepth(depth + 1, previous());
+                    return;
+                } finally {
+                    nesting--;
+                }
+            }
+            default:
+                throw error(peek(), "Expect expression.");
         }
-
-        return expr;
     }
 
-    private Expr unary() {
-        if (match(BANG, MINUS, NOT)) {  // Add `NOT` here
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
+    // Called when a nested construct is entered; stops runaway nesting with a parse error
+    // before it can exhaust the Java stack. The caller decrements nesting on the way out
+    private void enterNesting() {
+        if (nesting == MAX_NESTING) {
+            throw error(peek(), "Nesting is too deep; at most " + MAX_NESTING + " levels are supported.");
         }
-        return primary();
+        nesting++;
     }
 
-    private Expr primary() {
-        if (match(TokenType.FALSE)) return new Expr.Literal(false);
-        if (match(TokenType.TRUE)) return new Expr.Literal(true);
-        if (match(TokenType.NUMBER)) return new Expr.Literal(previous().literal);
-        if (match(TokenType.STRING)) return new Expr.Literal(previous().literal);
-
-        if (match(TokenType.IDENTIFIER)) {
-            return new Expr.Variable(previous());
+    // Records the depth of the operand just built; stops trees the later passes couldn't walk
+    private void pushDepth(int depth, Token at) {
+        if (depth > MAX_EXPRESSION_DEPTH) {
+            throw error(at, "Expression is too deep; at most " + MAX_EXPRESSION_DEPTH + " levels are supported.");
         }
+        if (depthTop == depths.length) depths = Arrays.copyOf(depths, depthTop * 2);
+        depths[depthTop++] = depth;
+    }
 
-        if (match(TokenType.LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
+    private boolean match(TokenType type) {
+        if (check(type)) {
+            advance();
+            return true;
         }
-
-        throw error(peek(), "Expect expression.");
+        return false;
     }
 
     private boolean match(TokenType... types) {
@@ -246,7 +451,9 @@ public class Parser {
     private Token consume(TokenType type, String message) {
         if (check(type)) {
             Token token = advance();
-            System.out.println("Consumed token: " + token.lexeme);  // Debugging print
+            if (diagnostics.isEnabled(Diagnostics.Level.TRACE)) {
+                diagnostics.report(Diagnostics.Level.TRACE, token.line, token.lexeme, "Consumed token.");
+            }
             return token;
         }
         throw error(peek(), message);
@@ -279,8 +486,22 @@ public class Parser {
         }
     }
 
+    public boolean hadError() {
+        return hadError;
+    }
+
+    // How many tokens the statements parsed so far have used up
+    public int tokensConsumed() {
+        return current;
+    }
+
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
     private void reportError(Token token, String message) {
-        System.err.println("[line " + token.line + "] Error at '" + token.lexeme + "': " + message);
+        hadError = true;
+        diagnostics.report(Diagnostics.Level.ERROR, token.line, token.lexeme, message);
     }
 
     class ParseError extends RuntimeException {}
@@ -300,10 +521,13 @@ public class Parser {
     }
 
     private Token peek() {
-        return tokens.get(current);
+        if (fetched == current) {
+            ring[fetched++ & RING_MASK] = source.nextToken();
+        }
+        return ring[current & RING_MASK];
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return ring[(current - 1) & RING_MASK];
     }
 }
@@ -0,0 +1,72 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Presents UTF-8 encoded bytes to the Scanner as a CharSequence without decoding them first.
+ * Every byte is one char: the language itself is ASCII, and multi-byte UTF-8 sequences only
+ * ever consist of bytes >= 0x80, so they can't be mistaken for a quote, newline or any other
+ * character the Scanner looks for. Text is decoded when a lexeme is turned into a String, and
+ * only ranges that actually contain non-ASCII bytes (inside string literals) go through the
+ * UTF-8 decoder.
+ */
+public class ByteSource implements CharSequence {
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    public ByteSource(ByteBuffer bytes) {
+        this(bytes, 0, bytes.limit());
+    }
+
+    private ByteSource(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** Maps the file read-only; the mapping stays valid after this method returns. */
+    public static ByteSource map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + path);
+            }
+            return new ByteSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteSource(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] copy = new byte[length];
+        bytes.get(offset, copy);
+
+        for (byte b : copy) {
+            if (b < 0) {
+                return new String(copy, StandardCharsets.UTF_8);
+            }
+        }
+        // Pure ASCII: Latin-1 decoding is a plain copy into a compact String
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,103 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType.*;
+
+/**
+ * Keyword recognition straight on the source text. Candidates are narrowed down by length and
+ * first character, then the remaining characters are compared in place, so classifying an
+ * identifier never creates a String.
+ */
+final class Keywords {
+    // Canonical lexeme of each keyword token, so keyword tokens can share one String
+    private static final Map<TokenType, String> SPELLINGS = new EnumMap<>(TokenType.class);
+
+    static {
+        String[] keywords = {
+                "and", "class", "else", "false", "for", "fun", "if", "nil", "OR", "print", "return",
+                "super", "this", "true", "var", "while", "of_type", "is", "Bool", "Number", "String",
+                "equals", "NOT", "less_than"
+        };
+        for (String keyword : keywords) {
+            SPELLINGS.put(lookup(keyword, 0, keyword.length()), keyword);
+        }
+    }
+
+    private Keywords() {}
+
+    /** The keyword type of source[start, end), or IDENTIFIER. */
+    static TokenType lookup(CharSequence source, int start, int end) {
+        switch (end - start) {
+            case 2:
+                switch (source.charAt(start)) {
+                    case 'i':
+                        if (source.charAt(start + 1) == 'f') return IF;
+                        if (source.charAt(start + 1) == 's') return ASSIGN;
+                        break;
+                    case 'O':
+                        if (source.charAt(start + 1) == 'R') return OR;
+                        break;
+                }
+                break;
+            case 3:
+                switch (source.charAt(start)) {
+                    case 'a': return rest(source, start, "and", AND);
+                    case 'f':
+                        if (source.charAt(start + 1) == 'o') return rest(source, start, "for", FOR);
+                        return rest(source, start, "fun", FUN);
+                    case 'n': return rest(source, start, "nil", NIL);
+                    case 'v': return rest(source, start, "var", VAR);
+                    case 'N': return rest(source, start, "NOT", NOT);
+                }
+                break;
+            case 4:
+                switch (source.charAt(start)) {
+                    case 'e': return rest(source, start, "else", ELSE);
+                    case 't':
+                        if (source.charAt(start + 1) == 'h') return rest(source, start, "this", THIS);
+                        return rest(source, start, "true", TRUE);
+                    case 'B': return rest(source, start, "Bool", BOOL_TYPE);
+                }
+                break;
+            case 5:
+                switch (source.charAt(start)) {
+                    case 'c': return rest(source, start, "class", CLASS);
+                    case 'f': return rest(source, start, "false", FALSE);
+                    case 'p': return rest(source, start, "print", PRINT);
+                    case 's': return rest(source, start, "super", SUPER);
+                    case 'w': return rest(source, start, "while", WHILE);
+                }
+                break;
+            case 6:
+                switch (source.charAt(start)) {
+                    case 'r': return rest(source, start, "return", RETURN);
+                    case 'e': return rest(source, start, "equals", EQUALS);
+                    case 'N': return rest(source, start, "Number", NUMBER_TYPE);
+                    case 'S': return rest(source, start, "String", STRING_TYPE);
+                }
+                break;
+            case 7:
+                if (source.charAt(start) == 'o') return rest(source, start, "of_type", TYPE_DEF);
+                break;
+            case 9:
+                if (source.charAt(start) == 'l') return rest(source, start, "less_than", LESS);
+                break;
+        }
+        return IDENTIFIER;
+    }
+
+    /** The canonical lexeme of a keyword token type, or null for anything else. */
+    static String spelling(TokenType type) {
+        return SPELLINGS.get(type);
+    }
+
+    // The caller has already checked the length and the first character
+    private static TokenType rest(CharSequence source, int start, String keyword, TokenType type) {
+        for (int i = 1; i < keyword.length(); i++) {
+            if (source.charAt(start + i) != keyword.charAt(i)) return IDENTIFIER;
+        }
+        return type;
+    }
+}
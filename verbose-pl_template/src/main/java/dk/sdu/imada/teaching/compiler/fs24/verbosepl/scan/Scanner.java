@@ -1,66 +1,71 @@
 package dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan;
 
-import java.util.LinkedList;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntPredicate;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.io.IOException;
 
-import dk.sdu.imada.teaching.compiler.fs24.verbosepl.VerbosePL;
-import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.CollectingDiagnostics;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostic;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostics;
 
 import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType.*;
 
 public class Scanner {
-    // Keyword-map
-    private static final Map<String, TokenType> keywords;
-    private StringBuilder errorStrings = new StringBuilder();
+    // Sources shorter than this are not worth splitting up
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    // Target size of the chunks a source is split into; they end at the next newline
+    private static final int CHUNK_SIZE = 1 << 15;
+
+    private final Diagnostics diagnostics;
+    private final SymbolTable symbols;
 
     public StringBuilder getErrorStrings() {
-        return errorStrings;
-    };
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and",    AND);
-        keywords.put("class",  CLASS);
-        keywords.put("else",   ELSE);
-        keywords.put("false",  FALSE);
-        keywords.put("for",    FOR);
-        keywords.put("fun",    FUN);
-        keywords.put("if",     IF);
-        keywords.put("nil",    NIL);
-        keywords.put("OR",     OR);
-        keywords.put("print",  PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super",  SUPER);
-        keywords.put("this",   THIS);
-        keywords.put("true",   TRUE);
-        keywords.put("var",    VAR);
-        keywords.put("while",  WHILE);
-        keywords.put("of_type", OF_TYPE);
-        keywords.put("is", ASSIGN);
-        keywords.put("Bool", BOOL_TYPE);
-        keywords.put("Number", NUMBER_TYPE);
-        keywords.put("String", STRING_TYPE);
-        keywords.put("equals", EQUALS);
-        keywords.put("NOT", NOT);
-        keywords.put("less_than", LESS);
+        return errorStrings(diagnostics);
+    }
+
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
     }
 
     // In- and output
-    private final String source;
-    private final List<Token> tokens = new LinkedList<>();
+    private final CharSequence source;
+    private final List<Token> tokens = new ArrayList<>();
+    // Set while scanning into a TokenBuffer instead of the token list
+    private TokenBuffer buffer;
 
     // Scanning state
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    // Scanning stops here; before the whole source only when lexing a chunk
+    private int end;
+    // Start and line of a string literal that was still open at end, or -1
+    private int unterminatedStart = -1;
+    private int unterminatedLine;
+
+    public Scanner(CharSequence source) {
+        this(source, new CollectingDiagnostics());
+    }
+
+    public Scanner(CharSequence source, Diagnostics diagnostics) {
+        this(source, diagnostics, new SymbolTable());
+    }
 
-    public Scanner(String source) {
+    public Scanner(CharSequence source, Diagnostics diagnostics, SymbolTable symbols) {
         this.source = source;
+        this.diagnostics = diagnostics;
+        this.symbols = symbols;
+        this.end = source.length();
     }
 
     // Scan tokens
@@ -75,10 +80,155 @@ public class Scanner {
         return tokens;
     }
 
+    // Scan tokens into struct-of-arrays storage, without creating Token objects
+    public TokenBuffer scanTokenBuffer() {
+        buffer = new TokenBuffer(source, symbols);
+        while (!isAtEnd()) {
+            start = current;
+            scanToken();
+        }
+
+        buffer.add(EOF, current, 0, line);
+        return buffer;
+    }
+
+
+    /**
+     * Scans into buffer from offset from, which must lie between tokens, starting on the given
+     * line. Stops without scanning further when resync accepts the offset the next lexeme would
+     * start at, and returns that offset. Returns -1 after adding EOF if it never does.
+     */
+    int scanRange(TokenBuffer into, int from, int line, IntPredicate resync) {
+        buffer = into;
+        return scanFrom(from, line, resync);
+    }
+
+    private int scanFrom(int from, int line, IntPredicate resync) {
+        current = from;
+        this.line = line;
+        while (!isAtEnd()) {
+            start = current;
+            if (resync.test(start)) return start;
+            scanToken();
+        }
+
+        buffer.add(EOF, current, 0, this.line);
+        return -1;
+    }
+
+    int line() {
+        return line;
+    }
+
+    public TokenBuffer scanTokenBufferParallel() {
+        return scanTokenBufferParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same tokens, lines, symbols and errors as scanTokenBuffer(), but the source is split into
+     * chunks at newlines and the chunks are lexed on pool at the same time, each as if it began
+     * between two tokens. Only a string literal can span a newline, so that guess is wrong just
+     * for a chunk that starts inside one. A chunk that ends in an open string shows this: the
+     * string is scanned again from its quote, continuing into the following chunks until the
+     * scanner reaches a chunk start between tokens, and the chunks it passed are dropped.
+     *
+     * Each chunk interns into a table of its own. Its symbols are renumbered while the chunks
+     * are joined in order, which numbers them in order of first appearance, as a single scan
+     * would.
+     */
+    public TokenBuffer scanTokenBufferParallel(ForkJoinPool pool) {
+        // With a single worker the chunks would only be lexed one after another
+        if (pool.getParallelism() < 2) return scanTokenBuffer();
+        int[] chunkStarts = chunkStarts();
+        if (chunkStarts.length < 2) return scanTokenBuffer();
+
+        List<ForkJoinTask<Scanner>> chunks = new ArrayList<>(chunkStarts.length);
+        for (int i = 0; i < chunkStarts.length; i++) {
+            int from = chunkStarts[i];
+            int to = i + 1 < chunkStarts.length ? chunkStarts[i + 1] : end;
+            chunks.add(pool.submit(() -> scanChunk(from, to)));
+        }
+
+        buffer = new TokenBuffer(source, symbols);
+        int position = 0;
+        for (int i = 0; i < chunkStarts.length; i++) {
+            if (chunkStarts[i] < position) {
+                // Lexed as if between tokens, but it starts inside a string
+                chunks.get(i).cancel(false);
+                continue;
+            }
+
+            Scanner chunk = chunks.get(i).join();
+            join(chunk);
+            if (chunk.unterminatedStart < 0) {
+                line += chunk.line - 1;
+                position = chunk.end;
+                continue;
+            }
+
+            // The string goes on in the next chunk, if there is one
+            int resumeLine = line + chunk.unterminatedLine - 1;
+            int chunkEnd = chunk.end;
+            position = scanFrom(chunk.unterminatedStart, resumeLine,
+                    start -> start >= chunkEnd && Arrays.binarySearch(chunkStarts, start) >= 0);
+            if (position < 0) return buffer;
+        }
+
+        buffer.add(EOF, current, 0, line);
+        return buffer;
+    }
+
+    // Offsets the chunks start at: the first is 0, the others follow a newline
+    private int[] chunkStarts() {
+        if (end < PARALLEL_THRESHOLD) return new int[] { 0 };
+        int[] starts = new int[end / CHUNK_SIZE + 1];
+        int count = 1;
+        for (int next = CHUNK_SIZE; next < end; next += CHUNK_SIZE) {
+            while (next < end && source.charAt(next - 1) != '\n') next++;
+            if (next == end) break;
+            starts[count++] = next;
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    // Lexes [from, to) as if it started between tokens on line 1, with tables of its own
+    private Scanner scanChunk(int from, int to) {
+        Scanner chunk = new Scanner(source, new CollectingDiagnostics(), new SymbolTable());
+        chunk.buffer = new TokenBuffer(source, chunk.symbols);
+        chunk.current = from;
+        chunk.end = to;
+        while (!chunk.isAtEnd()) {
+            chunk.start = chunk.current;
+            chunk.scanToken();
+        }
+        return chunk;
+    }
+
+    /**
+     * Appends the tokens and errors of a chunk that starts on the current line, leaving out
+     * the error about a string still open at its end.
+     */
+    private void join(Scanner chunk) {
+        SymbolTable chunkSymbols = chunk.symbols;
+        int[] symbolMap = new int[chunkSymbols.size()];
+        for (int symbol = 0; symbol < symbolMap.length; symbol++) {
+            symbolMap[symbol] = symbols.intern(chunkSymbols.name(symbol));
+        }
+
+        int lineDelta = line - 1;
+        TokenBuffer tokens = chunk.buffer;
+        buffer.appendAll(tokens, lineDelta, symbolMap);
+        for (int i = 0; i < tokens.errorCount(); i++) {
+            if (tokens.errorOffset(i) == chunk.unterminatedStart) continue;
+            int errorLine = tokens.errorLine(i) + lineDelta;
+            diagnostics.report(Diagnostics.Level.ERROR, errorLine, null, tokens.errorMessage(i));
+            buffer.addError(tokens.errorOffset(i), errorLine, tokens.errorMessage(i));
+        }
+        current = chunk.end;
+    }
 
     private void scanToken() {
         char c = advance();
-        System.out.println("Character: '" + c + "', Line: " + line);  // Debug print
         switch (c) {
             // Handle single-character tokens
             case '(': addToken(LEFT_PAREN); break;
@@ -104,6 +254,12 @@ public class Scanner {
                 while (peek() != '\n' && !isAtEnd()) advance();
                 break;
 
+            // Skip whitespace
+            case ' ':
+            case '\r':
+            case '\t':
+                break;
+
             // Handle newlines
             case '\n':
                 line++;  // Increment line number on newline
@@ -125,11 +281,23 @@ public class Scanner {
     }
 
     private void repportError(int line, String message) {
-        errorStrings.append("Error at line ").append(line).append(": ").append(message).append("\n");
+        diagnostics.report(Diagnostics.Level.ERROR, line, null, message);
+        if (buffer != null) buffer.addError(start, line, message);
+    }
+
+    // The "Error at line N: message" listing of every error recorded in diagnostics
+    static StringBuilder errorStrings(Diagnostics diagnostics) {
+        StringBuilder errorStrings = new StringBuilder();
+        for (Diagnostic diagnostic : diagnostics.records()) {
+            if (diagnostic.level != Diagnostics.Level.ERROR) continue;
+            errorStrings.append("Error at line ").append(diagnostic.line).append(": ").append(diagnostic.message).append("\n");
+        }
+        return errorStrings;
     }
 
     // For strings
     private void string() {
+        int startLine = line;
         while (peek() != '"' && !isAtEnd()) {
             if (peek() == '\n') line++;
             advance();
@@ -137,6 +305,8 @@ public class Scanner {
 
         // Handle unterminated string
         if (isAtEnd()) {
+            unterminatedStart = start;
+            unterminatedLine = startLine;
             repportError(line, "Unterminated string.");
             return;
         }
@@ -144,9 +314,14 @@ public class Scanner {
         // The closing quote.
         advance();
 
-        // Extract the string content
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);  // Assign the literal value
+        // Equal string contents share one interned String
+        int symbol = symbols.intern(source, start + 1, current - 1);
+        if (buffer != null) {
+            buffer.addSymbol(STRING, start, current - start, line, symbol);
+            return;
+        }
+
+        addToken(STRING, symbols.name(symbol), source.subSequence(start, current).toString(), symbol);
     }
 
     private boolean isDigit(char c) {
@@ -164,17 +339,35 @@ public class Scanner {
             while (isDigit(peek())) advance();
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        double value = Double.parseDouble(source.subSequence(start, current).toString());
+        if (buffer != null) {
+            buffer.addNumber(start, current - start, line, value);
+            return;
+        }
+        addToken(NUMBER, value);
     }
 
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) {
-            type = IDENTIFIER;
+
+        // Classify on the source range; only plain identifiers get a String of their own
+        TokenType type = Keywords.lookup(source, start, current);
+        if (type != IDENTIFIER) {
+            if (buffer != null) {
+                buffer.add(type, start, current - start, line);
+            } else {
+                addToken(type, null, Keywords.spelling(type), Token.NO_SYMBOL);
+            }
+            return;
+        }
+
+        // Every occurrence of a name shares one interned String
+        int symbol = symbols.intern(source, start, current);
+        if (buffer != null) {
+            buffer.addSymbol(IDENTIFIER, start, current - start, line, symbol);
+            return;
         }
-        addToken(type);
+        addToken(IDENTIFIER, null, symbols.name(symbol), symbol);
     }
 
     private boolean isAlpha(char c) {
@@ -188,7 +381,7 @@ public class Scanner {
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
+        if (current + 1 >= end) return '\0';
         return source.charAt(current + 1);
     }
 
@@ -201,11 +394,20 @@ public class Scanner {
     }
 
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        if (buffer != null) {
+            buffer.add(type, start, current - start, line);
+            return;
+        }
 
-        // Print in the correct format:
-        System.out.println("<" + type + "," + text + "> Literal: " + literal + ", Line: " + line);
+        addToken(type, literal, source.subSequence(start, current).toString(), Token.NO_SYMBOL);
+    }
+
+    private void addToken(TokenType type, Object literal, String text, int symbol) {
+        tokens.add(new Token(type, text, literal, line, symbol));
+
+        if (diagnostics.isEnabled(Diagnostics.Level.TRACE)) {
+            diagnostics.report(Diagnostics.Level.TRACE, line, text, "<" + type + "," + text + "> Literal: " + literal);
+        }
     }
 
     private boolean match(char expected) {
@@ -222,7 +424,7 @@ public class Scanner {
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= end;
     }
 
     public static void main(String[] args) {
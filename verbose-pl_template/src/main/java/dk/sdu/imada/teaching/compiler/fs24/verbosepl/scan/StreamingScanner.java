@@ -0,0 +1,293 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.CollectingDiagnostics;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostics;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType.*;
+
+/**
+ * Scanner that reads its input through a fixed-size char buffer and hands out one token per
+ * nextToken() call, so memory use does not grow with the size of the source. Produces the
+ * same tokens as Scanner.
+ *
+ * A lexeme that does not fit in the buffer (a very long string literal, typically) has its
+ * beginning moved to a side StringBuilder when the buffer is refilled.
+ */
+public class StreamingScanner implements TokenSource {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer;
+    // CharSequence view of buffer for keyword lookup
+    private final CharBuffer chars;
+    private final Diagnostics diagnostics;
+    private final SymbolTable symbols;
+
+    // buffer[0, limit) holds input; the current lexeme is spill + buffer[start, current)
+    private int limit = 0;
+    private int start = 0;
+    private int current = 0;
+    private final StringBuilder spill = new StringBuilder();
+    private boolean endOfInput = false;
+    private int line = 1;
+
+    public StreamingScanner(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamingScanner(Reader reader, int bufferSize) {
+        this(reader, bufferSize, new CollectingDiagnostics());
+    }
+
+    public StreamingScanner(Reader reader, Diagnostics diagnostics) {
+        this(reader, DEFAULT_BUFFER_SIZE, diagnostics);
+    }
+
+    public StreamingScanner(Reader reader, int bufferSize, Diagnostics diagnostics) {
+        this(reader, bufferSize, diagnostics, new SymbolTable());
+    }
+
+    public StreamingScanner(Reader reader, int bufferSize, Diagnostics diagnostics, SymbolTable symbols) {
+        if (bufferSize < 2) throw new IllegalArgumentException("Buffer must hold at least two characters.");
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+        this.chars = CharBuffer.wrap(buffer);
+        this.diagnostics = diagnostics;
+        this.symbols = symbols;
+    }
+
+    public StreamingScanner(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    public StringBuilder getErrorStrings() {
+        return Scanner.errorStrings(diagnostics);
+    }
+
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    @Override
+    public Token nextToken() {
+        while (true) {
+            start = current;
+            spill.setLength(0);
+            if (!available(1)) {
+                return new Token(EOF, "", null, line);
+            }
+            Token token = scanToken();
+            if (token != null) {
+                if (diagnostics.isEnabled(Diagnostics.Level.TRACE)) {
+                    diagnostics.report(Diagnostics.Level.TRACE, token.line, token.lexeme,
+                            "<" + token.type + "," + token.lexeme + "> Literal: " + token.literal);
+                }
+                return token;
+            }
+        }
+    }
+
+    private Token scanToken() {
+        char c = advance();
+        switch (c) {
+            case '(': return token(LEFT_PAREN);
+            case ')': return token(RIGHT_PAREN);
+            case '{': return token(LEFT_BRACE);
+            case '}': return token(RIGHT_BRACE);
+            case ',': return token(COMMA);
+            case '.': return token(DOT);
+            case '-': return token(MINUS);
+            case '+': return token(PLUS);
+            case ';': return token(SEMICOLON);
+            case '*': return token(STAR);
+            case '/': return token(DIV);
+
+            case '!': return token(match('=') ? BANG_EQUAL : BANG);
+            case '=': return token(match('=') ? EQUAL_EQUAL : EQUAL);
+            case '<': return token(match('=') ? LESS_EQUAL : LESS);
+            case '>': return token(match('=') ? GREATER_EQUAL : GREATER);
+
+            case '#':
+                while (peek() != '\n' && !isAtEnd()) {
+                    advance();
+                    // Comments can be arbitrarily long; don't keep them around
+                    start = current;
+                }
+                return null;
+
+            case ' ':
+            case '\r':
+            case '\t':
+                return null;
+
+            case '\n':
+                line++;
+                return null;
+
+            case '"': return string();
+
+            default:
+                if (isDigit(c)) {
+                    return number();
+                } else if (isAlpha(c)) {
+                    return identifier();
+                }
+                reportError(line, "Unexpected character.");
+                return null;
+        }
+    }
+
+    private Token string() {
+        while (peek() != '"' && !isAtEnd()) {
+            if (peek() == '\n') line++;
+            advance();
+        }
+
+        if (isAtEnd()) {
+            reportError(line, "Unterminated string.");
+            return null;
+        }
+
+        // The closing quote.
+        advance();
+
+        String text = lexeme();
+        int symbol = symbols.intern(text, 1, text.length() - 1);
+        return new Token(STRING, text, symbols.name(symbol), line, symbol);
+    }
+
+    private Token number() {
+        while (isDigit(peek())) advance();
+
+        // Look for a fractional part.
+        if (peek() == '.' && isDigit(peekNext())) {
+            // Consume the "."
+            advance();
+
+            while (isDigit(peek())) advance();
+        }
+
+        String text = lexeme();
+        return new Token(NUMBER, text, Double.parseDouble(text), line);
+    }
+
+    private Token identifier() {
+        while (isAlphaNumeric(peek())) advance();
+
+        if (spill.length() > 0) {
+            String text = lexeme();
+            TokenType type = Keywords.lookup(text, 0, text.length());
+            if (type != IDENTIFIER) return new Token(type, Keywords.spelling(type), null, line);
+            int symbol = symbols.intern(text);
+            return new Token(IDENTIFIER, symbols.name(symbol), null, line, symbol);
+        }
+
+        // Classify and intern in the buffer; a name seen before costs no new String
+        TokenType type = Keywords.lookup(chars, start, current);
+        if (type != IDENTIFIER) return new Token(type, Keywords.spelling(type), null, line);
+        int symbol = symbols.intern(chars, start, current);
+        return new Token(IDENTIFIER, symbols.name(symbol), null, line, symbol);
+    }
+
+    private Token token(TokenType type) {
+        return new Token(type, lexeme(), null, line);
+    }
+
+    private String lexeme() {
+        if (spill.length() == 0) {
+            return new String(buffer, start, current - start);
+        }
+        return spill.append(buffer, start, current - start).toString();
+    }
+
+    private void reportError(int line, String message) {
+        diagnostics.report(Diagnostics.Level.ERROR, line, null, message);
+    }
+
+    private boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') ||
+                (c >= 'A' && c <= 'Z') ||
+                c == '_';
+    }
+
+    private boolean isAlphaNumeric(char c) {
+        return isAlpha(c) || isDigit(c);
+    }
+
+    private char advance() {
+        available(1);
+        return buffer[current++];
+    }
+
+    private boolean match(char expected) {
+        if (isAtEnd()) return false;
+        if (buffer[current] != expected) return false;
+
+        current++;
+        return true;
+    }
+
+    private char peek() {
+        if (!available(1)) return '\0';
+        return buffer[current];
+    }
+
+    private char peekNext() {
+        if (!available(2)) return '\0';
+        return buffer[current + 1];
+    }
+
+    private boolean isAtEnd() {
+        return !available(1);
+    }
+
+    // Makes sure at least n characters are buffered from current on; false at end of input
+    private boolean available(int n) {
+        while (limit - current < n) {
+            if (endOfInput) return false;
+            refill();
+        }
+        return true;
+    }
+
+    private void refill() {
+        if (start == 0 && limit == buffer.length) {
+            // The lexeme fills the whole buffer: move what has been scanned of it aside
+            spill.append(buffer, 0, current);
+            start = current;
+        }
+
+        // Keep the unfinished lexeme at the front of the buffer
+        System.arraycopy(buffer, start, buffer, 0, limit - start);
+        limit -= start;
+        current -= start;
+        start = 0;
+
+        try {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan;
+
+import java.util.Arrays;
+
+/**
+ * Interns the identifier and string-literal text of one compilation. Each distinct text is
+ * stored once, as a single String, and numbered in order of first appearance; tokens carry
+ * that number as their symbol, so later phases can compare and index names as ints.
+ *
+ * Lookups hash the characters where they lie in the source, so text that has been seen before
+ * costs no allocation. The one exception is non-ASCII text in a {@link ByteSource}, whose chars
+ * are UTF-8 bytes rather than the text they encode: it is decoded first, so that it hashes and
+ * compares as the String that gets stored. Not thread-safe; every scanner of a compilation
+ * shares one table.
+ */
+public final class SymbolTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    // Open addressing: symbol + 1 per bucket, 0 for empty; kept at most half full
+    private int[] buckets = new int[INITIAL_CAPACITY * 2];
+    private int size = 0;
+
+    public int intern(CharSequence text, int start, int end) {
+        int hash = 0;
+        boolean ascii = true;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            hash = 31 * hash + c;
+            ascii &= c < 0x80;
+        }
+        if (!ascii && text instanceof ByteSource) {
+            String decoded = text.subSequence(start, end).toString();
+            return intern(decoded, 0, decoded.length());
+        }
+
+        int mask = buckets.length - 1;
+        for (int bucket = mix(hash) & mask; ; bucket = (bucket + 1) & mask) {
+            int entry = buckets[bucket];
+            if (entry == 0) {
+                return add(text.subSequence(start, end).toString(), hash, bucket);
+            }
+            int symbol = entry - 1;
+            if (hashes[symbol] == hash && matches(names[symbol], text, start, end)) {
+                return symbol;
+            }
+        }
+    }
+
+    public int intern(String text) {
+        return intern(text, 0, text.length());
+    }
+
+    public String name(int symbol) {
+        return names[symbol];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash, int bucket) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        buckets[bucket] = size + 1;
+        int symbol = size++;
+        if (size * 2 > buckets.length) rehash();
+        return symbol;
+    }
+
+    private void rehash() {
+        buckets = new int[buckets.length * 2];
+        int mask = buckets.length - 1;
+        for (int symbol = 0; symbol < size; symbol++) {
+            int bucket = mix(hashes[symbol]) & mask;
+            while (buckets[bucket] != 0) bucket = (bucket + 1) & mask;
+            buckets[bucket] = symbol + 1;
+        }
+    }
+
+    // Spreads the high bits of String-style hashes into the low ones the buckets use
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
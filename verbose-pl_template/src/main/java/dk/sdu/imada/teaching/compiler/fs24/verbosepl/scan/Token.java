@@ -1,16 +1,26 @@
 package dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan;
 
 public class Token {
+    // symbol of tokens that have no interned text
+    public static final int NO_SYMBOL = -1;
+
     public final TokenType type;
     public final String lexeme;
     public final Object literal;
     public final int line;
+    // Id in the compilation's SymbolTable of an identifier's name or a string literal's value
+    public final int symbol;
 
     public Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, NO_SYMBOL);
+    }
+
+    public Token(TokenType type, String lexeme, Object literal, int line, int symbol) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = symbol;
     }
 
     public String toString() {
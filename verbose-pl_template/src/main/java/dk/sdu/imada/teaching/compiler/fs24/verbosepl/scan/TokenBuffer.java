@@ -0,0 +1,355 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.CollectingDiagnostics;
+
+/**
+ * Struct-of-arrays token storage: type, source offset, length and line of every token live in
+ * parallel int arrays, and number literals in a double side table. Identifiers and strings
+ * keep their SymbolTable id instead of text. Token objects and boxed literals are only created
+ * when a caller asks for them.
+ */
+public class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final CharSequence source;
+    private final SymbolTable symbols;
+    private int size = 0;
+    private int[] types = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    // Index into numbers for NUMBER tokens, -1 for everything else
+    private int[] numberIndex = new int[INITIAL_CAPACITY];
+    // Symbol of IDENTIFIER and STRING tokens, Token.NO_SYMBOL for everything else
+    private int[] symbolIds = new int[INITIAL_CAPACITY];
+    private double[] numbers = new double[16];
+    private int numberCount = 0;
+    // Lexical errors, kept with their source offsets so an edit can tell which still apply
+    private int errorCount = 0;
+    private int[] errorOffsets = new int[4];
+    private int[] errorLines = new int[4];
+    private String[] errorMessages = new String[4];
+
+    public TokenBuffer(CharSequence source) {
+        this(source, new SymbolTable());
+    }
+
+    public TokenBuffer(CharSequence source, SymbolTable symbols) {
+        this.source = source;
+        this.symbols = symbols;
+    }
+
+    public void add(TokenType type, int start, int length, int line) {
+        append(type, start, length, line, -1, Token.NO_SYMBOL);
+    }
+
+    public void addSymbol(TokenType type, int start, int length, int line, int symbol) {
+        append(type, start, length, line, -1, symbol);
+    }
+
+    public void addNumber(int start, int length, int line, double value) {
+        if (numberCount == numbers.length) {
+            numbers = Arrays.copyOf(numbers, numberCount * 2);
+        }
+        numbers[numberCount] = value;
+        append(TokenType.NUMBER, start, length, line, numberCount++, Token.NO_SYMBOL);
+    }
+
+    private void append(TokenType type, int start, int length, int line, int number, int symbol) {
+        if (size == types.length) grow(size * 2);
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        numberIndex[size] = number;
+        symbolIds[size] = symbol;
+        size++;
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        numberIndex = Arrays.copyOf(numberIndex, capacity);
+        symbolIds = Arrays.copyOf(symbolIds, capacity);
+    }
+
+    /**
+     * Appends every token of other, moved down lineDelta lines, with each symbol s renumbered
+     * to symbolMap[s]. Errors are left to the caller.
+     */
+    void appendAll(TokenBuffer other, int lineDelta, int[] symbolMap) {
+        int count = other.size;
+        if (size + count > types.length) grow(Math.max(size * 2, size + count));
+        System.arraycopy(other.types, 0, types, size, count);
+        System.arraycopy(other.starts, 0, starts, size, count);
+        System.arraycopy(other.lengths, 0, lengths, size, count);
+        for (int i = 0; i < count; i++) {
+            lines[size + i] = other.lines[i] + lineDelta;
+            int number = other.numberIndex[i];
+            numberIndex[size + i] = number < 0 ? -1 : number + numberCount;
+            int symbol = other.symbolIds[i];
+            symbolIds[size + i] = symbol == Token.NO_SYMBOL ? symbol : symbolMap[symbol];
+        }
+        size += count;
+
+        if (numberCount + other.numberCount > numbers.length) {
+            numbers = Arrays.copyOf(numbers, Math.max(numbers.length * 2, numberCount + other.numberCount));
+        }
+        System.arraycopy(other.numbers, 0, numbers, numberCount, other.numberCount);
+        numberCount += other.numberCount;
+    }
+
+    public void addError(int offset, int line, String message) {
+        if (errorCount == errorOffsets.length) {
+            errorOffsets = Arrays.copyOf(errorOffsets, errorCount * 2);
+            errorLines = Arrays.copyOf(errorLines, errorCount * 2);
+            errorMessages = Arrays.copyOf(errorMessages, errorCount * 2);
+        }
+        errorOffsets[errorCount] = offset;
+        errorLines[errorCount] = line;
+        errorMessages[errorCount] = message;
+        errorCount++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public CharSequence source() {
+        return source;
+    }
+
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    public int errorCount() {
+        return errorCount;
+    }
+
+    public int errorOffset(int index) {
+        return errorOffsets[index];
+    }
+
+    public int errorLine(int index) {
+        return errorLines[index];
+    }
+
+    public String errorMessage(int index) {
+        return errorMessages[index];
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int line(int index) {
+        return lines[index];
+    }
+
+    public double number(int index) {
+        return numbers[numberIndex[index]];
+    }
+
+    public int symbol(int index) {
+        return symbolIds[index];
+    }
+
+    public String lexeme(int index) {
+        // Keyword tokens share their canonical spelling ("<" and "less_than" are both LESS)
+        String keyword = Keywords.spelling(type(index));
+        if (keyword != null && keyword.length() == lengths[index]) return keyword;
+        if (type(index) == TokenType.IDENTIFIER && symbolIds[index] != Token.NO_SYMBOL) {
+            return symbols.name(symbolIds[index]);
+        }
+        return source.subSequence(starts[index], starts[index] + lengths[index]).toString();
+    }
+
+    // Same literal values Scanner attaches to its tokens
+    public Object literal(int index) {
+        switch (type(index)) {
+            case NUMBER:
+                return number(index);
+            case STRING:
+                if (symbolIds[index] != Token.NO_SYMBOL) return symbols.name(symbolIds[index]);
+                return source.subSequence(starts[index] + 1, starts[index] + lengths[index] - 1).toString();
+            default:
+                return null;
+        }
+    }
+
+    public Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), lines[index], symbolIds[index]);
+    }
+
+    /** Read-only List view that materializes a Token on every get(). */
+    public List<Token> asList() {
+        class View extends AbstractList<Token> implements RandomAccess {
+            @Override
+            public Token get(int index) {
+                if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+                return token(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        }
+        return new View();
+    }
+
+    /** TokenSource over the buffered tokens, starting at the given index. */
+    public TokenSource cursor(int from) {
+        return new TokenSource() {
+            private int next = from;
+
+            @Override
+            public Token nextToken() {
+                // The last token is EOF; keep returning it
+                Token token = token(Math.min(next, size - 1));
+                if (next < size) next++;
+                return token;
+            }
+        };
+    }
+
+    public TokenSource cursor() {
+        return cursor(0);
+    }
+
+    /**
+     * Tokens of a new source that differs from this buffer's source by one edit: the
+     * removed characters at [offset, offset + removed) were replaced by inserted characters.
+     * Tokens that end well before the edit are copied. Scanning restarts after them and stops
+     * once a token starts behind the edit at the shifted start of an old token. From there
+     * the old tokens are copied again, with their offsets and lines shifted.
+     */
+    public Edit edit(CharSequence newSource, int offset, int removed, int inserted) {
+        int delta = inserted - removed;
+        // Scanning a token looks at most two characters past its end ("1." before a digit)
+        int keep = lastTokenEndingBefore(offset - 1);
+        int resumeAt = keep < 0 ? 0 : starts[keep] + lengths[keep];
+        int resumeLine = keep < 0 ? 1 : lines[keep];
+
+        TokenBuffer result = new TokenBuffer(newSource, symbols);
+        result.copy(this, 0, keep + 1, 0, 0);
+        for (int i = 0; i < errorCount; i++) {
+            if (errorOffsets[i] < resumeAt) result.addError(errorOffsets[i], errorLines[i], errorMessages[i]);
+        }
+
+        // Behind the edit the text is the same as before, so an old token start found there
+        // puts the scanner back into the state it had in the old stream
+        int editEnd = offset + inserted;
+        Scanner scanner = new Scanner(newSource, new CollectingDiagnostics(), symbols);
+        int syncStart = scanner.scanRange(result, resumeAt, resumeLine,
+                start -> start >= editEnd && indexOfStart(start - delta) >= 0);
+        if (syncStart < 0) {
+            return new Edit(result, keep + 1, size, result.size(), 0);
+        }
+
+        int oldResume = indexOfStart(syncStart - delta);
+        int newResume = result.size();
+        int lineDelta = scanner.line() - firstLine(oldResume);
+        result.copy(this, oldResume, size, delta, lineDelta);
+        for (int i = 0; i < errorCount; i++) {
+            if (errorOffsets[i] >= starts[oldResume]) {
+                result.addError(errorOffsets[i] + delta, errorLines[i] + lineDelta, errorMessages[i]);
+            }
+        }
+        return new Edit(result, keep + 1, oldResume, newResume, lineDelta);
+    }
+
+    /**
+     * Result of edit(): the new tokens, plus where they differ from the old ones. Old tokens
+     * [0, firstChanged) and [oldResume, old size) reappear unchanged, apart from their
+     * position, at [0, firstChanged) and [newResume, new size).
+     */
+    public static final class Edit {
+        public final TokenBuffer tokens;
+        public final int firstChanged;
+        public final int oldResume;
+        public final int newResume;
+        // How many lines the tokens from newResume on moved down
+        public final int lineDelta;
+
+        Edit(TokenBuffer tokens, int firstChanged, int oldResume, int newResume, int lineDelta) {
+            this.tokens = tokens;
+            this.firstChanged = firstChanged;
+            this.oldResume = oldResume;
+            this.newResume = newResume;
+            this.lineDelta = lineDelta;
+        }
+    }
+
+    // Appends tokens [from, to) of other, moved by offsetDelta characters and lineDelta lines
+    private void copy(TokenBuffer other, int from, int to, int offsetDelta, int lineDelta) {
+        for (int i = from; i < to; i++) {
+            if (other.numberIndex[i] >= 0) {
+                addNumber(other.starts[i] + offsetDelta, other.lengths[i], other.lines[i] + lineDelta, other.number(i));
+            } else {
+                append(other.type(i), other.starts[i] + offsetDelta, other.lengths[i], other.lines[i] + lineDelta,
+                        -1, other.symbolIds[i]);
+            }
+        }
+    }
+
+    // Index of the last token ending before offset (exclusive end < offset), or -1
+    private int lastTokenEndingBefore(int offset) {
+        int low = 0;
+        int high = size - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] + lengths[middle] < offset) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    // Index of the token starting at offset, or -1; EOF never matches
+    private int indexOfStart(int offset) {
+        int low = 0;
+        int high = size - 2;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < offset) {
+                low = middle + 1;
+            } else if (starts[middle] > offset) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    // Tokens record the line they end on; only string literals span lines
+    private int firstLine(int index) {
+        int line = lines[index];
+        for (int i = starts[index]; i < starts[index] + lengths[index]; i++) {
+            if (source.charAt(i) == '\n') line--;
+        }
+        return line;
+    }
+}
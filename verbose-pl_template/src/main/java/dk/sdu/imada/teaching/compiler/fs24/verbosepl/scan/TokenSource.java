@@ -0,0 +1,9 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan;
+
+/**
+ * Pull-based supply of tokens. After the EOF token has been returned once, every further call
+ * returns EOF again.
+ */
+public interface TokenSource {
+    Token nextToken();
+}
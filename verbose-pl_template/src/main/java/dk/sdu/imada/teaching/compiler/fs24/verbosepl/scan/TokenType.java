@@ -20,7 +20,6 @@ public enum TokenType {
     AND, CLASS, ELSE, FALSE, FUN, FOR, IF, NIL, OR,
     PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,ASSIGN,
 
-    OF_TYPE,
         // End-of-file
     EOF
 }
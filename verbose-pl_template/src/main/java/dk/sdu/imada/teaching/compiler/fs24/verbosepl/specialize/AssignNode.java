@@ -0,0 +1,33 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Environment;
+
+final class AssignNode extends ExprNode implements ExprNode.Parent {
+    private final int depth;
+    private final int slot;
+    private ExprNode value;
+
+    AssignNode(int depth, int slot, ExprNode value) {
+        this.depth = depth;
+        this.slot = slot;
+        this.value = value;
+        value.parent = this;
+    }
+
+    @Override
+    Object execute(Environment environment) {
+        Object result = value.execute(environment);
+        environment.assign(depth, slot, result);
+        return result;
+    }
+
+    @Override
+    public void replaceChild(ExprNode child, ExprNode replacement) {
+        value = replacement;
+    }
+
+    @Override
+    ExprNode[] children() {
+        return new ExprNode[] { value };
+    }
+}
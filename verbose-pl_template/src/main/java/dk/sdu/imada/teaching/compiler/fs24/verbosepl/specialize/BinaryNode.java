@@ -0,0 +1,229 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Environment;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.RuntimeError;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Values.*;
+
+/**
+ * Arithmetic, comparison and equality. The first execution looks at the operand values and
+ * rewrites the node: two numbers give a NumberBinary, which works on unboxed doubles, and a +
+ * with a String operand gives a StringConcat. A specialized node that meets operands it was not
+ * made for replaces itself with a GenericBinary, which has the Interpreter's checked semantics.
+ */
+abstract class BinaryNode extends ExprNode implements ExprNode.Parent {
+    final Token operator;
+    ExprNode left;
+    ExprNode right;
+
+    BinaryNode(Token operator, ExprNode left, ExprNode right) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+        left.parent = this;
+        right.parent = this;
+    }
+
+    // The Interpreter's semantics, for operands that have already been evaluated
+    final Object generic(Object left, Object right) {
+        switch (operator.type) {
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) {
+                    return (double) left + (double) right;
+                }
+                if (left instanceof String || right instanceof String) {
+                    return stringify(left) + stringify(right);
+                }
+                throw new RuntimeError(operator, "Operands must be two numbers or include a string.");
+            case EQUAL_EQUAL:
+            case EQUALS:
+                return isEqual(left, right);
+            case BANG_EQUAL:
+                return !isEqual(left, right);
+        }
+
+        if (!(left instanceof Double && right instanceof Double)) {
+            throw new RuntimeError(operator, "Operands must be numbers.");
+        }
+        switch (operator.type) {
+            case MINUS: return (double) left - (double) right;
+            case STAR: return (double) left * (double) right;
+            case SLASH:
+            case DIV: return (double) left / (double) right;
+            case GREATER: return (double) left > (double) right;
+            case GREATER_EQUAL: return (double) left >= (double) right;
+            case LESS: return (double) left < (double) right;
+            case LESS_EQUAL: return (double) left <= (double) right;
+        }
+
+        // Unreachable.
+        return null;
+    }
+
+    // Gives up on the specialization for good and finishes this execution generically
+    final Object deoptimize(Object leftValue, Object rightValue) {
+        return replace(new GenericBinary(operator, left, right)).generic(leftValue, rightValue);
+    }
+
+    @Override
+    public void replaceChild(ExprNode child, ExprNode replacement) {
+        if (left == child) {
+            left = replacement;
+        } else {
+            right = replacement;
+        }
+    }
+
+    @Override
+    ExprNode[] children() {
+        return new ExprNode[] { left, right };
+    }
+
+    static final class UninitializedBinary extends BinaryNode {
+        UninitializedBinary(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object leftValue = left.execute(environment);
+            Object rightValue = right.execute(environment);
+
+            BinaryNode specialized;
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                specialized = new NumberBinary(operator, left, right);
+            } else if (operator.type == TokenType.PLUS && (leftValue instanceof String || rightValue instanceof String)) {
+                specialized = new StringConcat(operator, left, right);
+            } else {
+                specialized = new GenericBinary(operator, left, right);
+            }
+            return replace(specialized).generic(leftValue, rightValue);
+        }
+    }
+
+    static final class NumberBinary extends BinaryNode {
+        private final boolean arithmetic;
+
+        NumberBinary(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+            switch (operator.type) {
+                case PLUS:
+                case MINUS:
+                case STAR:
+                case SLASH:
+                case DIV:
+                    arithmetic = true;
+                    break;
+                default:
+                    arithmetic = false;
+            }
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            double leftValue;
+            try {
+                leftValue = left.executeNumber(environment);
+            } catch (UnexpectedResult e) {
+                return deoptimize(e.result, right.execute(environment));
+            }
+            double rightValue;
+            try {
+                rightValue = right.executeNumber(environment);
+            } catch (UnexpectedResult e) {
+                return deoptimize(leftValue, e.result);
+            }
+            return arithmetic ? (Object) arithmetic(leftValue, rightValue) : (Object) compare(leftValue, rightValue);
+        }
+
+        @Override
+        double executeNumber(Environment environment) throws UnexpectedResult {
+            if (!arithmetic) return super.executeNumber(environment);
+
+            double leftValue;
+            try {
+                leftValue = left.executeNumber(environment);
+            } catch (UnexpectedResult e) {
+                return number(deoptimize(e.result, right.execute(environment)));
+            }
+            try {
+                return arithmetic(leftValue, right.executeNumber(environment));
+            } catch (UnexpectedResult e) {
+                return number(deoptimize(leftValue, e.result));
+            }
+        }
+
+        @Override
+        boolean executeCondition(Environment environment) {
+            if (arithmetic) return super.executeCondition(environment);
+
+            double leftValue;
+            try {
+                leftValue = left.executeNumber(environment);
+            } catch (UnexpectedResult e) {
+                return isTruthy(deoptimize(e.result, right.execute(environment)));
+            }
+            try {
+                return compare(leftValue, right.executeNumber(environment));
+            } catch (UnexpectedResult e) {
+                return isTruthy(deoptimize(leftValue, e.result));
+            }
+        }
+
+        private double arithmetic(double leftValue, double rightValue) {
+            switch (operator.type) {
+                case PLUS: return leftValue + rightValue;
+                case MINUS: return leftValue - rightValue;
+                case STAR: return leftValue * rightValue;
+                default: return leftValue / rightValue;
+            }
+        }
+
+        private boolean compare(double leftValue, double rightValue) {
+            switch (operator.type) {
+                case GREATER: return leftValue > rightValue;
+                case GREATER_EQUAL: return leftValue >= rightValue;
+                case LESS: return leftValue < rightValue;
+                case LESS_EQUAL: return leftValue <= rightValue;
+                // Same as Double.equals, which the generic path uses
+                case BANG_EQUAL: return Double.doubleToLongBits(leftValue) != Double.doubleToLongBits(rightValue);
+                default: return Double.doubleToLongBits(leftValue) == Double.doubleToLongBits(rightValue);
+            }
+        }
+
+        // A deoptimized result, handed on as a double if it still is one
+        private static double number(Object value) throws UnexpectedResult {
+            if (value instanceof Double) return (double) value;
+            throw new UnexpectedResult(value);
+        }
+    }
+
+    static final class StringConcat extends BinaryNode {
+        StringConcat(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object leftValue = left.execute(environment);
+            Object rightValue = right.execute(environment);
+            if (leftValue instanceof String || rightValue instanceof String) {
+                return stringify(leftValue) + stringify(rightValue);
+            }
+            return deoptimize(leftValue, rightValue);
+        }
+    }
+
+    static final class GenericBinary extends BinaryNode {
+        GenericBinary(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return generic(left.execute(environment), right.execute(environment));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Environment;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Values.isTruthy;
+
+/**
+ * Executable counterpart of an Expr. Nodes start out uninitialized and replace themselves with
+ * a node specialized to the values they actually see; a specialized node whose assumption
+ * fails replaces itself with a generic one, which handles every case and never rewrites again.
+ */
+abstract class ExprNode {
+
+    // Whatever holds a node: its parent node, or the root of a statement's expression
+    interface Parent {
+        void replaceChild(ExprNode child, ExprNode replacement);
+    }
+
+    Parent parent;
+
+    abstract Object execute(Environment environment);
+
+    // The value as a double, for parents specialized to numbers. Nodes that produce numbers
+    // override this to skip boxing
+    double executeNumber(Environment environment) throws UnexpectedResult {
+        Object value = execute(environment);
+        if (value instanceof Double) return (double) value;
+        throw new UnexpectedResult(value);
+    }
+
+    boolean executeCondition(Environment environment) {
+        return isTruthy(execute(environment));
+    }
+
+    ExprNode[] children() {
+        return new ExprNode[0];
+    }
+
+    // Swaps this node for replacement wherever it is held and returns replacement
+    final <T extends ExprNode> T replace(T replacement) {
+        replacement.parent = parent;
+        parent.replaceChild(this, replacement);
+        return replacement;
+    }
+
+    // Node kinds with their children, e.g. NumberBinary(LocalRead, NumberLiteral)
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(getClass().getSimpleName());
+        ExprNode[] children = children();
+        if (children.length > 0) {
+            text.append('(');
+            for (int i = 0; i < children.length; i++) {
+                if (i > 0) text.append(", ");
+                text.append(children[i]);
+            }
+            text.append(')');
+        }
+        return text.toString();
+    }
+}
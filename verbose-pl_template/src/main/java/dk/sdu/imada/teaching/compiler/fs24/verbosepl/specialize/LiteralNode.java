@@ -0,0 +1,35 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Environment;
+
+class LiteralNode extends ExprNode {
+    private final Object value;
+
+    LiteralNode(Object value) {
+        this.value = value;
+    }
+
+    static ExprNode of(Object value) {
+        return value instanceof Double ? new NumberLiteral((double) value) : new LiteralNode(value);
+    }
+
+    @Override
+    Object execute(Environment environment) {
+        return value;
+    }
+
+    // Keeps the unboxed number next to the boxed one
+    static final class NumberLiteral extends LiteralNode {
+        private final double number;
+
+        NumberLiteral(double number) {
+            super(number);
+            this.number = number;
+        }
+
+        @Override
+        double executeNumber(Environment environment) {
+            return number;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Environment;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Values.isTruthy;
+
+// AND / OR; yields the deciding operand itself, like the Interpreter
+final class LogicalNode extends ExprNode implements ExprNode.Parent {
+    private final boolean or;
+    private ExprNode left;
+    private ExprNode right;
+
+    LogicalNode(TokenType operator, ExprNode left, ExprNode right) {
+        this.or = operator == TokenType.OR;
+        this.left = left;
+        this.right = right;
+        left.parent = this;
+        right.parent = this;
+    }
+
+    @Override
+    Object execute(Environment environment) {
+        Object value = left.execute(environment);
+        if (or == isTruthy(value)) return value;
+        return right.execute(environment);
+    }
+
+    @Override
+    boolean executeCondition(Environment environment) {
+        if (or == left.executeCondition(environment)) return or;
+        return right.executeCondition(environment);
+    }
+
+    @Override
+    public void replaceChild(ExprNode child, ExprNode replacement) {
+        if (left == child) {
+            left = replacement;
+        } else {
+            right = replacement;
+        }
+    }
+
+    @Override
+    ExprNode[] children() {
+        return new ExprNode[] { left, right };
+    }
+}
@@ -0,0 +1,47 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+
+// Turns a resolved Expr into a tree of uninitialized nodes
+final class NodeBuilder implements Expr.Visitor<ExprNode> {
+
+    ExprNode build(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        return new BinaryNode.UninitializedBinary(expr.operator, build(expr.left), build(expr.right));
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        // Grouping only matters to the parser
+        return build(expr.expression);
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        return LiteralNode.of(expr.value);
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        return UnaryNode.create(expr.operator, build(expr.right));
+    }
+
+    @Override
+    public ExprNode visitAssignmentExpr(Expr.Assignment expr) {
+        return new AssignNode(expr.depth, expr.slot, build(expr.value));
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr) {
+        return new LogicalNode(expr.operator.type, build(expr.left), build(expr.right));
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        return new ReadNode.UninitializedRead(expr.depth, expr.slot);
+    }
+}
@@ -0,0 +1,51 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Environment;
+
+/**
+ * Reads a variable the Resolver placed at (depth, slot). The first read rewrites the node into
+ * a plain slot access of the current frame, or of the frame depth levels up.
+ */
+abstract class ReadNode extends ExprNode {
+    final int depth;
+    final int slot;
+
+    ReadNode(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    static final class UninitializedRead extends ReadNode {
+        UninitializedRead(int depth, int slot) {
+            super(depth, slot);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            ReadNode read = depth == 0 ? new LocalRead(slot) : new FrameRead(depth, slot);
+            return replace(read).execute(environment);
+        }
+    }
+
+    static final class LocalRead extends ReadNode {
+        LocalRead(int slot) {
+            super(0, slot);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return environment.getLocal(slot);
+        }
+    }
+
+    static final class FrameRead extends ReadNode {
+        FrameRead(int depth, int slot) {
+            super(depth, slot);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return environment.get(depth, slot);
+        }
+    }
+}
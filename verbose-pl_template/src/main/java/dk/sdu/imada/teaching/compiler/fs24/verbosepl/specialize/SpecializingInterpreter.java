@@ -0,0 +1,76 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+
+import java.io.PrintStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Tree-walking interpreter whose expressions run as self-specializing nodes instead of through
+ * the Expr visitor. Each expression a statement evaluates gets its node tree on first use; from
+ * then on the nodes rewrite themselves to match the values they see (see ExprNode), so a hot
+ * expression ends up as a tree of slot reads and unboxed double operations.
+ */
+public class SpecializingInterpreter extends Interpreter {
+
+    // Holds the node tree of one statement-level expression, so its top node can be replaced too
+    private static final class Root implements ExprNode.Parent {
+        ExprNode node;
+
+        Root(ExprNode node) {
+            this.node = node;
+            node.parent = this;
+        }
+
+        @Override
+        public void replaceChild(ExprNode child, ExprNode replacement) {
+            node = replacement;
+        }
+    }
+
+    private final Map<Expr, Root> roots = new IdentityHashMap<>();
+    private final NodeBuilder builder = new NodeBuilder();
+
+    public SpecializingInterpreter() {
+        this(System.out);
+    }
+
+    public SpecializingInterpreter(PrintStream out) {
+        super(out);
+    }
+
+    private ExprNode node(Expr expr) {
+        Root root = roots.get(expr);
+        if (root == null) {
+            root = new Root(builder.build(expr));
+            roots.put(expr, root);
+        }
+        return root.node;
+    }
+
+    @Override
+    protected Object evaluate(Expr expr) {
+        return node(expr).execute(environment);
+    }
+
+    @Override
+    protected double evaluateNumber(Expr expr) {
+        return (double) evaluate(expr);
+    }
+
+    @Override
+    protected boolean evaluateCondition(Expr expr) {
+        return node(expr).executeCondition(environment);
+    }
+
+    /**
+     * The current shape of expr's node tree, e.g. "NumberBinary(LocalRead, NumberLiteral)", or
+     * null if it has not been evaluated yet.
+     */
+    public String specialization(Expr expr) {
+        Root root = roots.get(expr);
+        return root == null ? null : root.node.toString();
+    }
+}
@@ -0,0 +1,110 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize;
+
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Environment;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.RuntimeError;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType;
+
+import static dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Values.isTruthy;
+
+/**
+ * Negation and NOT. A negation that has only seen numbers becomes a NumberNegate, which passes
+ * doubles through unboxed.
+ */
+abstract class UnaryNode extends ExprNode implements ExprNode.Parent {
+    final Token operator;
+    ExprNode operand;
+
+    UnaryNode(Token operator, ExprNode operand) {
+        this.operator = operator;
+        this.operand = operand;
+        operand.parent = this;
+    }
+
+    static UnaryNode create(Token operator, ExprNode operand) {
+        return operator.type == TokenType.MINUS ? new UninitializedNegate(operator, operand) : new Not(operator, operand);
+    }
+
+    // The Interpreter's semantics, for a value that has already been evaluated
+    final Object negate(Object value) {
+        if (value instanceof Double) return -(double) value;
+        throw new RuntimeError(operator, "Operand must be a number.");
+    }
+
+    @Override
+    public void replaceChild(ExprNode child, ExprNode replacement) {
+        operand = replacement;
+    }
+
+    @Override
+    ExprNode[] children() {
+        return new ExprNode[] { operand };
+    }
+
+    static final class UninitializedNegate extends UnaryNode {
+        UninitializedNegate(Token operator, ExprNode operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object value = operand.execute(environment);
+            UnaryNode specialized = value instanceof Double
+                    ? new NumberNegate(operator, operand)
+                    : new GenericNegate(operator, operand);
+            return replace(specialized).negate(value);
+        }
+    }
+
+    static final class NumberNegate extends UnaryNode {
+        NumberNegate(Token operator, ExprNode operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            try {
+                return -operand.executeNumber(environment);
+            } catch (UnexpectedResult e) {
+                return replace(new GenericNegate(operator, operand)).negate(e.result);
+            }
+        }
+
+        @Override
+        double executeNumber(Environment environment) {
+            try {
+                return -operand.executeNumber(environment);
+            } catch (UnexpectedResult e) {
+                // negate throws for anything but a number
+                return (double) replace(new GenericNegate(operator, operand)).negate(e.result);
+            }
+        }
+    }
+
+    static final class GenericNegate extends UnaryNode {
+        GenericNegate(Token operator, ExprNode operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return negate(operand.execute(environment));
+        }
+    }
+
+    static final class Not extends UnaryNode {
+        Not(Token operator, ExprNode operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return !operand.executeCondition(environment);
+        }
+
+        @Override
+        boolean executeCondition(Environment environment) {
+            return !operand.executeCondition(environment);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize;
+
+/**
+ * Thrown by a typed execute method when the value turns out not to have the expected type.
+ * Carries the value so the caller can fall back to a generic node without evaluating again.
+ */
+final class UnexpectedResult extends Exception {
+    final Object result;
+
+    UnexpectedResult(Object result) {
+        // Thrown on every deoptimization; a stack trace would only slow that down
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
@@ -0,0 +1,123 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.binary.AstReader;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.binary.AstWriter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTPrinter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class BinaryAstTest {
+    private static String sampleInputString;
+    private static String sampleOutputExpected;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    public static void prepareFiles() {
+        try {
+            sampleInputString = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-input.vpl")));
+            sampleOutputExpected = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-run-output-expected.txt")));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] encode(List<Stmt> statements) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new AstWriter().write(statements, bytes);
+        return bytes.toByteArray();
+    }
+
+    private static String print(List<Stmt> statements) {
+        StringBuilder builder = new StringBuilder();
+        ASTPrinter printer = new ASTPrinter();
+        for (Stmt stmt : statements) {
+            builder.append(printer.print(stmt)).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static String run(List<Stmt> statements) {
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new Interpreter(new PrintStream(buffer, true)).interpret(statements, resolver.globalSlots());
+        return buffer.toString();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (String source : List.of(sampleInputString, new ProgramGenerator(3, 4).generate(200))) {
+            List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+            List<Stmt> loaded = new AstReader(ByteBuffer.wrap(encode(statements))).statements();
+            assertEquals(print(statements), print(loaded));
+        }
+    }
+
+    @Test
+    public void testMappedProgramRuns() throws IOException {
+        Path file = directory.resolve("sample.vpla");
+        Files.write(file, encode(new Parser(new Scanner(sampleInputString).scanTokens()).parse()));
+
+        AstReader reader = AstReader.map(file);
+        assertEquals(List.of(sampleOutputExpected.split("\\R")), List.of(run(reader.statements()).split("\\R")));
+    }
+
+    @Test
+    public void testBlocksAreDecodedWhenVisited() throws IOException {
+        String source = "print 1;\n{\n  print 2;\n  { print 3; print 4; }\n}\nprint 5;\n";
+        AstReader reader = new AstReader(ByteBuffer.wrap(encode(new Parser(new Scanner(source).scanTokens()).parse())));
+        List<Stmt> statements = reader.statements();
+        assertEquals(3, statements.size());
+        assertEquals(0, reader.decodedStatements());
+
+        Stmt.Block outer = (Stmt.Block) statements.get(1);
+        assertEquals(1, reader.decodedStatements());
+        assertEquals(2, outer.statements.size());
+        outer.statements.get(0);
+        assertEquals(2, reader.decodedStatements());
+
+        // Decoded nodes are kept, so Resolver annotations on them survive
+        assertTrue(outer.statements.get(0) == outer.statements.get(0));
+        assertTrue(statements.get(1) == outer);
+    }
+
+    @Test
+    public void testTruncatedFileIsReportedAsDamaged() throws IOException {
+        String source = "var a of_type Number is 1;\n{\n  print a + 2;\n  { print \"three\"; }\n}\nprint a;\n";
+        byte[] bytes = encode(new Parser(new Scanner(source).scanTokens()).parse());
+        for (int length = 0; length < bytes.length; length++) {
+            AstReader reader;
+            try {
+                reader = new AstReader(ByteBuffer.wrap(Arrays.copyOf(bytes, length)));
+            } catch (IOException e) {
+                continue;
+            }
+            try {
+                print(reader.statements());
+            } catch (AstReader.FormatError e) {
+                continue;
+            }
+            fail("Decoded " + length + " of " + bytes.length + " bytes.");
+        }
+    }
+}
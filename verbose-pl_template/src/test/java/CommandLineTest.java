@@ -0,0 +1,142 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.VerbosePL;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CommandLineTest {
+
+    @TempDir
+    Path directory;
+
+    // Runs VerbosePL.main and returns what it printed to stdout and stderr, without the timings
+    private static String run(String... args) throws IOException, InterruptedException {
+        PrintStream realOut = System.out;
+        PrintStream realErr = System.err;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream captured = new PrintStream(buffer, true);
+        System.setOut(captured);
+        System.setErr(captured);
+        try {
+            VerbosePL.main(args);
+        } finally {
+            System.setOut(realOut);
+            System.setErr(realErr);
+        }
+        return buffer.toString().replace("\r", "").replaceAll("(?m)^ -+ Finished file .* in \\d+ ms -+ *\n", "");
+    }
+
+    private Path write(String name, String source) throws IOException {
+        Path path = directory.resolve(name);
+        Files.writeString(path, source);
+        return path;
+    }
+
+    @Test
+    public void testDeepestExpressionsRunOnEveryEngine() throws Exception {
+        // As deep as the parser allows, inside as many blocks as it allows around a statement
+        int depth = Parser.MAX_EXPRESSION_DEPTH;
+        int blocks = Parser.MAX_NESTING - 1;
+        String source = "var x of_type Number is 1;\n" + "{".repeat(blocks)
+                + "print x" + " + x".repeat(depth - 1) + ";\n"
+                + "print " + "-".repeat(depth - 1) + "x;\n"
+                + "}".repeat(blocks) + "\n";
+        String file = write("deep.vpl", source).toString();
+
+        for (String engine : new String[] { "tree", "vm", "tiered", "specializing", "ir" }) {
+            for (String options : new String[] { "--no-optimize", "--print-ast --dump-ir --emit-ast" }) {
+                List<String> args = new ArrayList<>(List.of(("--engine=" + engine + " " + options).split(" ")));
+                args.add(file);
+                String output = run(args.toArray(new String[0]));
+                assertFalse(output.contains("Exception") || output.contains("Error"), engine + " " + options + ": " + output);
+                assertTrue(output.contains("\n" + depth + "\n-1\n"), engine + " " + options + ": " + output);
+            }
+            String output = run("--engine=" + engine, file);
+            assertTrue(output.contains("\n" + depth + "\n-1\n"), engine + ": " + output);
+        }
+        // The binary AST written by --emit-ast decodes and runs as well
+        String decoded = run(file + ".vpla");
+        assertTrue(decoded.contains("\n" + depth + "\n-1\n"), decoded);
+    }
+
+    @Test
+    public void testTooDeepExpressionsAreParseErrors() throws Exception {
+        String file = write("long.vpl", "print 1" + " + 1".repeat(99_999) + ";\nprint 2;\n").toString();
+        String output = run(file);
+        assertTrue(output.contains("Expression is too deep"), output);
+        assertFalse(output.contains("StackOverflowError"), output);
+    }
+
+    @Test
+    public void testCacheKeepsUnoptimizedChunksApart() throws Exception {
+        String file = write("cached.vpl", "var a of_type Number is 2;\nprint a * 21;\n").toString();
+        Path cache = directory.resolve("cache");
+        String option = "--cache=" + cache;
+        assertTrue(run("--engine=vm", option, file).contains("\n42\n"));
+        assertTrue(run("--engine=vm", "--no-optimize", option, file).contains("\n42\n"));
+        assertTrue(run("--engine=vm", "--no-optimize", option, file).contains("\n42\n"));
+        try (var entries = Files.list(cache)) {
+            assertEquals(2, entries.filter(entry -> entry.toString().endsWith(".vplb")).count());
+        }
+    }
+
+    @Test
+    public void testCacheIsBypassedForFrontEndOutput() throws Exception {
+        String file = write("printed.vpl", "var a of_type Number is 2;\nprint a * 21;\n").toString();
+        String option = "--cache=" + directory.resolve("cache");
+        assertTrue(run("--engine=vm", option, file).contains("\n42\n"));
+
+        // A cached chunk has no AST or IR to show, so these runs compile the file again
+        String printed = run("--engine=vm", option, "--print-ast", file);
+        assertTrue(printed.contains("\n42\n"), printed);
+        assertTrue(printed.contains("VarDecl"), printed);
+        String dumped = run("--engine=vm", option, "--dump-ir", file);
+        assertTrue(dumped.contains("print v0\n"), dumped);
+        run("--engine=vm", option, "--emit-ast", file);
+        assertTrue(Files.exists(Path.of(file + ".vpla")));
+    }
+
+    @Test
+    public void testCacheWithAnotherEngineIsReported() throws Exception {
+        String file = write("uncached.vpl", "print 42;\n").toString();
+        Path cache = directory.resolve("cache");
+        String output = run("--engine=tree", "--cache=" + cache, file);
+        assertTrue(output.contains("Warning: --cache only applies to --engine=vm"), output);
+        assertTrue(output.contains("\n42\n"), output);
+        assertFalse(Files.exists(cache));
+    }
+
+    @Test
+    public void testOnlyVplaFilesAreReadAsBinaryAsts() throws Exception {
+        // Source that happens to start with the binary AST magic is still source
+        String source = write("magic.vpl", "VPLAx is 1;\nprint 2;\n").toString();
+        String output = run(source);
+        assertTrue(output.contains("Undefined variable 'VPLAx'"), output);
+
+        String program = write("program.vpl", "var a of_type Number is 20;\n{ print a + 22; }\n").toString();
+        run("--emit-ast", program);
+        byte[] ast = Files.readAllBytes(Path.of(program + ".vpla"));
+        String truncated = directory.resolve("truncated.vpla").toString();
+        Files.write(Path.of(truncated), Arrays.copyOf(ast, ast.length - 4));
+        String header = directory.resolve("header.vpla").toString();
+        Files.write(Path.of(header), Arrays.copyOf(ast, 9));
+
+        // Damaged files are reported, and the files after them still run
+        output = run(truncated, header, program + ".vpla");
+        assertTrue(output.contains("Damaged AST file " + truncated + ": "), output);
+        assertTrue(output.contains("Error processing " + header + ": java.io.IOException: Truncated AST file."), output);
+        assertTrue(output.contains("\n42\n"), output);
+    }
+}
@@ -0,0 +1,108 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode.Chunk;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode.Compiler;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.cache.CompilationCache;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompilationCacheTest {
+    @TempDir
+    Path directory;
+
+    private static Chunk compile(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        return new Compiler().compile(statements, resolver.globalSlots());
+    }
+
+    private static String key(String source) {
+        return CompilationCache.key(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStoredChunkIsLoaded() throws IOException {
+        CompilationCache cache = new CompilationCache(directory);
+        String source = "var a of_type Number is 2;\nprint a * 21;\n";
+        assertNull(cache.load(key(source)));
+
+        Chunk chunk = compile(source);
+        cache.store(key(source), chunk);
+        assertEquals(chunk.disassemble(), cache.load(key(source)).disassemble());
+        assertNotEquals(key(source), key(source + " "));
+
+        // A chunk compiled without optimizing is kept apart from the optimized one
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        assertEquals(key(source), CompilationCache.key(bytes, true));
+        assertNotEquals(CompilationCache.key(bytes, true), CompilationCache.key(bytes, false));
+    }
+
+    @Test
+    public void testCorruptEntryIsAMiss() throws IOException {
+        CompilationCache cache = new CompilationCache(directory);
+        String key = key("print 1;");
+        Files.write(directory.resolve(key + ".vplb"), new byte[] { 'V', 'P', 'L', 'B', 0, 0 });
+        assertNull(cache.load(key));
+        assertFalse(Files.exists(directory.resolve(key + ".vplb")));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        String[] sources = { "print 1;", "print 2;", "print 3;" };
+        long entrySize = 0;
+        CompilationCache unbounded = new CompilationCache(directory);
+        for (int i = 0; i < sources.length; i++) {
+            unbounded.store(key(sources[i]), compile(sources[i]));
+            Path entry = directory.resolve(key(sources[i]) + ".vplb");
+            entrySize = Files.size(entry);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(1_000_000L * (i + 1)));
+        }
+
+        // Using the oldest entry makes the second one the least recently used
+        CompilationCache cache = new CompilationCache(directory, 3 * entrySize);
+        assertTrue(cache.load(key(sources[0])) != null);
+        cache.store(key("print 4;"), compile("print 4;"));
+
+        assertTrue(Files.exists(directory.resolve(key(sources[0]) + ".vplb")));
+        assertFalse(Files.exists(directory.resolve(key(sources[1]) + ".vplb")));
+        assertTrue(Files.exists(directory.resolve(key(sources[2]) + ".vplb")));
+        assertTrue(Files.exists(directory.resolve(key("print 4;") + ".vplb")));
+    }
+
+    @Test
+    public void testEntriesStoredSinceTheLastListingAreCounted() throws IOException {
+        String[] sources = { "print 1;", "print 2;", "print 3;" };
+        new CompilationCache(directory).store(key(sources[0]), compile(sources[0]));
+        Path oldest = directory.resolve(key(sources[0]) + ".vplb");
+        long entrySize = Files.size(oldest);
+        Files.setLastModifiedTime(oldest, FileTime.fromMillis(1_000_000L));
+
+        // Room for two and a half entries: the directory is listed when the second one is stored,
+        // and the third takes the running estimate over the limit
+        CompilationCache cache = new CompilationCache(directory, 2 * entrySize + entrySize / 2);
+        cache.store(key(sources[1]), compile(sources[1]));
+        Files.setLastModifiedTime(directory.resolve(key(sources[1]) + ".vplb"), FileTime.fromMillis(2_000_000L));
+        assertTrue(Files.exists(oldest));
+        cache.store(key(sources[2]), compile(sources[2]));
+
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(directory.resolve(key(sources[1]) + ".vplb")));
+        assertTrue(Files.exists(directory.resolve(key(sources[2]) + ".vplb")));
+    }
+}
@@ -0,0 +1,105 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Times the front end on generated programs of size N, 2N and 4N and fails when the time per
+ * source character grows by more than TOLERANCE from N to 4N. Linear stages stay close to 1;
+ * a quadratic stage would reach about 4.
+ */
+public class ComplexityTest {
+    private static final long SEED = 20240501L;
+    private static final int MAX_DEPTH = 4;
+    private static final int N = 250;
+    private static final double TOLERANCE = 2.5;
+    private static final int RUNS = 15;
+
+    @Test
+    public void testGeneratedProgramsAreValid() {
+        for (long seed = 0; seed < 20; seed++) {
+            String source = new ProgramGenerator(seed, MAX_DEPTH).generate(50);
+            Scanner scanner = new Scanner(source);
+            Parser parser = new Parser(scanner.scanTokens());
+            List<Stmt> statements = parser.parse();
+            assertEquals("", scanner.getErrorStrings().toString(), source);
+            assertFalse(parser.hadError(), source);
+
+            Resolver resolver = new Resolver();
+            resolver.resolve(statements);
+            assertFalse(resolver.hadError(), source);
+
+            Interpreter interpreter = new Interpreter(new PrintStream(new ByteArrayOutputStream(), true));
+            interpreter.interpret(statements, resolver.globalSlots());
+            assertFalse(interpreter.hadRuntimeError(), source);
+        }
+    }
+
+    @Test
+    public void testGeneratorIsDeterministic() {
+        assertEquals(new ProgramGenerator(7, MAX_DEPTH).generate(100), new ProgramGenerator(7, MAX_DEPTH).generate(100));
+    }
+
+    @Test
+    public void testScanningIsLinear() {
+        assertLinear("scanTokens", source -> source, source -> new Scanner(source).scanTokens());
+    }
+
+    @Test
+    public void testParsingIsLinear() {
+        assertLinear("parse", source -> new Scanner(source).scanTokens(), tokens -> new Parser(tokens).parse());
+    }
+
+    // prepare turns a generated source into the stage's input outside of the timed region
+    private <T> void assertLinear(String stage, Function<String, T> prepare, Consumer<T> work) {
+        int[] lengths = new int[3];
+        List<T> inputs = new ArrayList<>();
+        for (int i = 0; i < lengths.length; i++) {
+            String source = new ProgramGenerator(SEED, MAX_DEPTH).generate(N << i);
+            lengths[i] = source.length();
+            inputs.add(prepare.apply(source));
+        }
+
+        // Warm up on every size so the JIT has compiled the hot paths before anything is timed
+        for (int round = 0; round < 3; round++) {
+            for (T input : inputs) {
+                for (int i = 0; i < RUNS; i++) work.accept(input);
+            }
+        }
+
+        double[] nanosPerChar = new double[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            nanosPerChar[i] = bestTime(work, inputs.get(i)) / (double) lengths[i];
+        }
+
+        double growth = nanosPerChar[2] / nanosPerChar[0];
+        assertTrue(growth < TOLERANCE, stage + " is superlinear: time per character grew " + growth
+                + "x from N to 4N (N, 2N, 4N: " + nanosPerChar[0] + ", " + nanosPerChar[1] + ", " + nanosPerChar[2] + " ns/char)");
+    }
+
+    // The fastest of several runs is the least disturbed by GC and scheduling noise
+    private <T> long bestTime(Consumer<T> work, T input) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            // Start each run from an empty heap so garbage from earlier runs isn't billed to it
+            System.gc();
+            long start = System.nanoTime();
+            work.accept(input);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
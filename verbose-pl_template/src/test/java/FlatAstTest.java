@@ -0,0 +1,117 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat.FlatAst;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat.FlatAstPrinter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.flat.FlatConstantFolder;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTPrinter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlatAstTest {
+    private static String sampleInputString;
+    private static String sampleOutputExpected;
+
+    @BeforeAll
+    public static void prepareFiles() {
+        try {
+            sampleInputString = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-input.vpl")));
+            sampleOutputExpected = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-run-output-expected.txt")));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static FlatAst parseFlat(String source) {
+        return new Parser(new Scanner(source).scanTokenBuffer()).parseFlat();
+    }
+
+    private static String print(List<Stmt> statements) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        new ASTPrinter().print(statements, builder);
+        return builder.toString();
+    }
+
+    private static String run(List<Stmt> statements) {
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new Interpreter(new PrintStream(buffer, true)).interpret(statements, resolver.globalSlots());
+        return buffer.toString();
+    }
+
+    @Test
+    public void testPrintsLikeTheObjectTree() throws IOException {
+        for (String source : List.of(sampleInputString, new ProgramGenerator(5, 4).generate(200))) {
+            String expected = print(new Parser(new Scanner(source).scanTokenBuffer()).parse());
+            FlatAst ast = parseFlat(source);
+            assertEquals(expected, new FlatAstPrinter().print(ast));
+            assertEquals(expected, print(ast.toStatements()));
+        }
+    }
+
+    @Test
+    public void testConvertedProgramRuns() {
+        List<Stmt> statements = parseFlat(sampleInputString).toStatements();
+        assertEquals(List.of(sampleOutputExpected.split("\\R")), List.of(run(statements).split("\\R")));
+    }
+
+    @Test
+    public void testStatementsWithErrorsAreLeftOut() throws IOException {
+        String source = "var a of_type Number is 1;\nprint (1 + ;\n{ print a; var b of_type; print 2; }\n1 is a;\nprint a is 3;\n";
+        Parser objects = new Parser(new Scanner(source).scanTokenBuffer());
+        String expected = print(objects.parse());
+        Parser flat = new Parser(new Scanner(source).scanTokenBuffer());
+        assertEquals(expected, new FlatAstPrinter().print(flat.parseFlat()));
+        assertTrue(flat.hadError());
+    }
+
+    @Test
+    public void testChildrenAreLinkedInSourceOrder() {
+        FlatAst ast = parseFlat("if (x) print 1; else { y is 2 + 3; }\n");
+        int ifStmt = ast.firstStatement();
+        assertEquals(FlatAst.IF, ast.kind(ifStmt));
+        assertEquals(FlatAst.NONE, ast.nextSibling(ifStmt));
+        assertEquals(FlatAst.VARIABLE, ast.kind(ast.child(ifStmt, 0)));
+        assertEquals(FlatAst.PRINT, ast.kind(ast.child(ifStmt, 1)));
+
+        int block = ast.child(ifStmt, 2);
+        int assignment = ast.firstChild(ast.firstChild(block));
+        assertEquals(FlatAst.ASSIGNMENT, ast.kind(assignment));
+        assertEquals("y", ast.lexeme(assignment));
+        assertEquals(FlatAst.BINARY, ast.kind(ast.firstChild(assignment)));
+        assertEquals(5.0, ast.number(ast.child(ast.firstChild(assignment), 0)) + ast.number(ast.child(ast.firstChild(assignment), 1)));
+    }
+
+    @Test
+    public void testConstantsAreFoldedInPlace() {
+        FlatAst ast = parseFlat("print (1 + 2) * 3;\nprint -(4) less_than 0;\nprint NOT true;\nprint \"a\" + 1;\n");
+        int size = ast.size();
+        assertEquals(7, new FlatConstantFolder().fold(ast));
+        assertEquals(size, ast.size());
+
+        int first = ast.firstStatement();
+        assertEquals(9.0, ast.number(ast.firstChild(first)));
+        assertEquals(FlatAst.TRUE, ast.kind(ast.firstChild(ast.nextSibling(first))));
+        assertEquals(FlatAst.FALSE, ast.kind(ast.firstChild(ast.nextSibling(ast.nextSibling(first)))));
+        assertEquals("9\ntrue\nfalse\na1\n", run(ast.toStatements()).replace("\r", ""));
+    }
+
+    @Test
+    public void testNeedsATokenBuffer() {
+        assertThrows(IllegalStateException.class, () -> new Parser(new Scanner("print 1;").scanTokens()).parseFlat());
+    }
+}
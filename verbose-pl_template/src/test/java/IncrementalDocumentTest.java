@@ -0,0 +1,150 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTPrinter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.IncrementalDocument;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IncrementalDocumentTest {
+    private static final String[] SNIPPETS = {
+            " ", "\n", "x", "1", ".", "5", "\"", "#", "var", ";", "{", "}", "is 2", "print a;", "\n#c\n", "@"
+    };
+
+    private static String sampleInputString;
+
+    @BeforeAll
+    public static void prepareFiles() {
+        try {
+            sampleInputString = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-input.vpl")));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String print(List<Stmt> statements) {
+        StringBuilder builder = new StringBuilder();
+        ASTPrinter printer = new ASTPrinter();
+        for (Stmt stmt : statements) {
+            builder.append(printer.print(stmt)).append('\n');
+        }
+        return builder.toString();
+    }
+
+    // An incrementally updated document must be indistinguishable from parsing its text afresh
+    private static void assertSameAsFullParse(IncrementalDocument document) {
+        IncrementalDocument fresh = IncrementalDocument.parse(document.source());
+        assertEquals(fresh.tokens().asList().toString(), document.tokens().asList().toString(), document.source());
+        assertEquals(print(fresh.statements()), print(document.statements()), document.source());
+        assertEquals(fresh.diagnostics().toString(), document.diagnostics().toString(), document.source());
+    }
+
+    private static void randomEdits(String source, long seed, int edits) {
+        Random random = new Random(seed);
+        IncrementalDocument document = IncrementalDocument.parse(source);
+        for (int i = 0; i < edits; i++) {
+            int offset = random.nextInt(document.source().length() + 1);
+            int removed = Math.min(random.nextInt(6), document.source().length() - offset);
+            String inserted = random.nextInt(4) == 0 ? "" : SNIPPETS[random.nextInt(SNIPPETS.length)];
+            document = document.edit(offset, removed, inserted);
+            assertSameAsFullParse(document);
+        }
+    }
+
+    @Test
+    public void testRandomEditsOnSample() {
+        randomEdits(sampleInputString, 1, 300);
+    }
+
+    @Test
+    public void testRandomEditsOnGeneratedProgram() {
+        randomEdits(new ProgramGenerator(5, 3).generate(40), 2, 300);
+    }
+
+    @Test
+    public void testEditInsideOneStatementReusesTheOthers() {
+        String source = new ProgramGenerator(11, 3).generate(200);
+        IncrementalDocument before = IncrementalDocument.parse(source);
+        List<Stmt> old = before.statements();
+
+        // Change a digit of the first number literal in the middle of the file
+        int offset = source.length() / 2;
+        while (!Character.isDigit(source.charAt(offset))) offset++;
+        char replacement = source.charAt(offset) == '7' ? '8' : '7';
+        IncrementalDocument after = before.edit(offset, 1, Character.toString(replacement));
+        assertSameAsFullParse(after);
+
+        List<Stmt> current = after.statements();
+        assertEquals(old.size(), current.size());
+        int changed = 0;
+        for (int i = 0; i < old.size(); i++) {
+            if (old.get(i) != current.get(i)) changed++;
+        }
+        assertEquals(1, changed);
+        assertEquals(1, after.parsedStatements());
+    }
+
+    @Test
+    public void testInsertedLinesShiftLaterStatements() {
+        IncrementalDocument before = IncrementalDocument.parse("var a of_type Number is 1;\nprint a;\nprint a + 1;\n");
+        IncrementalDocument after = before.edit(0, 0, "\n\n");
+        assertSameAsFullParse(after);
+        assertEquals(3, after.tokens().line(0));
+
+        // The last statement peeked at EOF, so only it and the new one are parsed
+        IncrementalDocument appended = after.edit(after.source().length(), 0, "print 2;\n");
+        assertSameAsFullParse(appended);
+        assertSame(after.statements().get(0), appended.statements().get(0));
+        assertSame(after.statements().get(1), appended.statements().get(1));
+        assertEquals(2, appended.parsedStatements());
+    }
+
+    @Test
+    public void testNewLineReusesLaterStatements() {
+        String source = new ProgramGenerator(11, 3).generate(200);
+        IncrementalDocument before = IncrementalDocument.parse(source + "var last of_type Number is 1;\nprint last;\n@\n");
+        int offset = source.length() / 2;
+        while (source.charAt(offset) != '\n') offset++;
+
+        // Pressing Enter between two statements parses at most the one next to it
+        IncrementalDocument after = before.edit(offset + 1, 0, "\n");
+        assertSameAsFullParse(after);
+        assertEquals(before.statements().size(), after.statements().size());
+        assertTrue(after.parsedStatements() <= 1, "parsed " + after.parsedStatements());
+
+        // Carried over statements and errors report the lines they are on now
+        List<Stmt> statements = after.statements();
+        Stmt.Print print = (Stmt.Print) statements.get(statements.size() - 1);
+        int lines = (int) after.source().chars().filter(c -> c == '\n').count();
+        assertEquals(lines - 1, ((Expr.Variable) print.expression).name.line);
+        assertEquals(lines - 2, ((Stmt.Var) statements.get(statements.size() - 2)).name.line);
+        assertTrue(after.diagnostics().toString().contains("[line " + lines + "]"), after.diagnostics().toString());
+
+        // Removing the line again moves them back
+        IncrementalDocument undone = after.edit(offset + 1, 1, "");
+        assertSameAsFullParse(undone);
+        assertTrue(undone.parsedStatements() <= 1, "parsed " + undone.parsedStatements());
+    }
+
+    @Test
+    public void testErrorsFollowTheEdit() {
+        IncrementalDocument document = IncrementalDocument.parse("print 1;\nprint 2;\n");
+        document = document.edit(6, 0, "\"");
+        assertSameAsFullParse(document);
+        assertTrue(document.hasErrors());
+
+        document = document.edit(6, 1, "");
+        assertSameAsFullParse(document);
+        assertFalse(document.hasErrors());
+    }
+}
@@ -0,0 +1,67 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InterpreterTest {
+    private static String sampleInputString;
+    private static String sampleOutputExpected;
+
+    @BeforeAll
+    public static void prepareFiles() {
+        try {
+            sampleInputString = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-input.vpl")));
+            sampleOutputExpected = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-run-output-expected.txt")));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String run(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        assertFalse(resolver.hadError(), "resolver reported errors");
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Interpreter interpreter = new Interpreter(new PrintStream(buffer, true));
+        interpreter.interpret(statements, resolver.globalSlots());
+        assertFalse(interpreter.hadRuntimeError(), "interpreter reported a runtime error");
+        return buffer.toString();
+    }
+
+    @Test
+    public void testSampleProgramOutput() {
+        assertEquals(List.of(sampleOutputExpected.split("\\R")), List.of(run(sampleInputString).split("\\R")));
+    }
+
+    @Test
+    public void testShadowingUsesInnermostSlot() {
+        String source = "var x of_type Number is 1;\n"
+                + "{ var x of_type Number is 2; { var y of_type Number is x; print y; } x is 3; print x; }\n"
+                + "print x;\n";
+        assertEquals(List.of("2", "3", "1"), List.of(run(source).split("\\R")));
+    }
+
+    @Test
+    public void testUndefinedVariableIsResolveError() {
+        List<Stmt> statements = new Parser(new Scanner("print missing;").scanTokens()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        assertTrue(resolver.hadError());
+    }
+}
@@ -0,0 +1,143 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.Block;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.ControlFlowGraph;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.Instruction;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.IrBuilder;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.IrInterpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.IrOptimizer;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.IrPrinter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ir.Op;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IrTest {
+
+    private static final String NESTED_LOOPS = """
+            var a of_type Number is 0;
+            var i of_type Number is 0;
+            var total of_type Number is 0;
+            while (i less_than 3) {
+              i is i + 1;
+              a is 0;
+              while (a less_than 10) {
+                total is total + (i * i + 1) * 2 + (i * i + 1) / 4;
+                a is a + 1;
+              }
+            }
+            print total;
+            print a;
+            """;
+
+    private static List<Stmt> parse(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        assertFalse(resolver.hadError(), "resolver reported errors");
+        return statements;
+    }
+
+    private static ControlFlowGraph build(String source, boolean optimize) {
+        ControlFlowGraph graph = new IrBuilder().build(parse(source));
+        if (optimize) new IrOptimizer().optimize(graph);
+        return graph;
+    }
+
+    // Output, then "<runtime error>" if the program stopped with one
+    private static String run(ControlFlowGraph graph, IrInterpreter[] used) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        IrInterpreter interpreter = new IrInterpreter(new PrintStream(buffer, true));
+        interpreter.interpret(graph);
+        if (used != null) used[0] = interpreter;
+        return buffer.toString() + (interpreter.hadRuntimeError() ? "<runtime error>" : "");
+    }
+
+    private static String interpret(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Interpreter interpreter = new Interpreter(new PrintStream(buffer, true));
+        interpreter.interpret(statements, resolver.globalSlots());
+        return buffer.toString() + (interpreter.hadRuntimeError() ? "<runtime error>" : "");
+    }
+
+    @Test
+    public void testSampleRuns() throws IOException {
+        String source = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-input.vpl")));
+        String expected = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-run-output-expected.txt")));
+        for (boolean optimize : new boolean[] { false, true }) {
+            String output = run(build(source, optimize), null);
+            assertEquals(List.of(expected.split("\\R")), List.of(output.split("\\R")));
+        }
+    }
+
+    @Test
+    public void testGeneratedProgramsMatchTheInterpreter() {
+        for (long seed = 0; seed < 20; seed++) {
+            String source = new ProgramGenerator(seed, 3).generate(40);
+            String expected = interpret(source);
+            assertEquals(expected, run(build(source, false), null), "seed " + seed);
+            assertEquals(expected, run(build(source, true), null), "seed " + seed);
+        }
+    }
+
+    @Test
+    public void testRuntimeErrorsStayInPlace() {
+        String source = """
+                var n of_type Number;
+                var i of_type Number is 0;
+                while (i less_than 0) { i is -n; }
+                print "before";
+                n - 1;
+                print "after";
+                """;
+        assertEquals("before\n<runtime error>", run(build(source, true), null).replace("\r", ""));
+    }
+
+    @Test
+    public void testLoopsRunFewerInstructions() {
+        IrInterpreter[] plain = new IrInterpreter[1];
+        IrInterpreter[] optimized = new IrInterpreter[1];
+        String expected = interpret(NESTED_LOOPS);
+        assertEquals(expected, run(build(NESTED_LOOPS, false), plain));
+        assertEquals(expected, run(build(NESTED_LOOPS, true), optimized));
+        assertTrue(optimized[0].executed() * 2 < plain[0].executed(),
+                optimized[0].executed() + " instructions optimized, " + plain[0].executed() + " without");
+    }
+
+    @Test
+    public void testInvariantsLeaveTheInnerLoop() {
+        ControlFlowGraph graph = build(NESTED_LOOPS, true);
+        int multiplications = 0;
+        for (Block block : graph.blocks()) {
+            for (Instruction instruction : block.instructions()) {
+                if (instruction.op() != Op.MUL) continue;
+                multiplications++;
+                // Computed once per outer iteration, just before entering the inner loop
+                Instruction terminator = block.terminator();
+                assertEquals(Op.JUMP, terminator.op());
+                assertFalse(terminator.target(0).phis().isEmpty());
+            }
+        }
+        // i * i is computed once, and / 4 became a multiplication
+        assertEquals(2, multiplications);
+
+        String dump = new IrPrinter().print(graph);
+        assertTrue(dump.contains(" = phi "), dump);
+        assertFalse(dump.contains(" = div "), dump);
+    }
+}
@@ -0,0 +1,176 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.lsp.LanguageServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LanguageServerTest {
+    private static final String URI = "file:///tmp/test.vpl";
+
+    private PipedOutputStream toServer;
+    private InputStream fromServer;
+    private ExecutorService executor;
+    private Future<Integer> server;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        PipedInputStream serverIn = new PipedInputStream(1 << 16);
+        toServer = new PipedOutputStream(serverIn);
+        PipedOutputStream serverOut = new PipedOutputStream();
+        fromServer = new PipedInputStream(serverOut, 1 << 16);
+        executor = Executors.newSingleThreadExecutor();
+        server = executor.submit(() -> new LanguageServer(serverIn, serverOut, 300).run());
+    }
+
+    @AfterEach
+    public void stopServer() {
+        executor.shutdownNow();
+    }
+
+    private void send(String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        sendRaw("Content-Length: " + body.length + "\r\n\r\n");
+        toServer.write(body);
+        toServer.flush();
+    }
+
+    private void sendRaw(String text) throws IOException {
+        toServer.write(text.getBytes(StandardCharsets.UTF_8));
+        toServer.flush();
+    }
+
+    private String receive() throws IOException {
+        StringBuilder header = new StringBuilder();
+        while (!header.toString().endsWith("\r\n\r\n")) {
+            int b = fromServer.read();
+            if (b < 0) throw new IOException("Server closed its output.");
+            header.append((char) b);
+        }
+        String lengthLine = header.toString().trim();
+        int length = Integer.parseInt(lengthLine.substring("Content-Length:".length()).trim());
+        return new String(fromServer.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static String didChange(int version, int line, int character, int endCharacter, String text) {
+        return "{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didChange\",\"params\":{"
+                + "\"textDocument\":{\"uri\":\"" + URI + "\",\"version\":" + version + "},"
+                + "\"contentChanges\":[{\"range\":{\"start\":{\"line\":" + line + ",\"character\":" + character + "},"
+                + "\"end\":{\"line\":" + line + ",\"character\":" + endCharacter + "}},\"text\":\"" + text + "\"}]}}";
+    }
+
+    @Test
+    public void testDiagnosticsFollowEdits() throws Exception {
+        send("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{}}");
+        String initialized = receive();
+        assertTrue(initialized.contains("\"id\":1"), initialized);
+        assertTrue(initialized.contains("\"textDocumentSync\":2"), initialized);
+
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didOpen\",\"params\":{\"textDocument\":{"
+                + "\"uri\":\"" + URI + "\",\"languageId\":\"vpl\",\"version\":1,"
+                + "\"text\":\"var a of_type Number is 1;\\nprint a\\n\"}}}");
+        String opened = receive();
+        assertTrue(opened.contains("publishDiagnostics"), opened);
+        assertTrue(opened.contains("\"version\":1"), opened);
+        assertTrue(opened.contains("Expect ';' after value."), opened);
+
+        // A burst of edits is analyzed once, for the last version only
+        send(didChange(2, 1, 7, 7, ";"));
+        send(didChange(3, 1, 6, 8, "a;"));
+        send(didChange(4, 0, 24, 25, "2"));
+        String fixed = receive();
+        assertTrue(fixed.contains("\"version\":4"), fixed);
+        assertTrue(fixed.contains("\"diagnostics\":[]"), fixed);
+
+        send(didChange(5, 1, 0, 0, "@"));
+        String broken = receive();
+        assertTrue(broken.contains("\"version\":5"), broken);
+        assertTrue(broken.contains("Unexpected character."), broken);
+        assertTrue(broken.contains("\"range\":{\"start\":{\"line\":1,"), broken);
+
+        send("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"shutdown\"}");
+        assertTrue(receive().contains("\"id\":2"));
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"exit\"}");
+        assertEquals(0, server.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testUnknownRequest() throws Exception {
+        send("{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"textDocument/hover\",\"params\":{}}");
+        String response = receive();
+        assertTrue(response.contains("-32601"), response);
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"exit\"}");
+        assertEquals(1, server.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMalformedMessagesDoNotStopTheServer() throws Exception {
+        // Notifications get no reply, a request gets "invalid params"
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didOpen\"}");
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didOpen\",\"params\":{}}");
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didChange\",\"params\":{\"textDocument\":\"x\"}}");
+        send("{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"textDocument/didOpen\",\"params\":{\"textDocument\":{}}}");
+        String response = receive();
+        assertTrue(response.contains("\"id\":3"), response);
+        assertTrue(response.contains("-32602"), response);
+
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didOpen\",\"params\":{\"textDocument\":{"
+                + "\"uri\":\"" + URI + "\",\"languageId\":\"vpl\",\"version\":1,\"text\":\"print 1;\\n\"}}}");
+        String opened = receive();
+        assertTrue(opened.contains("publishDiagnostics"), opened);
+        assertTrue(opened.contains("\"diagnostics\":[]"), opened);
+
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"exit\"}");
+        assertEquals(1, server.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @Timeout(10)
+    public void testNonObjectMessagesAreInvalidRequests() throws Exception {
+        for (String json : new String[] { "null", "[1, 2]", "42", "\"initialize\"" }) {
+            send(json);
+            String response = receive();
+            assertTrue(response.contains("\"id\":null"), response);
+            assertTrue(response.contains("-32600"), response);
+        }
+
+        send("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{}}");
+        assertTrue(receive().contains("\"id\":1"));
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"exit\"}");
+        assertEquals(1, server.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @Timeout(10)
+    public void testMalformedHeadersDoNotStopTheServer() throws Exception {
+        sendRaw("Content-Length: many\r\n\r\n");
+        String response = receive();
+        assertTrue(response.contains("-32700"), response);
+        assertTrue(response.contains("Invalid Content-Length: many"), response);
+
+        // Without a length the body can't be found; it is skipped up to the next header
+        sendRaw("Content-Type: application/vscode-jsonrpc\r\n\r\n{\"jsonrpc\":\"2.0\",\"id\":9,\"method\":\"shutdown\"}");
+        response = receive();
+        assertTrue(response.contains("-32700"), response);
+        assertTrue(response.contains("without Content-Length"), response);
+
+        send("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{}}");
+        String initialized = receive();
+        assertTrue(initialized.contains("\"id\":1"), initialized);
+        assertTrue(initialized.contains("\"textDocumentSync\":2"), initialized);
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"exit\"}");
+        assertEquals(1, server.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -1,14 +1,30 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.CollectingDiagnostics;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostic;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostics;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.ByteSource;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.StreamingScanner;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.SymbolTable;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenBuffer;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.TokenType;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -56,4 +72,195 @@ public class LexerTest {
             e.printStackTrace();
         }
     }
+
+    @Test
+    public void testErrorsAreRecordedAsDiagnostics() {
+        String source = "var x is 1;\n@\nprint \"open";
+        Scanner scanner = new Scanner(source);
+        scanner.scanTokens();
+        assertEquals("Error at line 2: Unexpected character.\nError at line 3: Unterminated string.\n",
+                scanner.getErrorStrings().toString());
+
+        StreamingScanner streaming = new StreamingScanner(new StringReader(source));
+        while (streaming.nextToken().type != TokenType.EOF) { }
+        assertEquals(scanner.getErrorStrings().toString(), streaming.getErrorStrings().toString());
+
+        // Tokens are only traced when asked for
+        assertTrue(scanner.getDiagnostics().records().stream().allMatch(d -> d.level == Diagnostics.Level.ERROR));
+        Diagnostics tracing = new CollectingDiagnostics(Diagnostics.Level.TRACE);
+        new Scanner("print 1;", tracing).scanTokens();
+        List<Diagnostic> records = tracing.records();
+        assertEquals(3, records.size());
+        assertEquals("print", records.get(0).token);
+    }
+
+    @Test
+    public void testStreamingScannerMatchesScanner() {
+        // A tiny buffer forces lexemes and multi-line strings across refill boundaries
+        String source = sampleInputByteString + "var long of_type String is \"spans\ntwo lines and more than the buffer\";\n";
+        List<String> expected = new ArrayList<>();
+        for (Token token : new Scanner(source).scanTokens()) {
+            expected.add(token.toString());
+        }
+
+        for (int bufferSize : new int[] { 2, 3, 7, 8192 }) {
+            StreamingScanner scanner = new StreamingScanner(new StringReader(source), bufferSize);
+            List<String> actual = new ArrayList<>();
+            Token token;
+            do {
+                token = scanner.nextToken();
+                actual.add(token.toString());
+            } while (token.type != TokenType.EOF);
+            assertEquals(expected, actual, "buffer size " + bufferSize);
+        }
+    }
+
+    @Test
+    public void testTokenBufferListViewMatchesScanner() {
+        List<Token> tokens = new Scanner(sampleInputByteString).scanTokens();
+        List<Token> view = new Scanner(sampleInputByteString).scanTokenBuffer().asList();
+
+        assertEquals(tokens.size(), view.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(tokens.get(i).toString(), view.get(i).toString());
+        }
+    }
+
+    @Test
+    public void testByteSourceMatchesStringSource() throws IOException {
+        // Non-ASCII text inside a string literal must come out decoded
+        String source = sampleInputByteString + "print \"Grüße, 世界\";\n";
+        List<Token> expected = new Scanner(source).scanTokens();
+
+        ByteBuffer bytes = ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8));
+        List<Token> fromBytes = new Scanner(new ByteSource(bytes)).scanTokens();
+        assertEquals(expected.toString(), fromBytes.toString());
+
+        List<Token> mapped = new Scanner(ByteSource.map(Paths.get(sampleInputFile))).scanTokenBuffer().asList();
+        assertEquals(new Scanner(sampleInputByteString).scanTokens().toString(), mapped.toString());
+    }
+
+    private static List<Integer> symbols(List<Token> tokens) {
+        List<Integer> symbols = new ArrayList<>();
+        for (Token token : tokens) symbols.add(token.symbol);
+        return symbols;
+    }
+
+    @Test
+    public void testNamesAndStringsAreInterned() {
+        String source = "var number1 of_type Number is 1;\nprint \"a\" + number1;\nnumber1 is number2 + number1;\nprint \"a\";";
+        List<Token> tokens = new Scanner(source).scanTokens();
+        Token declared = tokens.get(1);
+        Token used = tokens.get(10);
+        assertEquals("number1", used.lexeme);
+        assertEquals(declared.symbol, used.symbol);
+        assertSame(declared.lexeme, used.lexeme);
+        assertNotEquals(declared.symbol, tokens.get(14).symbol);
+        assertSame(tokens.get(8).literal, tokens.get(tokens.size() - 3).literal);
+        assertEquals(Token.NO_SYMBOL, tokens.get(0).symbol);
+
+        // Every scanner numbers symbols in order of first appearance
+        assertEquals(symbols(tokens), symbols(new Scanner(source).scanTokenBuffer().asList()));
+        List<Token> streamed = new ArrayList<>();
+        StreamingScanner scanner = new StreamingScanner(new StringReader(source), 4);
+        for (Token token = scanner.nextToken(); token.type != TokenType.EOF; token = scanner.nextToken()) {
+            streamed.add(token);
+        }
+        assertEquals(symbols(tokens).subList(0, tokens.size() - 1), symbols(streamed));
+    }
+
+    @Test
+    public void testKeywordsMatchInFull() {
+        String source = "xf_type of_type mess_than less_than";
+        List<Token> tokens = new Scanner(source).scanTokens();
+        List<Token> buffered = new Scanner(source).scanTokenBuffer().asList();
+        TokenType[] expected = { TokenType.IDENTIFIER, TokenType.TYPE_DEF, TokenType.IDENTIFIER, TokenType.LESS, TokenType.EOF };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], tokens.get(i).type, tokens.get(i).toString());
+            assertEquals(tokens.get(i).toString(), buffered.get(i).toString());
+        }
+        assertEquals("xf_type", buffered.get(0).lexeme);
+        assertEquals("mess_than", buffered.get(2).lexeme);
+    }
+
+    private static String errors(TokenBuffer buffer) {
+        StringBuilder errors = new StringBuilder();
+        for (int i = 0; i < buffer.errorCount(); i++) {
+            errors.append(buffer.errorOffset(i)).append(' ').append(buffer.errorLine(i)).append(' ')
+                    .append(buffer.errorMessage(i)).append('\n');
+        }
+        return errors.toString();
+    }
+
+    private static void assertParallelScanMatches(CharSequence source, ForkJoinPool pool) {
+        Scanner sequential = new Scanner(source);
+        TokenBuffer expected = sequential.scanTokenBuffer();
+        Scanner parallel = new Scanner(source);
+        TokenBuffer actual = parallel.scanTokenBufferParallel(pool);
+
+        assertEquals(expected.asList().toString(), actual.asList().toString());
+        assertEquals(symbols(expected.asList()), symbols(actual.asList()));
+        assertEquals(errors(expected), errors(actual));
+        assertEquals(sequential.getErrorStrings().toString(), parallel.getErrorStrings().toString());
+        assertEquals(sequential.getSymbols().size(), parallel.getSymbols().size());
+    }
+
+    @Test
+    public void testParallelScanMatchesScanner() {
+        // Long enough to be split, with strings that run across one or several chunk boundaries
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; source.length() < 600_000; i++) {
+            source.append(sampleInputByteString);
+            source.append("var name").append(i).append(" of_type String is \"line\n").append(i).append("\";\n");
+            source.append("# a comment with a quote \" in it\n@\n");
+            if (i % 40 == 7) source.append("print \"").append("long\n".repeat(20_000)).append("\";\n");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertParallelScanMatches(source.toString(), pool);
+            // A string still open at the end of the file
+            assertParallelScanMatches(source + "print \"open\n".repeat(100), pool);
+            // Short enough to be scanned in one piece
+            assertParallelScanMatches(sampleInputByteString, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testByteSourceInternsNonAsciiText() {
+        String source = "var greeting of_type String is \"Grüße, 世界\";\nprint \"Grüße, 世界\" + greeting;\n";
+        Scanner scanner = new Scanner(new ByteSource(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8))));
+        List<Token> tokens = scanner.scanTokenBuffer().asList();
+        assertEquals("greeting", tokens.get(1).lexeme);
+        assertEquals(tokens.get(1).symbol, tokens.get(tokens.size() - 3).symbol);
+        assertSame(tokens.get(5).literal, tokens.get(8).literal);
+        assertEquals("Grüße, 世界", tokens.get(8).literal);
+        assertEquals(2, scanner.getSymbols().size());
+        assertEquals(symbols(new Scanner(source).scanTokens()), symbols(tokens));
+
+        // Chunks of a mapped file are interned into one table when they are joined
+        StringBuilder longer = new StringBuilder();
+        while (longer.length() < 300_000) longer.append(source);
+        ByteSource bytes = new ByteSource(ByteBuffer.wrap(longer.toString().getBytes(StandardCharsets.UTF_8)));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertParallelScanMatches(bytes, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSymbolTableGrows() {
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, symbols.intern("name" + i));
+        }
+        String text = "x name1234 y";
+        assertEquals(1234, symbols.intern(text, 2, 10));
+        assertEquals("name9999", symbols.name(symbols.intern("name9999")));
+        assertEquals(10_000, symbols.size());
+    }
 }
@@ -0,0 +1,91 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.optimize.Optimizer;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+public class OptimizerTest {
+
+    private static List<Stmt> parse(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        assertFalse(resolver.hadError(), "resolver reported errors");
+        return statements;
+    }
+
+    private static List<Stmt> optimize(String source) {
+        return new Optimizer().optimize(parse(source));
+    }
+
+    private static String run(List<Stmt> statements) {
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Interpreter interpreter = new Interpreter(new PrintStream(buffer, true));
+        interpreter.interpret(statements, resolver.globalSlots());
+        return buffer.toString() + (interpreter.hadRuntimeError() ? "<runtime error>" : "");
+    }
+
+    private static Object printedLiteral(Stmt stmt) {
+        return ((Expr.Literal) ((Stmt.Print) stmt).expression).value;
+    }
+
+    @Test
+    public void testConstantsAreFolded() {
+        List<Stmt> statements = optimize("print (1 + 2) * 3;\nprint \"n=\" + 4;\nprint NOT (1 less_than 2) OR \"x\";\n");
+        assertEquals(9.0, printedLiteral(statements.get(0)));
+        assertEquals("n=4", printedLiteral(statements.get(1)));
+        assertEquals("x", printedLiteral(statements.get(2)));
+    }
+
+    @Test
+    public void testErrorsAreNotFolded() {
+        List<Stmt> statements = optimize("print -\"a\";\nprint 1 - true;\n");
+        assertInstanceOf(Expr.Unary.class, ((Stmt.Print) statements.get(0)).expression);
+        assertInstanceOf(Expr.Binary.class, ((Stmt.Print) statements.get(1)).expression);
+        assertEquals("<runtime error>", run(statements));
+    }
+
+    @Test
+    public void testDeadBranchesAndLoopsAreRemoved() {
+        List<Stmt> statements = optimize("if (1 equals 2) { print 1; } else { print 2; }\n"
+                + "if (false) print 3;\nwhile (1 > 2) print 4;\n1 + 2;\n");
+        assertEquals(1, statements.size());
+        Stmt.Block taken = (Stmt.Block) statements.get(0);
+        assertEquals(2.0, printedLiteral(taken.statements.get(0)));
+    }
+
+    @Test
+    public void testUnassignedConstantsArePropagated() {
+        List<Stmt> statements = optimize("var a of_type Number is 2 * 3;\nvar b of_type Number is 1;\n"
+                + "print a + 1;\nprint b;\nb is b + 1;\n");
+        assertEquals(7.0, printedLiteral(statements.get(2)));
+        assertInstanceOf(Expr.Variable.class, ((Stmt.Print) statements.get(3)).expression);
+        assertEquals("7\n1\n", run(statements));
+    }
+
+    @Test
+    public void testOptimizedProgramsBehaveTheSame() throws IOException {
+        String sample = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-input.vpl")));
+        assertEquals(run(parse(sample)), run(new Optimizer().optimize(parse(sample))));
+        for (long seed = 0; seed < 30; seed++) {
+            String source = new ProgramGenerator(seed, 3).generate(40);
+            assertEquals(run(parse(source)), run(new Optimizer().optimize(parse(source))), source);
+        }
+    }
+}
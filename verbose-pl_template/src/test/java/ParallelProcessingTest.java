@@ -0,0 +1,98 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.VerbosePL;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelProcessingTest {
+
+    @TempDir
+    Path directory;
+
+    // Runs VerbosePL.main and returns what it printed to stdout, without the timings
+    private static String stdout(List<String> args) throws IOException, InterruptedException {
+        return stdout(args, new ByteArrayOutputStream());
+    }
+
+    // Same, with stderr going to err
+    private static String stdout(List<String> args, ByteArrayOutputStream err) throws IOException, InterruptedException {
+        PrintStream realOut = System.out;
+        PrintStream realErr = System.err;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buffer, true));
+        System.setErr(new PrintStream(err, true));
+        try {
+            VerbosePL.main(args.toArray(new String[0]));
+        } finally {
+            System.setOut(realOut);
+            System.setErr(realErr);
+        }
+        return buffer.toString().replace("\r", "").replaceAll("(?m)^ -+ Finished file .* in \\d+ ms -+ *\n", "");
+    }
+
+    private String write(String name, String source) throws IOException {
+        Path path = directory.resolve(name);
+        Files.writeString(path, source);
+        return path.toString();
+    }
+
+    @Test
+    public void testParallelOutputKeepsArgumentOrder() throws Exception {
+        // The first file takes longest, so with several jobs it finishes last
+        List<String> files = new ArrayList<>();
+        files.add(write("slow.vpl", "var i of_type Number is 0;\nwhile (i less_than 300000) { i is i + 1; }\n"
+                + "print \"slow\";\nprint i;\n"));
+        files.add(write("failing.vpl", "var n of_type Number;\nprint \"failing\";\nprint n - 1;\nprint \"unreached\";\n"));
+        for (int i = 0; i < 4; i++) {
+            files.add(write("fast" + i + ".vpl", "print \"fast " + i + "\";\n"));
+        }
+
+        List<String> sequentialArgs = new ArrayList<>(files);
+        sequentialArgs.add(0, "--jobs=1");
+        String sequential = stdout(sequentialArgs);
+        int previous = -1;
+        for (String file : files) {
+            int header = sequential.indexOf("Processing file " + file + " ");
+            assertTrue(header > previous, sequential);
+            previous = header;
+        }
+        assertTrue(sequential.contains("slow\n300000\n"), sequential);
+        assertFalse(sequential.contains("unreached"), sequential);
+
+        List<String> parallelArgs = new ArrayList<>(files);
+        parallelArgs.add(0, "--jobs=4");
+        for (int run = 0; run < 3; run++) {
+            assertEquals(sequential, stdout(parallelArgs));
+        }
+    }
+
+    @Test
+    public void testUnreadableFileIsReportedInEveryMode() throws Exception {
+        List<String> files = List.of(write("before.vpl", "print \"before\";\n"),
+                directory.resolve("missing.vpl").toString(), write("after.vpl", "print \"after\";\n"));
+
+        String sequential = null;
+        for (String jobs : new String[] { "--jobs=1", "--jobs=3" }) {
+            List<String> args = new ArrayList<>(files);
+            args.add(0, jobs);
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            String output = stdout(args, err);
+            assertTrue(output.contains("before\n"), jobs + ": " + output);
+            assertTrue(output.contains("after\n"), jobs + ": " + output);
+            assertTrue(err.toString().contains("Error processing " + files.get(1) + ": java.nio.file.NoSuchFileException"),
+                    jobs + ": " + err);
+            if (sequential == null) sequential = output;
+            else assertEquals(sequential, output);
+        }
+    }
+}
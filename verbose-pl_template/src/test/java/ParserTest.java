@@ -1,17 +1,27 @@
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.ASTPrinter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.diagnostics.Diagnostic;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.StreamingScanner;
 import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Token;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -74,4 +84,125 @@ public class ParserTest {
             e.printStackTrace();
         }
     }
+
+    @Test
+    public void testStreamingParserMatchesListParser() {
+        List<Stmt> fromList = new Parser(new Scanner(sampleInputString).scanTokens()).parse();
+        List<Stmt> fromStream = new Parser(new StreamingScanner(new StringReader(sampleInputString)))
+                .stream().collect(Collectors.toList());
+
+        assertEquals(getASTString(fromList), getASTString(fromStream));
+    }
+
+    @Test
+    public void testIteratorYieldsStatementsBeforeInputIsExhausted() {
+        String source = "print 1; print 2; print 3;";
+        int[] pulled = { 0 };
+        StreamingScanner scanner = new StreamingScanner(new StringReader(source));
+        Iterator<Stmt> statements = new Parser(() -> {
+            pulled[0]++;
+            return scanner.nextToken();
+        }).iterator();
+
+        assertTrue(statements.hasNext());
+        statements.next();
+        // Only "print 1 ;" has been read so far
+        assertEquals(3, pulled[0]);
+    }
+
+    @Test
+    public void testPrinterWritesIntoAppendable() throws IOException {
+        List<Stmt> statements = new Parser(new Scanner(sampleInputString).scanTokens()).parse();
+        StringWriter out = new StringWriter();
+        new ASTPrinter().print(statements, out);
+
+        assertEquals(sampleOutputExpected.replace("\r", ""), out.toString());
+    }
+
+    @Test
+    public void testParserRunsOnTokenBuffer() {
+        List<Stmt> fromList = new Parser(new Scanner(sampleInputString).scanTokens()).parse();
+        List<Stmt> fromBuffer = new Parser(new Scanner(sampleInputString).scanTokenBuffer()).parse();
+
+        assertEquals(getASTString(fromList), getASTString(fromBuffer));
+    }
+
+    // Fully parenthesized form of an expression tree
+    private static String shape(Expr expr) {
+        if (expr instanceof Expr.Binary binary) {
+            return "(" + binary.operator.lexeme + " " + shape(binary.left) + " " + shape(binary.right) + ")";
+        } else if (expr instanceof Expr.Logical logical) {
+            return "(" + logical.operator.lexeme + " " + shape(logical.left) + " " + shape(logical.right) + ")";
+        } else if (expr instanceof Expr.Unary unary) {
+            return "(" + unary.operator.lexeme + " " + shape(unary.right) + ")";
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return "(group " + shape(grouping.expression) + ")";
+        } else if (expr instanceof Expr.Assignment assignment) {
+            return "(is " + assignment.name.lexeme + " " + shape(assignment.value) + ")";
+        } else if (expr instanceof Expr.Variable variable) {
+            return variable.name.lexeme;
+        }
+        return String.valueOf(((Expr.Literal) expr).value);
+    }
+
+    private static Expr parseExpression(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source + ";").scanTokens()).parse();
+        return ((Stmt.Expression) statements.get(0)).expression;
+    }
+
+    @Test
+    public void testOperatorPrecedenceAndAssociativity() {
+        assertEquals("(is x (is y (OR (equals (less_than (- (+ 1.0 (* 2.0 3.0)) 4.0) 5.0) true) (and false (NOT (- z))))))",
+                shape(parseExpression("x is y is 1 + 2 * 3 - 4 less_than 5 equals true OR false and NOT -z")));
+        assertEquals("(/ (* (group (- a b)) c) (- (- d)))", shape(parseExpression("(a - b) * c / --d")));
+        assertEquals("(OR (OR a (and (and b c) d)) e)", shape(parseExpression("a OR b and c and d OR e")));
+    }
+
+    @Test
+    public void testLongOperatorChainsParse() {
+        int terms = Parser.MAX_EXPRESSION_DEPTH;
+        Parser parser = new Parser(new Scanner("1" + " + 1".repeat(terms - 1) + ";").scanTokens());
+        Expr expr = ((Stmt.Expression) parser.parse().get(0)).expression;
+        assertFalse(parser.hadError());
+
+        int depth = 0;
+        while (expr instanceof Expr.Binary binary) {
+            assertInstanceOf(Expr.Literal.class, binary.right);
+            expr = binary.left;
+            depth++;
+        }
+        assertEquals(terms - 1, depth);
+
+        // Deeper trees are rejected without exhausting the stack, and parsing carries on
+        parser = new Parser(new Scanner("print 1" + " + 1".repeat(99_999) + ";\nprint "
+                + "-".repeat(100_000) + "1;\nprint 2;").scanTokens());
+        List<Stmt> statements = parser.parse();
+        assertTrue(parser.hadError());
+        assertEquals(2, parser.getDiagnostics().records().stream()
+                .filter((Diagnostic diagnostic) -> diagnostic.message.startsWith("Expression is too deep"))
+                .count());
+        assertEquals(1, statements.size());
+    }
+
+    @Test
+    public void testDeepNestingIsAParseError() {
+        String allowed = "(".repeat(Parser.MAX_NESTING - 1) + "1" + ")".repeat(Parser.MAX_NESTING - 1);
+        Parser parser = new Parser(new Scanner("print " + allowed + ";").scanTokens());
+        parser.parse();
+        assertFalse(parser.hadError());
+
+        String deep = "(".repeat(100_000) + "1" + ")".repeat(100_000);
+        parser = new Parser(new Scanner("print " + deep + ";\nprint 2;").scanTokens());
+        List<Stmt> statements = parser.parse();
+        assertTrue(parser.hadError());
+        assertTrue(parser.getDiagnostics().records().stream()
+                .map((Diagnostic diagnostic) -> diagnostic.message)
+                .anyMatch(message -> message.startsWith("Nesting is too deep")));
+        // Parsing carries on after the statement that nests too deeply
+        assertInstanceOf(Stmt.Print.class, statements.get(statements.size() - 1));
+
+        parser = new Parser(new Scanner("{".repeat(100_000) + "}".repeat(100_000)).scanTokens());
+        parser.parse();
+        assertTrue(parser.hadError());
+    }
 }
@@ -0,0 +1,186 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Emits random but valid VerbosePL: every variable is declared with an initializer before use,
+ * expressions are well typed, and every while loop counts a private counter up to a small bound,
+ * so generated programs also resolve and run. The same seed always yields the same program.
+ */
+public class ProgramGenerator {
+    private static final String[] TYPES = { "Number", "Bool", "String" };
+    private static final int MAX_EXPRESSION_DEPTH = 3;
+    private static final int LOOP_BOUND = 3;
+
+    private final Random random;
+    private final int maxDepth;
+    private final StringBuilder out = new StringBuilder();
+    // Variables visible at the current point, innermost scope last
+    private final Deque<List<Variable>> scopes = new ArrayDeque<>();
+    private int nextName = 0;
+
+    private record Variable(String name, String type, boolean assignable) {}
+
+    public ProgramGenerator(long seed, int maxDepth) {
+        this.random = new Random(seed);
+        this.maxDepth = maxDepth;
+    }
+
+    /** A program of the given number of top-level statements. */
+    public String generate(int statements) {
+        out.setLength(0);
+        scopes.clear();
+        scopes.push(new ArrayList<>());
+        for (int i = 0; i < statements; i++) {
+            statement(0);
+        }
+        return out.toString();
+    }
+
+    private void statement(int depth) {
+        int kinds = depth < maxDepth ? 7 : 3;
+        switch (random.nextInt(kinds)) {
+            case 0 -> varDeclaration(depth);
+            case 1 -> assignment(depth);
+            case 2 -> {
+                indent(depth).append("print ").append(expression(randomType(), 0)).append(";\n");
+            }
+            case 3 -> block(depth);
+            case 4 -> ifStatement(depth);
+            case 5 -> whileLoop(depth);
+            default -> varDeclaration(depth);
+        }
+    }
+
+    private void varDeclaration(int depth) {
+        String type = randomType();
+        String initializer = expression(type, 0);
+        String name = "v" + nextName++;
+        indent(depth).append("var ").append(name).append(" of_type ").append(type)
+                .append(" is ").append(initializer).append(";");
+        if (random.nextInt(4) == 0) out.append(" # ").append(type.toLowerCase());
+        out.append('\n');
+        scopes.peek().add(new Variable(name, type, true));
+    }
+
+    private void assignment(int depth) {
+        Variable target = randomVariable(null, true);
+        if (target == null) {
+            varDeclaration(depth);
+            return;
+        }
+        indent(depth).append(target.name).append(" is ").append(expression(target.type, 0)).append(";\n");
+    }
+
+    private void block(int depth) {
+        indent(depth).append("{\n");
+        body(depth + 1);
+        indent(depth).append("}\n");
+    }
+
+    private void ifStatement(int depth) {
+        indent(depth).append("if (").append(expression("Bool", 0)).append(") {\n");
+        body(depth + 1);
+        if (random.nextBoolean()) {
+            indent(depth).append("} else {\n");
+            body(depth + 1);
+        }
+        indent(depth).append("}\n");
+    }
+
+    // { var c of_type Number is 0; while (c less_than BOUND) { ...; c is c + 1; } }
+    private void whileLoop(int depth) {
+        String counter = "c" + nextName++;
+        indent(depth).append("{\n");
+        scopes.push(new ArrayList<>());
+        indent(depth + 1).append("var ").append(counter).append(" of_type Number is 0;\n");
+        scopes.peek().add(new Variable(counter, "Number", false));
+        indent(depth + 1).append("while (").append(counter).append(" less_than ").append(LOOP_BOUND).append(") {\n");
+        body(depth + 2);
+        indent(depth + 2).append(counter).append(" is ").append(counter).append(" + 1;\n");
+        indent(depth + 1).append("}\n");
+        scopes.pop();
+        indent(depth).append("}\n");
+    }
+
+    private void body(int depth) {
+        scopes.push(new ArrayList<>());
+        int statements = 1 + random.nextInt(3);
+        for (int i = 0; i < statements; i++) {
+            statement(depth);
+        }
+        scopes.pop();
+    }
+
+    private String expression(String type, int depth) {
+        boolean leaf = depth >= MAX_EXPRESSION_DEPTH || random.nextInt(3) == 0;
+        if (leaf) {
+            Variable variable = random.nextBoolean() ? randomVariable(type, false) : null;
+            return variable != null ? variable.name : literal(type);
+        }
+
+        switch (type) {
+            case "Number":
+                switch (random.nextInt(6)) {
+                    case 0: return expression("Number", depth + 1) + " + " + expression("Number", depth + 1);
+                    case 1: return expression("Number", depth + 1) + " - " + expression("Number", depth + 1);
+                    case 2: return expression("Number", depth + 1) + " * " + expression("Number", depth + 1);
+                    // Divide by non-zero literals only
+                    case 3: return expression("Number", depth + 1) + " / " + (1 + random.nextInt(9));
+                    case 4: return "-" + expression("Number", depth + 1);
+                    default: return "(" + expression("Number", depth + 1) + ")";
+                }
+            case "Bool":
+                switch (random.nextInt(7)) {
+                    // NOT binds tighter than comparisons, so its operand is always grouped
+                    case 0: return "NOT (" + expression("Bool", depth + 1) + ")";
+                    case 1: return expression("Number", depth + 1) + " less_than " + expression("Number", depth + 1);
+                    case 2: return expression("Number", depth + 1) + " > " + expression("Number", depth + 1);
+                    case 3: return expression("Number", depth + 1) + " equals " + expression("Number", depth + 1);
+                    case 4: return expression("Bool", depth + 1) + " OR " + expression("Bool", depth + 1);
+                    case 5: return expression("Bool", depth + 1) + " and " + expression("Bool", depth + 1);
+                    default: return "(" + expression("Bool", depth + 1) + ")";
+                }
+            default:
+                // At most one variable per string expression, so strings grow linearly in loops
+                return literal("String") + " + " + expression("String", depth + 1);
+        }
+    }
+
+    private String literal(String type) {
+        switch (type) {
+            case "Number":
+                return random.nextInt(4) == 0
+                        ? random.nextInt(100) + "." + random.nextInt(10)
+                        : Integer.toString(random.nextInt(1000));
+            case "Bool":
+                return random.nextBoolean() ? "true" : "false";
+            default:
+                return "\"s" + random.nextInt(1000) + "\"";
+        }
+    }
+
+    // A uniformly chosen visible variable of the given type (any type when null), or null if none
+    private Variable randomVariable(String type, boolean assignableOnly) {
+        List<Variable> candidates = new ArrayList<>();
+        for (List<Variable> scope : scopes) {
+            for (Variable variable : scope) {
+                if ((type == null || variable.type.equals(type)) && (!assignableOnly || variable.assignable)) {
+                    candidates.add(variable);
+                }
+            }
+        }
+        return candidates.isEmpty() ? null : candidates.get(random.nextInt(candidates.size()));
+    }
+
+    private String randomType() {
+        return TYPES[random.nextInt(TYPES.length)];
+    }
+
+    private StringBuilder indent(int depth) {
+        for (int i = 0; i < depth; i++) out.append('\t');
+        return out;
+    }
+}
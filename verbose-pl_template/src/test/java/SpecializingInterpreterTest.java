@@ -0,0 +1,86 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.specialize.SpecializingInterpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class SpecializingInterpreterTest {
+
+    private List<Stmt> statements;
+    private SpecializingInterpreter interpreter;
+
+    private static String run(Interpreter interpreter, ByteArrayOutputStream buffer, List<Stmt> statements) {
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        assertFalse(resolver.hadError(), "resolver reported errors");
+        interpreter.interpret(statements, resolver.globalSlots());
+        return buffer.toString() + (interpreter.hadRuntimeError() ? "<runtime error>" : "");
+    }
+
+    private String specialized(String source) {
+        statements = new Parser(new Scanner(source).scanTokens()).parse();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        interpreter = new SpecializingInterpreter(new PrintStream(buffer, true));
+        return run(interpreter, buffer, statements);
+    }
+
+    private static String interpreted(String source) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        return run(new Interpreter(new PrintStream(buffer, true)), buffer, new Parser(new Scanner(source).scanTokens()).parse());
+    }
+
+    private static Expr expression(Stmt stmt) {
+        if (stmt instanceof Stmt.Print print) return print.expression;
+        return ((Stmt.Expression) stmt).expression;
+    }
+
+    @Test
+    public void testSampleProgramOutput() throws IOException {
+        String sample = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-input.vpl")));
+        String expected = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-run-output-expected.txt")));
+        assertEquals(List.of(expected.split("\\R")), List.of(specialized(sample).split("\\R")));
+    }
+
+    @Test
+    public void testNodesSpecializeToWhatTheySee() {
+        specialized("var a of_type Number is 1;\nwhile (a less_than 5) a is a + 1;\n"
+                + "var s of_type String is \"x\";\nprint s + a;\n{ var b of_type Number is 2; print -a * b; }\n");
+        Stmt.While loop = (Stmt.While) statements.get(1);
+        assertEquals("NumberBinary(LocalRead, NumberLiteral)", interpreter.specialization(loop.condition));
+        assertEquals("AssignNode(NumberBinary(LocalRead, NumberLiteral))", interpreter.specialization(expression(loop.body)));
+        assertEquals("StringConcat(LocalRead, LocalRead)", interpreter.specialization(expression(statements.get(3))));
+        Stmt.Block block = (Stmt.Block) statements.get(4);
+        assertEquals("NumberBinary(NumberNegate(FrameRead), LocalRead)", interpreter.specialization(expression(block.statements.get(1))));
+    }
+
+    @Test
+    public void testFailedAssumptionsDeoptimize() {
+        String output = specialized("var v of_type Number is 1;\nvar i of_type Number is 0;\n"
+                + "while (i less_than 3) { print v + 1; print -v; v is \"s\"; i is i + 1; }\n");
+        assertEquals("2\n-1\ns1\n<runtime error>", output.replace("\r", ""));
+        Stmt.Block body = (Stmt.Block) ((Stmt.While) statements.get(2)).body;
+        assertEquals("GenericBinary(LocalRead, NumberLiteral)", interpreter.specialization(expression(body.statements.get(0))));
+        assertEquals("GenericNegate(LocalRead)", interpreter.specialization(expression(body.statements.get(1))));
+    }
+
+    @Test
+    public void testGeneratedProgramsBehaveTheSame() {
+        for (long seed = 0; seed < 30; seed++) {
+            String source = new ProgramGenerator(seed, 3).generate(40);
+            assertEquals(interpreted(source), specialized(source), source);
+        }
+    }
+}
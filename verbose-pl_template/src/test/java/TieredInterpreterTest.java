@@ -0,0 +1,66 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.jit.TieredInterpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class TieredInterpreterTest {
+
+    private static final String LOOPS =
+            "var i of_type Number is 0;\n"
+            + "var sum of_type Number is 0;\n"
+            + "var flag of_type Bool is false;\n"
+            + "var log of_type String is \"\";\n"
+            + "while (i less_than 50) {\n"
+            + "  var sq of_type Number is i * i;\n"
+            + "  if (sq / 2 less_than 100 OR i equals 49) { sum is sum + sq; flag is NOT flag; }\n"
+            + "  var j of_type Number is 0;\n"
+            + "  while (j less_than 3) { j is j + 1; }\n"
+            + "  if (i equals 10) { log is log + i + \":\" + flag; print log; }\n"
+            + "  i is i + 1;\n"
+            + "}\n"
+            + "print sum; print i; print flag; print log;\n"
+            // nil in a captured Number variable fails the entry guard and stays interpreted
+            + "var missing of_type Number;\n"
+            + "var k of_type Number is 0;\n"
+            + "while (k less_than 5) { if (k equals 3) { missing is k; } k is k + 1; }\n"
+            + "print missing;\n";
+
+    private String run(String source, boolean tiered) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        assertFalse(resolver.hadError(), "resolver reported errors");
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true);
+        Interpreter interpreter = tiered ? new TieredInterpreter(out, 1) : new Interpreter(out);
+        interpreter.interpret(statements, resolver.globalSlots());
+        assertFalse(interpreter.hadRuntimeError(), "interpreter reported a runtime error");
+        return buffer.toString();
+    }
+
+    @Test
+    public void testCompiledLoopsMatchInterpreter() {
+        assertEquals(run(LOOPS, false), run(LOOPS, true));
+    }
+
+    @Test
+    public void testSampleProgramOutput() throws IOException {
+        String source = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-input.vpl")));
+        String expected = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-run-output-expected.txt")));
+        assertEquals(List.of(expected.split("\\R")), List.of(run(source, true).split("\\R")));
+    }
+}
@@ -0,0 +1,145 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Type;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.visitors.Expr;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Interpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.TypeChecker;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.jit.TieredInterpreter;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TypeCheckerTest {
+
+    private static List<Stmt> resolve(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        assertFalse(resolver.hadError(), "resolver reported errors");
+        return statements;
+    }
+
+    private static boolean typeErrors(String source) {
+        TypeChecker checker = new TypeChecker();
+        checker.check(resolve(source));
+        return checker.hadError();
+    }
+
+    private static List<Stmt> typed(String source) {
+        List<Stmt> statements = resolve(source);
+        TypeChecker checker = new TypeChecker();
+        checker.check(statements);
+        assertFalse(checker.hadError(), "type checker reported errors");
+        return statements;
+    }
+
+    private static String run(Interpreter interpreter, ByteArrayOutputStream buffer, List<Stmt> statements) {
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        interpreter.interpret(statements, resolver.globalSlots());
+        return buffer.toString() + (interpreter.hadRuntimeError() ? "<runtime error>" : "");
+    }
+
+    private static String interpret(List<Stmt> statements) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        return run(new Interpreter(new PrintStream(buffer, true)), buffer, statements);
+    }
+
+    private static String tiered(List<Stmt> statements) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        return run(new TieredInterpreter(new PrintStream(buffer, true), 2), buffer, statements);
+    }
+
+    private static Stmt.Print print(List<Stmt> statements, int index) {
+        return (Stmt.Print) statements.get(index);
+    }
+
+    @Test
+    public void testSampleComparesNumberWithString() throws IOException {
+        String sample = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-input.vpl")));
+        assertTrue(typeErrors(sample));
+        assertFalse(typeErrors(sample.replace("number1 equals someName", "number1 equals number2")));
+    }
+
+    @Test
+    public void testMismatchesAreRejected() {
+        assertTrue(typeErrors("var a of_type Number is \"1\";"));
+        assertTrue(typeErrors("var a of_type Number is 1;\na is true;"));
+        assertTrue(typeErrors("if (1) print 1;"));
+        assertTrue(typeErrors("while (\"x\") print 1;"));
+        assertTrue(typeErrors("print 1 + true;"));
+        assertTrue(typeErrors("print 1 less_than \"2\";"));
+        assertTrue(typeErrors("print NOT 1;"));
+        assertTrue(typeErrors("print -true;"));
+        assertTrue(typeErrors("print true OR 1;"));
+        assertFalse(typeErrors("print \"n=\" + 1 + true;"));
+    }
+
+    @Test
+    public void testExpressionsAreAnnotated() {
+        List<Stmt> statements = typed("var a of_type Number is 1;\nvar s of_type String;\n"
+                + "print a + 2 * a;\nprint a less_than 2 and true;\nprint s;\ns is \"x\";\nprint s + a;\n");
+        assertEquals(Type.NUMBER, print(statements, 2).expression.type);
+        assertEquals(Type.BOOL, print(statements, 3).expression.type);
+        assertEquals(Type.ANY, print(statements, 4).expression.type);
+        assertEquals(Type.STRING, print(statements, 6).expression.type);
+    }
+
+    @Test
+    public void testOnlyDefiniteAssignmentsGiveTheDeclaredType() {
+        List<Stmt> statements = typed("var a of_type Number;\nvar b of_type Number;\n"
+                + "if (true) { a is 1; b is 1; } else { a is 2; }\nprint a;\nprint b;\n"
+                + "var c of_type Number;\nwhile (false) c is 1;\nprint c;\n");
+        assertEquals(Type.NUMBER, print(statements, 3).expression.type);
+        assertEquals(Type.ANY, print(statements, 4).expression.type);
+        assertEquals(Type.ANY, print(statements, 7).expression.type);
+    }
+
+    @Test
+    public void testTypedEvaluationMatchesDynamicEvaluation() {
+        String source = "var z of_type Number is 0;\nprint z equals -z;\nprint z / z equals z / z;\n"
+                + "print NOT (1 > 2) and 3 <= 3;\nprint -(1 + 2) * 4;\nprint \"v\" + 1 / 4;\n"
+                + "var u of_type Number;\nprint u equals u;\n";
+        assertEquals(interpret(resolve(source)), interpret(typed(source)));
+        for (long seed = 0; seed < 30; seed++) {
+            String generated = new ProgramGenerator(seed, 3).generate(40);
+            String expected = interpret(resolve(generated));
+            assertEquals(expected, interpret(typed(generated)), generated);
+            assertEquals(expected, tiered(typed(generated)), generated);
+        }
+    }
+
+    @Test
+    public void testLoopBodiesSeeAssignmentsOfEarlierIterations() {
+        // x is nil from the second iteration on, so x + 1 must keep its runtime check
+        String source = "var y of_type Number;\nvar x of_type Number is 1;\nvar i of_type Number is 0;\n"
+                + "while (i less_than 2) { print x + 1; x is y; i is i + 1; }\n";
+        List<Stmt> statements = typed(source);
+        Stmt.Block body = (Stmt.Block) ((Stmt.While) statements.get(3)).body;
+        assertEquals(Type.ANY, ((Stmt.Print) body.statements.get(0)).expression.type);
+        assertEquals("2\n<runtime error>", interpret(statements).replace("\r", ""));
+        assertEquals("2\n<runtime error>", tiered(typed(source)).replace("\r", ""));
+
+        // An inner loop's condition sees what the outer body assigns after it
+        statements = typed("var x of_type Number is 1;\nvar n of_type Number;\nvar i of_type Number is 0;\n"
+                + "while (x less_than 3) { while (i less_than 2) { i is i + 1; } i is n; x is x + 1; }\n"
+                + "print i;\nprint x;\n");
+        Stmt.While outer = (Stmt.While) statements.get(3);
+        Stmt.While inner = (Stmt.While) ((Stmt.Block) outer.body).statements.get(0);
+        assertEquals(Type.ANY, ((Expr.Binary) inner.condition).left.type);
+        assertEquals(Type.NUMBER, ((Expr.Binary) outer.condition).left.type);
+        assertEquals(Type.ANY, print(statements, 4).expression.type);
+        assertEquals(Type.NUMBER, print(statements, 5).expression.type);
+    }
+}
@@ -0,0 +1,84 @@
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.ast.Stmt;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode.Chunk;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode.Compiler;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.bytecode.VM;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.interpret.Resolver;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.parse.Parser;
+import dk.sdu.imada.teaching.compiler.fs24.verbosepl.scan.Scanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class VMTest {
+    private static String sampleInputString;
+    private static String sampleOutputExpected;
+
+    @BeforeAll
+    public static void prepareFiles() {
+        try {
+            sampleInputString = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-input.vpl")));
+            sampleOutputExpected = new String(Files.readAllBytes(Paths.get("src/test/resources/sample-run-output-expected.txt")));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Chunk compile(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        assertFalse(resolver.hadError(), "resolver reported errors");
+        return new Compiler().compile(statements, resolver.globalSlots());
+    }
+
+    private String run(Chunk chunk) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        VM vm = new VM(new PrintStream(buffer, true));
+        vm.interpret(chunk);
+        assertFalse(vm.hadRuntimeError(), "VM reported a runtime error");
+        return buffer.toString();
+    }
+
+    @Test
+    public void testSampleProgramOutput() {
+        assertEquals(List.of(sampleOutputExpected.split("\\R")), List.of(run(compile(sampleInputString)).split("\\R")));
+    }
+
+    @Test
+    public void testChunkSurvivesSerialization() throws IOException {
+        Chunk chunk = compile(sampleInputString);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        chunk.writeTo(new DataOutputStream(bytes));
+        Chunk loaded = Chunk.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(chunk.disassemble(), loaded.disassemble());
+        assertEquals(run(chunk), run(loaded));
+    }
+
+    @Test
+    public void testLongStringsSurviveSerialization() throws IOException {
+        // Longer than writeUTF allows, and with characters that take several bytes
+        String text = "Grüße, 世界 ".repeat(10_000);
+        Chunk chunk = compile("print \"" + text + "\";\nprint \"short\";\n");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        chunk.writeTo(new DataOutputStream(bytes));
+        Chunk loaded = Chunk.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(chunk.disassemble(), loaded.disassemble());
+        assertEquals(text + System.lineSeparator() + "short" + System.lineSeparator(), run(loaded));
+    }
+}